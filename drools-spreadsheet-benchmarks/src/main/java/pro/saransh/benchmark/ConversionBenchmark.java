@@ -0,0 +1,54 @@
+package pro.saransh.benchmark;
+
+import org.drools.decisiontable.InputType;
+import org.drools.decisiontable.SpreadsheetCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pro.saransh.plugin.DecisionTableConverter;
+import pro.saransh.plugin.SpreadsheetModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts every spreadsheet to DRL with the Drools {@link SpreadsheetCompiler} and with the plugin's
+ * {@link DecisionTableConverter}. A new {@link SpreadsheetModel} is used per invocation, so no spreadsheet content is
+ * cached between invocations.
+ *
+ * @author Saransh Kumar
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ConversionBenchmark {
+
+    @Benchmark
+    public void spreadsheetCompiler(Workload workload, Blackhole blackhole) throws IOException {
+        SpreadsheetCompiler compiler = new SpreadsheetCompiler();
+        for (File file : workload.spreadsheets) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                blackhole.consume(compiler.compile(in, InputType.XLS));
+            }
+        }
+    }
+
+    @Benchmark
+    public void decisionTableConverter(Workload workload, Blackhole blackhole) throws IOException {
+        SpreadsheetModel model = new SpreadsheetModel();
+        for (File file : workload.spreadsheets) {
+            blackhole.consume(DecisionTableConverter.convert(file, model));
+        }
+    }
+}
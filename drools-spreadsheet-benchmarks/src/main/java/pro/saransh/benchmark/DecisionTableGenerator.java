@@ -0,0 +1,163 @@
+package pro.saransh.benchmark;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes synthetic decision tables shaped like real ones, so that the benchmarks can be run at any size without
+ * checking spreadsheets in. Every spreadsheet declares its own fact type in a {@code Declare} cell and therefore
+ * compiles without a project classpath.
+ * <p>
+ * Each table has {@code conditions} string conditions on the declared type and one action. Condition values cycle
+ * through {@code cardinality} distinct strings, which controls how much the Rete network can share between rules.
+ * Spreadsheet {@code i} is written to {@code com/bench/p<i % packages>/table<i>.<format>} with ruleset
+ * {@code com.bench.p<i % packages>}, so spreadsheets of the same package are batched together.
+ *
+ * @author Saransh Kumar
+ */
+
+public class DecisionTableGenerator {
+
+    public static final String XLSX = "xlsx";
+    public static final String XLS = "xls";
+    private static final String BASE_PACKAGE = "com.bench.p";
+
+    private final String format;
+    private final int files;
+    private final int packages;
+    private final int sheets;
+    private final int rows;
+    private final int conditions;
+    private final int cardinality;
+
+    /**
+     * @param format      {@value #XLSX} or {@value #XLS}
+     * @param files       number of spreadsheets
+     * @param packages    number of ruleset packages the spreadsheets are spread over
+     * @param sheets      worksheets per spreadsheet, each with its own RuleTable
+     * @param rows        rules per worksheet
+     * @param conditions  condition columns per worksheet
+     * @param cardinality distinct values per condition column
+     */
+    public DecisionTableGenerator(String format, int files, int packages, int sheets, int rows, int conditions,
+                                  int cardinality) {
+        if (!XLSX.equals(format) && !XLS.equals(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        if (XLS.equals(format) && rows > 65000) {
+            throw new IllegalArgumentException("XLS worksheets are limited to 65536 rows");
+        }
+        this.format = format;
+        this.files = Math.max(1, files);
+        this.packages = Math.max(1, Math.min(packages, this.files));
+        this.sheets = Math.max(1, sheets);
+        this.rows = Math.max(1, rows);
+        this.conditions = Math.max(1, conditions);
+        this.cardinality = Math.max(1, cardinality);
+    }
+
+    /**
+     * Writes the spreadsheets below {@code dir} and returns them in generation order.
+     */
+    public List<File> generate(File dir) throws IOException {
+        List<File> written = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            int pkg = i % packages;
+            File file = new File(dir, "com/bench/p" + pkg + "/table" + i + "." + format);
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Workbook workbook = XLS.equals(format) ? new HSSFWorkbook() : new XSSFWorkbook();
+                 OutputStream out = Files.newOutputStream(file.toPath())) {
+                for (int s = 0; s < sheets; s++) {
+                    writeSheet(workbook.createSheet("Sheet" + s), BASE_PACKAGE + pkg, "Fact" + i + "_" + s,
+                            "Table" + i + "_" + s);
+                }
+                workbook.write(out);
+            }
+            written.add(file);
+        }
+        return written;
+    }
+
+    private void writeSheet(Sheet sheet, String ruleSet, String type, String table) {
+        StringBuilder declare = new StringBuilder("declare ").append(type);
+        for (int c = 0; c < conditions; c++) {
+            declare.append(" c").append(c).append(" : String");
+        }
+        declare.append(" result : String end");
+
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("RuleSet");
+        row.createCell(1).setCellValue(ruleSet);
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue("Declare");
+        row.createCell(1).setCellValue(declare.toString());
+
+        sheet.createRow(3).createCell(1).setCellValue("RuleTable " + table);
+        Row kinds = sheet.createRow(4);
+        Row pattern = sheet.createRow(5);
+        Row templates = sheet.createRow(6);
+        Row labels = sheet.createRow(7);
+        for (int c = 0; c < conditions; c++) {
+            kinds.createCell(c + 1).setCellValue("CONDITION");
+            templates.createCell(c + 1).setCellValue("c" + c + " == \"$param\"");
+            labels.createCell(c + 1).setCellValue("C" + c);
+        }
+        pattern.createCell(1).setCellValue("f: " + type);
+        for (int c = 1; c < conditions; c++) {
+            // The parser only applies a merged region to cells that exist
+            pattern.createCell(c + 1);
+        }
+        if (conditions > 1) {
+            sheet.addMergedRegion(new CellRangeAddress(5, 5, 1, conditions));
+        }
+        kinds.createCell(conditions + 1).setCellValue("ACTION");
+        templates.createCell(conditions + 1).setCellValue("f.setResult(\"$param\");");
+        labels.createCell(conditions + 1).setCellValue("Result");
+
+        for (int r = 0; r < rows; r++) {
+            row = sheet.createRow(8 + r);
+            for (int c = 0; c < conditions; c++) {
+                // Successive columns cycle at different rates so that rows stay distinct
+                row.createCell(c + 1).setCellValue("v" + (r / (c + 1) + c) % cardinality);
+            }
+            row.createCell(conditions + 1).setCellValue("r" + r);
+        }
+    }
+
+    /**
+     * Usage: {@code DecisionTableGenerator <dir> [format] [files] [packages] [sheets] [rows] [conditions]
+     * [cardinality]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DecisionTableGenerator <dir> [xlsx|xls] [files] [packages] [sheets] [rows]"
+                    + " [conditions] [cardinality]");
+            System.exit(1);
+        }
+        DecisionTableGenerator generator = new DecisionTableGenerator(
+                args.length > 1 ? args[1] : XLSX,
+                intArg(args, 2, 10),
+                intArg(args, 3, 5),
+                intArg(args, 4, 1),
+                intArg(args, 5, 100),
+                intArg(args, 6, 3),
+                intArg(args, 7, 10));
+        List<File> written = generator.generate(new File(args[0]));
+        System.out.println("Wrote " + written.size() + " spreadsheets to " + new File(args[0]).getAbsolutePath());
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}
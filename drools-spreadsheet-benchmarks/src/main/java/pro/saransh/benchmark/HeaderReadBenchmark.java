@@ -0,0 +1,44 @@
+package pro.saransh.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pro.saransh.plugin.SpreadsheetHeaderReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the B1 ruleset and the worksheet names of every spreadsheet without parsing the workbook, the way the
+ * ruleset and kmodule validators do.
+ *
+ * @author Saransh Kumar
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HeaderReadBenchmark {
+
+    @Benchmark
+    public void readRuleSet(Workload workload, Blackhole blackhole) throws IOException {
+        for (File file : workload.spreadsheets) {
+            blackhole.consume(SpreadsheetHeaderReader.readRuleSet(file));
+        }
+    }
+
+    @Benchmark
+    public void readSheetNames(Workload workload, Blackhole blackhole) throws IOException {
+        for (File file : workload.spreadsheets) {
+            blackhole.consume(SpreadsheetHeaderReader.readSheetNames(file));
+        }
+    }
+}
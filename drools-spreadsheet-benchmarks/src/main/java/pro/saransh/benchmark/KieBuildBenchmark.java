@@ -0,0 +1,89 @@
+package pro.saransh.benchmark;
+
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pro.saransh.plugin.DecisionTableConverter;
+import pro.saransh.plugin.SpreadsheetHeaderReader;
+import pro.saransh.plugin.SpreadsheetModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles the DRL of every spreadsheet, converted once up front, in one {@link KieFileSystem} per spreadsheet, per
+ * ruleset package and for all spreadsheets together. This separates the cost of building KIE modules from the cost
+ * of reading spreadsheets and shows what {@code batchSize} saves.
+ *
+ * @author Saransh Kumar
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class KieBuildBenchmark {
+
+    private final Map<String, Map<String, String>> drlByPackage = new LinkedHashMap<>();
+    private final Map<String, String> drls = new LinkedHashMap<>();
+
+    @Setup
+    public void convert(Workload workload) throws IOException {
+        SpreadsheetModel model = new SpreadsheetModel();
+        for (File file : workload.spreadsheets) {
+            String drl = DecisionTableConverter.convert(file, model);
+            String ruleSet = SpreadsheetHeaderReader.readRuleSet(file);
+            String path = "src/main/resources/" + ruleSet.replace('.', '/') + "/" + file.getName() + ".drl";
+            drls.put(path, drl);
+            drlByPackage.computeIfAbsent(ruleSet, p -> new LinkedHashMap<>()).put(path, drl);
+        }
+    }
+
+    @Benchmark
+    public void perFile(Blackhole blackhole) {
+        for (Map.Entry<String, String> drl : drls.entrySet()) {
+            blackhole.consume(build(Collections.singletonMap(drl.getKey(), drl.getValue())));
+        }
+    }
+
+    @Benchmark
+    public void perPackage(Blackhole blackhole) {
+        for (Map<String, String> batch : drlByPackage.values()) {
+            blackhole.consume(build(batch));
+        }
+    }
+
+    @Benchmark
+    public void all(Blackhole blackhole) {
+        blackhole.consume(build(drls));
+    }
+
+    private static KieBuilder build(Map<String, String> batch) {
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+        batch.forEach(kieFileSystem::write);
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem).buildAll();
+        if (kieBuilder.getResults().hasMessages(Message.Level.ERROR)) {
+            throw new IllegalStateException(kieBuilder.getResults().toString());
+        }
+        return kieBuilder;
+    }
+}
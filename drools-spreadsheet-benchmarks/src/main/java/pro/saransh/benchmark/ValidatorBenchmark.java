@@ -0,0 +1,59 @@
+package pro.saransh.benchmark;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pro.saransh.plugin.SpreadsheetDecisionTableValidator;
+import pro.saransh.plugin.SpreadsheetModel;
+import pro.saransh.plugin.TaskScheduler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@code table} validator end to end, from reading the spreadsheets to building their KIE modules, at
+ * several pool and batch sizes. Neither build state nor result cache is used, so every invocation validates every
+ * spreadsheet.
+ *
+ * @author Saransh Kumar
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ValidatorBenchmark {
+
+    private static final MavenProject PROJECT = new MavenProject() {
+        @Override
+        public List<String> getRuntimeClasspathElements() {
+            return Collections.emptyList();
+        }
+    };
+
+    @Param({"1", "2", "4"})
+    public int poolSize;
+    @Param({"1", "4"})
+    public int batchSize;
+
+    @Benchmark
+    public void validate(Workload workload) throws MojoExecutionException, MojoFailureException {
+        try (TaskScheduler scheduler = new TaskScheduler(poolSize)) {
+            new SpreadsheetDecisionTableValidator(PROJECT, workload.dir, workload.dir, workload.spreadsheets,
+                    scheduler, batchSize, null, new SpreadsheetModel(), null, false, null).validate();
+        }
+    }
+}
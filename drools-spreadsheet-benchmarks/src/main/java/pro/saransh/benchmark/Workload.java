@@ -0,0 +1,58 @@
+package pro.saransh.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic spreadsheets shared by the benchmarks, generated once per trial into a temporary directory. The shape is
+ * set with JMH parameters, e.g. {@code -p files=200 -p rows=1000 -p format=xls}.
+ *
+ * @author Saransh Kumar
+ */
+
+@State(Scope.Benchmark)
+public class Workload {
+
+    @Param("xlsx")
+    public String format;
+    @Param("20")
+    public int files;
+    @Param("5")
+    public int packages;
+    @Param("1")
+    public int sheets;
+    @Param("100")
+    public int rows;
+    @Param("3")
+    public int conditions;
+    @Param("10")
+    public int cardinality;
+
+    File dir;
+    List<File> spreadsheets;
+
+    @Setup
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("spreadsheet-benchmark").toFile();
+        spreadsheets = new DecisionTableGenerator(format, files, packages, sheets, rows, conditions, cardinality)
+                .generate(dir);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        try (Stream<Path> tree = Files.walk(dir.toPath())) {
+            tree.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parameters and per-build state shared by all goals of this plugin.
+ *
+ * @author Saransh Kumar
+ */
+
+public abstract class AbstractSpreadsheetMojo extends AbstractMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractSpreadsheetMojo.class);
+
+    @Parameter(property = "resourcesDir", defaultValue = "${project.basedir}/src/main/resources")
+    protected File resourcesDir;
+    /**
+     * Number of worker threads, or {@code auto} to size the pool from the available cores and heap.
+     */
+    @Parameter(property = "poolSize", defaultValue = "1")
+    protected String poolSize;
+    /**
+     * Runs tasks on virtual threads when the build runs on Java 21 or later.
+     */
+    @Parameter(property = "virtualThreads", defaultValue = "false")
+    protected boolean virtualThreads;
+    /**
+     * Stops at the first failing spreadsheet instead of reporting every failure, same as {@code maxErrors=1}.
+     */
+    @Parameter(property = "failFast", defaultValue = "false")
+    protected boolean failFast;
+    /**
+     * Number of failing spreadsheets after which remaining work is cancelled, {@code 0} for no limit.
+     */
+    @Parameter(property = "maxErrors", defaultValue = "0")
+    protected int maxErrors;
+    /**
+     * Estimated heap, in MB, that spreadsheets being parsed or compiled at the same time may use. Large
+     * spreadsheets wait for room while small ones keep running. {@code 0} only limits by {@code poolSize}.
+     */
+    @Parameter(property = "memoryBudgetMb", defaultValue = "0")
+    protected long memoryBudgetMb;
+    /**
+     * Converts every worksheet of a workbook as its own task and merges the worksheets with a RuleTable into one
+     * DRL. Without it only the first worksheet is converted, as Drools does.
+     */
+    @Parameter(property = "splitWorksheets", defaultValue = "false")
+    protected boolean splitWorksheets;
+    /**
+     * Directory of a result cache shared between workspaces, e.g. the checkouts of several branches. Validation
+     * outcomes and generated DRL are reused from it for spreadsheets with the same content, classpath, Drools and
+     * plugin version. Disabled when not set.
+     */
+    @Parameter(property = "cacheDir")
+    protected File cacheDir;
+    /**
+     * Size, in MB, beyond which the least recently used entries of {@code cacheDir} are deleted.
+     */
+    @Parameter(property = "cacheMaxMb", defaultValue = "1024")
+    protected long cacheMaxMb;
+    /**
+     * Times every spreadsheet task, split into discovery, read, convert, build and write, and writes a JSON report
+     * per goal execution to {@code profileDir}: wall time, CPU time, allocation and queue wait of each spreadsheet,
+     * the {@code profileTop} slowest spreadsheets and how busy the workers were. The phases and tasks are also
+     * recorded as JDK Flight Recorder events when Maven runs with a flight recording.
+     */
+    @Parameter(property = "profile", defaultValue = "false")
+    protected boolean profile;
+    @Parameter(property = "profileDir", defaultValue = "${project.build.directory}/spreadsheet-profile")
+    protected File profileDir;
+    @Parameter(property = "profileTop", defaultValue = "10")
+    protected int profileTop;
+    @Parameter(property = "spreadsheetCacheMb", defaultValue = "64")
+    protected long spreadsheetCacheMb;
+    @Parameter(property = "incremental", defaultValue = "true")
+    protected boolean incremental;
+    @Parameter(property = "stateFile",
+            defaultValue = "${project.build.directory}/" + BuildState.STATE_FILE_NAME)
+    protected File stateFile;
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    protected String pluginVersion;
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    protected MavenProject project;
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    protected MojoExecution mojoExecution;
+
+    protected TaskScheduler createScheduler() throws MojoExecutionException {
+        return createScheduler(TaskProfiler.disabled());
+    }
+
+    protected TaskScheduler createScheduler(TaskProfiler profiler) throws MojoExecutionException {
+        try {
+            return new TaskScheduler(TaskScheduler.resolvePoolSize(poolSize), virtualThreads,
+                    failFast ? 1 : maxErrors, memoryBudgetMb * 1024 * 1024, profiler);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the profiler of this goal execution, disabled unless {@code profile} is set. Closing it writes the
+     * report.
+     */
+    protected TaskProfiler openProfiler() {
+        if (!profile) {
+            return TaskProfiler.disabled();
+        }
+        String name = mojoExecution != null ? mojoExecution.getGoal() + "-" + mojoExecution.getExecutionId()
+                : "spreadsheet";
+        File baseDir = project != null && project.getBasedir() != null ? project.getBasedir() : resourcesDir;
+        return new TaskProfiler(new File(profileDir, name + ".json"), baseDir, profileTop, name);
+    }
+
+    protected static RuleTableLinter.Policy createLintPolicy(List<String> lintPolicy, String lintFailOn,
+                                                            int lintHighCardinality) throws MojoExecutionException {
+        try {
+            return new RuleTableLinter.Policy(lintPolicy, lintFailOn, lintHighCardinality);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    protected SpreadsheetModel getSpreadsheetModel() {
+        return SpreadsheetModel.forProject(project, spreadsheetCacheMb * 1024 * 1024);
+    }
+
+    /**
+     * Returns the shared result cache, or {@code null} when no {@code cacheDir} is set.
+     */
+    protected ResultCache openResultCache() {
+        return cacheDir != null ? new ResultCache(cacheDir, cacheMaxMb * 1024 * 1024, pluginVersion) : null;
+    }
+
+    /**
+     * Returns the state of the previous run, or {@code null} when incremental processing is disabled.
+     */
+    protected BuildState loadBuildState() {
+        return incremental ? BuildState.load(stateFile, pluginVersion) : null;
+    }
+
+    /**
+     * Returns the spreadsheets of {@code files} changed since the git ref {@code sinceRef}, or {@code files} when no
+     * ref is set or the changes cannot be listed.
+     */
+    protected List<File> filterChanged(List<File> files, String sinceRef) {
+        if (sinceRef == null || sinceRef.trim().isEmpty()) {
+            return files;
+        }
+        Set<File> changed = GitChanges.changedSince(resourcesDir, sinceRef.trim());
+        if (changed == null) {
+            LOGGER.warn("Processing all {} spreadsheets, changes since {} are not available", files.size(), sinceRef);
+            return files;
+        }
+        List<File> filtered = new ArrayList<>();
+        for (File file : files) {
+            if (changed.contains(file.getAbsoluteFile())) {
+                filtered.add(file);
+            }
+        }
+        LOGGER.info("{} of {} spreadsheets changed since {}", filtered.size(), files.size(), sinceRef);
+        return filtered;
+    }
+
+    /**
+     * Returns the spreadsheets of {@code files} assigned to shard {@code shardIndex} of {@code shardCount}.
+     */
+    protected List<File> selectShard(List<File> files, SpreadsheetModel model, int shardIndex, int shardCount)
+            throws MojoExecutionException {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new MojoExecutionException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        if (shardCount == 1) {
+            return files;
+        }
+        List<File> shard = Shards.select(files, resourcesDir, shardIndex, shardCount, model::estimateParseCost);
+        LOGGER.info("Shard {} of {}: {} of {} spreadsheets", shardIndex, shardCount, shard.size(), files.size());
+        return shard;
+    }
+
+    protected String hashRuntimeClasspath() throws MojoExecutionException {
+        try {
+            return BuildState.hashClasspath(project.getRuntimeClasspathElements());
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the validators concurrently. They do not depend on each other, they only share the spreadsheet model,
+     * the build state and the worker pool of the scheduler. Every validator runs to completion.
+     *
+     * @return the failure of every validator that failed, as {@code name: message}
+     */
+    protected List<String> runValidators(Map<String, Validator> selected) throws MojoExecutionException {
+        return runValidators(selected, selected.size());
+    }
+
+    /**
+     * Runs {@code selected} like {@link #runValidators(Map)}, on at most {@code maxDrivers} threads. Validators
+     * beyond that start, in order, as others complete.
+     */
+    protected List<String> runValidators(Map<String, Validator> selected, int maxDrivers)
+            throws MojoExecutionException {
+        ExecutorService drivers = Executors.newFixedThreadPool(Math.max(1, Math.min(maxDrivers, selected.size())));
+        try {
+            Map<String, Future<Void>> results = new LinkedHashMap<>();
+            selected.forEach((name, validator) -> results.put(name, drivers.submit(() -> {
+                validator.validate();
+                return null;
+            })));
+            List<String> failures = new ArrayList<>();
+            MojoExecutionException executionError = null;
+            for (Map.Entry<String, Future<Void>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while validating spreadsheets", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof MojoFailureException) {
+                        failures.add(result.getKey() + ": " + cause.getMessage());
+                    } else if (executionError == null) {
+                        executionError = cause instanceof MojoExecutionException ? (MojoExecutionException) cause
+                                : new MojoExecutionException("Error while running " + result.getKey() + " validator",
+                                cause);
+                    }
+                }
+            }
+            if (executionError != null) {
+                throw executionError;
+            }
+            return failures;
+        } finally {
+            drivers.shutdownNow();
+        }
+    }
+}
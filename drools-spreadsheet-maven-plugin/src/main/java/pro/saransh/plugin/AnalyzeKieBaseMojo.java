@@ -0,0 +1,180 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports what the KieBase of every decision table, or of every kbase of {@code kmodule.xml}, costs at runtime:
+ * rules, Rete nodes by type, shared node ratio, estimated retained heap and build time. The report is written as
+ * CSV to {@code footprintReport}, largest first, and the build fails when a KieBase exceeds one of the optional
+ * {@code footprint.max*} thresholds, or when such a threshold is set and a decision table could not be analyzed.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "analyze-kiebase", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class AnalyzeKieBaseMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalyzeKieBaseMojo.class);
+    private static final String SCOPE_SPREADSHEET = "spreadsheet";
+    private static final String SCOPE_KBASE = "kbase";
+
+    /**
+     * {@code spreadsheet} to build a KieBase of each decision table alone, or {@code kbase} to build the kbases of
+     * {@code META-INF/kmodule.xml} from all decision tables.
+     */
+    @Parameter(property = "footprint.scope", defaultValue = SCOPE_SPREADSHEET)
+    private String scope;
+    @Parameter(property = "footprintReport", defaultValue = "${project.build.directory}/kiebase-footprint.csv")
+    private File reportFile;
+    /**
+     * Estimates the retained heap of each KieBase, which runs two full GCs per KieBase.
+     */
+    @Parameter(property = "footprint.measureHeap", defaultValue = "true")
+    private boolean measureHeap;
+    @Parameter(property = "footprint.top", defaultValue = "10")
+    private int top;
+    /**
+     * Rules per KieBase above which the build fails, {@code 0} for no limit.
+     */
+    @Parameter(property = "footprint.maxRules", defaultValue = "0")
+    private int maxRules;
+    /**
+     * Rete nodes per KieBase above which the build fails, {@code 0} for no limit.
+     */
+    @Parameter(property = "footprint.maxNodes", defaultValue = "0")
+    private int maxNodes;
+    /**
+     * Estimated retained heap, in MB, per KieBase above which the build fails, {@code 0} for no limit.
+     */
+    @Parameter(property = "footprint.maxHeapMb", defaultValue = "0")
+    private long maxHeapMb;
+    /**
+     * Build time, in milliseconds, per KieBase above which the build fails, {@code 0} for no limit.
+     */
+    @Parameter(property = "footprint.maxBuildMs", defaultValue = "0")
+    private long maxBuildMs;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!resourcesDir.exists()) {
+            LOGGER.error("Resources directory not found: {}", resourcesDir.getAbsolutePath());
+            throw new MojoExecutionException("Resources directory not found");
+        }
+        KieBaseFootprint footprint = new KieBaseFootprint(measureHeap);
+        List<KieBaseFootprint.Row> rows;
+        List<String> skipped = new ArrayList<>();
+        try (ProjectClassLoaders.Lease lease = ProjectClassLoaders.acquire(project.getRuntimeClasspathElements())) {
+            Map<File, String> drls = convert(FileUtils.listSpreadsheetFiles(resourcesDir));
+            if (SCOPE_KBASE.equals(scope)) {
+                File kmoduleFile = new File(resourcesDir, "META-INF/kmodule.xml");
+                if (!kmoduleFile.exists()) {
+                    throw new MojoExecutionException("kmodule.xml not found: " + kmoduleFile.getAbsolutePath());
+                }
+                Map<String, String> sources = new LinkedHashMap<>();
+                drls.forEach((file, drl) -> sources.put(file.getPath(), drl));
+                rows = footprint.analyzeKieBases(sources, kmoduleFile);
+            } else if (SCOPE_SPREADSHEET.equals(scope)) {
+                rows = analyzeSpreadsheets(footprint, drls, skipped);
+            } else {
+                throw new MojoExecutionException("Unknown footprint scope '" + scope + "', expected "
+                        + SCOPE_SPREADSHEET + " or " + SCOPE_KBASE);
+            }
+            rows.sort(KieBaseFootprint.largestFirst());
+            KieBaseFootprint.writeCsv(rows, reportFile);
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        LOGGER.info("Wrote footprint of {} KieBases to {}, largest:", rows.size(), reportFile);
+        rows.stream().limit(Math.max(0, top)).forEach(row -> LOGGER.info(" - {}", row));
+        if (!skipped.isEmpty()) {
+            LOGGER.warn("{} decision tables were skipped as they do not compile on their own: {}", skipped.size(),
+                    String.join(", ", skipped));
+        }
+        checkThresholds(rows, skipped);
+    }
+
+    /**
+     * Builds a KieBase of each decision table alone, adding the tables that do not compile to {@code skipped}.
+     */
+    private List<KieBaseFootprint.Row> analyzeSpreadsheets(KieBaseFootprint footprint, Map<File, String> drls,
+            List<String> skipped) {
+        List<KieBaseFootprint.Row> rows = new ArrayList<>();
+        for (Map.Entry<File, String> drl : drls.entrySet()) {
+            String name = Shards.relativePath(resourcesDir, drl.getKey());
+            try {
+                rows.add(footprint.analyze(name, drl.getKey().getPath(), drl.getValue()));
+            } catch (MojoFailureException e) {
+                LOGGER.warn("Skipping {}, it does not compile on its own: {}", name, e.getMessage());
+                skipped.add(name);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Converts every spreadsheet with a RuleTable, in listing order.
+     */
+    private Map<File, String> convert(List<File> files) throws MojoFailureException {
+        SpreadsheetModel model = getSpreadsheetModel();
+        Map<File, String> drls = new LinkedHashMap<>();
+        for (File file : files) {
+            try {
+                String drl = DecisionTableConverter.convertWorkbook(file, model, splitWorksheets);
+                if (drl != null) {
+                    drls.put(file, drl);
+                }
+            } catch (Exception e) {
+                throw new MojoFailureException("Failed to convert " + file + ": " + e.getMessage(), e);
+            }
+        }
+        return drls;
+    }
+
+    private void checkThresholds(List<KieBaseFootprint.Row> rows, List<String> skipped)
+            throws MojoFailureException {
+        List<String> violations = new ArrayList<>();
+        // A table that could not be measured may well exceed the limits
+        if (maxRules > 0 || maxNodes > 0 || maxHeapMb > 0 || maxBuildMs > 0) {
+            for (String name : skipped) {
+                violations.add(name + " could not be analyzed against the thresholds");
+            }
+        }
+        for (KieBaseFootprint.Row row : rows) {
+            if (maxRules > 0 && row.getRules() > maxRules) {
+                violations.add(row.getName() + " has " + row.getRules() + " rules, more than " + maxRules);
+            }
+            if (maxNodes > 0 && row.getNodes() > maxNodes) {
+                violations.add(row.getName() + " has " + row.getNodes() + " Rete nodes, more than " + maxNodes);
+            }
+            if (maxHeapMb > 0 && row.getHeapBytes() > maxHeapMb * 1024 * 1024) {
+                violations.add(row.getName() + " retains " + KieBaseFootprint.formatBytes(row.getHeapBytes())
+                        + ", more than " + maxHeapMb + " MB");
+            }
+            if (maxBuildMs > 0 && row.getBuildMillis() > maxBuildMs) {
+                violations.add(row.getName() + " builds in " + row.getBuildMillis() + " ms, more than " + maxBuildMs
+                        + " ms");
+            }
+        }
+        if (!violations.isEmpty()) {
+            violations.forEach(violation -> LOGGER.error("KieBase footprint: {}", violation));
+            throw new MojoFailureException(violations.size() + " KieBase footprint checks failed: "
+                    + String.join("; ", violations));
+        }
+    }
+}
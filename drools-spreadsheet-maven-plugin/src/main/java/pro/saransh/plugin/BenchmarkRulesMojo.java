@@ -0,0 +1,182 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.kie.api.KieBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the rules converted from the spreadsheets, or the generated DRL, against the facts of
+ * {@code fixturesDir} and fails the build when throughput or p90 session latency regressed from the committed
+ * baseline by more than {@code maxRegressionPercent}. See {@link FactFixtures} for the fixture format.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "benchmark-rules", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class BenchmarkRulesMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BenchmarkRulesMojo.class);
+    private static final String SOURCE_SPREADSHEETS = "spreadsheets";
+    private static final String SOURCE_DRL = "drl";
+
+    /**
+     * {@code spreadsheets} to convert the spreadsheets of {@code resourcesDir}, or {@code drl} to benchmark the DRL
+     * files of {@code drlDir} written by {@code generate-drl}.
+     */
+    @Parameter(property = "benchmark.source", defaultValue = SOURCE_SPREADSHEETS)
+    private String source;
+    @Parameter(property = "drlDir", defaultValue = "${project.build.directory}/classes/generated-drl")
+    private File drlDir;
+    /**
+     * Name of the kbase of {@code META-INF/kmodule.xml} to benchmark. Without it, all rules are in one kbase.
+     */
+    @Parameter(property = "benchmark.kieBase")
+    private String kieBase;
+    @Parameter(property = "fixturesDir", defaultValue = "${project.basedir}/src/test/resources/rule-fixtures")
+    private File fixturesDir;
+    @Parameter(property = "warmupSessions", defaultValue = "20")
+    private int warmupSessions;
+    @Parameter(property = "sessions", defaultValue = "50")
+    private int sessions;
+    /**
+     * Rules fired in one session after which the rules are considered to loop and the benchmark fails.
+     */
+    @Parameter(property = "maxFirings", defaultValue = "1000000")
+    private int maxFirings;
+    @Parameter(property = "maxRegressionPercent", defaultValue = "20")
+    private double maxRegressionPercent;
+    @Parameter(property = "baselineFile", defaultValue = "${project.basedir}/rule-benchmark-baseline.properties")
+    private File baselineFile;
+    /**
+     * Writes the result of this run to {@code baselineFile} instead of comparing against it.
+     */
+    @Parameter(property = "updateBaseline", defaultValue = "false")
+    private boolean updateBaseline;
+    @Parameter(property = "benchmarkResultFile", defaultValue = "${project.build.directory}/rule-benchmark.properties")
+    private File resultFile;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!fixturesDir.isDirectory()) {
+            LOGGER.warn("Skipping rule benchmark, fixtures directory not found: {}", fixturesDir.getAbsolutePath());
+            return;
+        }
+        RuleBenchmark.Result result;
+        try (ProjectClassLoaders.Lease lease = ProjectClassLoaders.acquire(project.getRuntimeClasspathElements())) {
+            File kmoduleFile = kieBase != null ? new File(resourcesDir, "META-INF/kmodule.xml") : null;
+            if (kmoduleFile != null && !kmoduleFile.exists()) {
+                throw new MojoExecutionException("kmodule.xml not found: " + kmoduleFile.getAbsolutePath());
+            }
+            KieBase base = RuleBenchmark.build(readDrls(), kmoduleFile, kieBase);
+            FactFixtures fixtures = FactFixtures.load(fixturesDir, base,
+                    Thread.currentThread().getContextClassLoader());
+            if (fixtures.isEmpty()) {
+                LOGGER.warn("Skipping rule benchmark, no facts in {}", fixturesDir.getAbsolutePath());
+                return;
+            }
+            LOGGER.info("Benchmarking {} facts: {} warm-up and {} measured sessions", fixtures.size(),
+                    warmupSessions, sessions);
+            result = new RuleBenchmark(base, fixtures, warmupSessions, sessions, maxFirings).run();
+            result.write(resultFile);
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        LOGGER.info("Rule benchmark: {}", result);
+        try {
+            if (updateBaseline) {
+                result.write(baselineFile);
+                LOGGER.info("Updated baseline {}", baselineFile.getAbsolutePath());
+                return;
+            }
+            if (!baselineFile.exists()) {
+                LOGGER.warn("No baseline to compare with, run with -DupdateBaseline to record {}",
+                        baselineFile.getAbsolutePath());
+                return;
+            }
+            compare(result, RuleBenchmark.Result.read(baselineFile));
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    private void compare(RuleBenchmark.Result result, RuleBenchmark.Result baseline) throws MojoFailureException {
+        LOGGER.info("Baseline: {}", baseline);
+        if (result.getFacts() != baseline.getFacts() || result.getFirings() != baseline.getFirings()) {
+            LOGGER.warn("The baseline fired {} rules for {} facts, this run {} for {}: the rules or fixtures changed,"
+                            + " consider updating the baseline", baseline.getFirings(), baseline.getFacts(),
+                    result.getFirings(), result.getFacts());
+        }
+        List<String> regressions = result.regressionsFrom(baseline, maxRegressionPercent);
+        if (!regressions.isEmpty()) {
+            regressions.forEach(regression -> LOGGER.error("Rule benchmark regressed: {}", regression));
+            throw new MojoFailureException("Rule benchmark regressed by more than " + maxRegressionPercent
+                    + "% from " + baselineFile.getName() + ": " + String.join("; ", regressions));
+        }
+    }
+
+    /**
+     * Returns the DRL to benchmark, keyed by the file it comes from.
+     */
+    private Map<String, String> readDrls() throws IOException, MojoExecutionException, MojoFailureException {
+        Map<String, String> drls = new TreeMap<>();
+        if (SOURCE_DRL.equals(source)) {
+            if (!drlDir.isDirectory()) {
+                throw new MojoExecutionException("DRL directory not found: " + drlDir.getAbsolutePath());
+            }
+            try (Stream<Path> tree = Files.walk(drlDir.toPath())) {
+                for (Path path : tree.filter(p -> p.toString().endsWith(".drl")).collect(Collectors.toList())) {
+                    drls.put(path.toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                }
+            }
+        } else if (SOURCE_SPREADSHEETS.equals(source)) {
+            if (!resourcesDir.exists()) {
+                throw new MojoExecutionException("Resources directory not found: " + resourcesDir.getAbsolutePath());
+            }
+            SpreadsheetModel model = getSpreadsheetModel();
+            for (File file : FileUtils.listSpreadsheetFiles(resourcesDir)) {
+                String drl = convert(file, model);
+                if (drl != null) {
+                    drls.put(file.getPath(), drl);
+                }
+            }
+        } else {
+            throw new MojoExecutionException("Unknown benchmark source '" + source + "', expected "
+                    + SOURCE_SPREADSHEETS + " or " + SOURCE_DRL);
+        }
+        if (drls.isEmpty()) {
+            throw new MojoExecutionException("No rules to benchmark");
+        }
+        return drls;
+    }
+
+    private String convert(File file, SpreadsheetModel model) throws MojoFailureException {
+        try {
+            String drl = DecisionTableConverter.convertWorkbook(file, model, splitWorksheets);
+            if (drl == null) {
+                LOGGER.debug("Skipping {} - No RuleTable cells found", file);
+            }
+            return drl;
+        } catch (Exception e) {
+            throw new MojoFailureException("Failed to convert " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
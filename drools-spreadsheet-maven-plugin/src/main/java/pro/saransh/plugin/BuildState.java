@@ -0,0 +1,441 @@
+package pro.saransh.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent record of previous plugin runs, used to skip spreadsheets that did not change since they were last
+ * validated or converted. Files are identified by the SHA-256 of their content; the hash is only recomputed when
+ * the file size or modification time changed. Outcomes that depend on the project classpath are dropped when the
+ * classpath hash changes, and the whole state is dropped when the plugin version changes. Saving merges the outcomes
+ * recorded by this run into the state file as it is on disk, so goals sharing it keep each other's outcomes.
+ *
+ * @author Saransh Kumar
+ */
+
+public class BuildState {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildState.class);
+    public static final String STATE_FILE_NAME = "drools-spreadsheet-state.properties";
+    public static final String PASSED = "passed";
+    public static final String FAILED = "failed";
+    public static final String SKIPPED = "skipped";
+    private static final String PLUGIN_VERSION_KEY = "plugin.version";
+    private static final String CLASSPATH_HASH_KEY = "classpath.hash";
+    private static final String FILE_PREFIX = "file.";
+    /**
+     * Serializes saves within the JVM, as the lock on the state file is held on behalf of the whole JVM.
+     */
+    private static final Object SAVE_LOCK = new Object();
+    /**
+     * Steps compiled against the classpath: {@code table}, and {@code kbase.<name>.<definition>} per kbase.
+     */
+    private static final Set<String> CLASSPATH_DEPENDENT = new HashSet<>(Arrays.asList("table", "kbase"));
+
+    private final File stateFile;
+    private final String pluginVersion;
+    private final Map<String, FileState> files = new ConcurrentHashMap<>();
+    private String classpathHash;
+    private boolean classpathChanged;
+
+    private BuildState(File stateFile, String pluginVersion) {
+        this.stateFile = stateFile;
+        this.pluginVersion = pluginVersion;
+    }
+
+    public static BuildState load(File stateFile, String pluginVersion) {
+        BuildState state = new BuildState(stateFile, pluginVersion);
+        Properties props = read(stateFile);
+        if (props == null) {
+            return state;
+        }
+        if (!Objects.equals(pluginVersion, props.getProperty(PLUGIN_VERSION_KEY))) {
+            LOGGER.info("Plugin version changed, discarding build state {}", stateFile);
+            return state;
+        }
+        state.restore(props);
+        return state;
+    }
+
+    private static Properties read(File stateFile) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+            props.load(in);
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable build state {}: {}", stateFile, e.getMessage());
+            return null;
+        }
+        return props;
+    }
+
+    private void restore(Properties props) {
+        classpathHash = props.getProperty(CLASSPATH_HASH_KEY);
+        for (String key : props.stringPropertyNames()) {
+            if (!key.startsWith(FILE_PREFIX)) {
+                continue;
+            }
+            int separator = key.lastIndexOf('#');
+            if (separator < 0) {
+                continue;
+            }
+            String path = key.substring(FILE_PREFIX.length(), separator);
+            String field = key.substring(separator + 1);
+            files.computeIfAbsent(path, p -> new FileState()).set(field, props.getProperty(key));
+        }
+    }
+
+    /**
+     * Records the classpath the current run validates against, forgetting classpath dependent outcomes if it
+     * differs from the one of the previous run.
+     */
+    public synchronized void useClasspath(String hash) {
+        if (hash == null || hash.equals(classpathHash)) {
+            return;
+        }
+        if (classpathHash != null) {
+            LOGGER.info("Project classpath changed, revalidating decision tables");
+        }
+        for (FileState fileState : files.values()) {
+            fileState.removeIf(BuildState::isClasspathDependent);
+        }
+        classpathHash = hash;
+        classpathChanged = true;
+    }
+
+    private static boolean isClasspathDependent(String step) {
+        return CLASSPATH_DEPENDENT.contains(step.split("\\.", 2)[0]);
+    }
+
+    public boolean isUpToDate(File file, String step) throws IOException {
+        return PASSED.equals(getOutcome(file, step)) || SKIPPED.equals(getOutcome(file, step));
+    }
+
+    public String getOutcome(File file, String step) throws IOException {
+        return current(file).outcomes.get(step);
+    }
+
+    public void setOutcome(File file, String step, String outcome) throws IOException {
+        current(file).put(step, outcome);
+    }
+
+    /**
+     * Records the outcome of {@code step}, forgetting those of the other steps made of {@code prefix} and one more
+     * segment, such as the steps of earlier definitions of a kbase.
+     */
+    public void replaceOutcome(File file, String prefix, String step, String outcome) throws IOException {
+        FileState fileState = current(file);
+        fileState.removeIf(other -> other.startsWith(prefix) && other.indexOf('.', prefix.length()) < 0
+                && !other.equals(step));
+        fileState.put(step, outcome);
+    }
+
+    /**
+     * Returns the SHA-256 of the content of {@code file}, only recomputed when its size or modification time
+     * changed.
+     */
+    public String getHash(File file) throws IOException {
+        return current(file).hash;
+    }
+
+    /**
+     * Returns the ruleset recorded for an unchanged file, reading and recording it through {@code model} otherwise.
+     */
+    public String getRuleSet(File file, SpreadsheetModel model) throws IOException {
+        FileState fileState = current(file);
+        if (fileState.ruleSet == null) {
+            fileState.ruleSet = model.getRuleSet(file);
+        }
+        return fileState.ruleSet;
+    }
+
+    /**
+     * Writes the state file, holding a lock on it while merging this run's outcomes into the state another goal
+     * may have saved since this one was loaded.
+     */
+    public void save() {
+        synchronized (SAVE_LOCK) {
+            synchronized (this) {
+                try {
+                    Path target = stateFile.toPath().toAbsolutePath();
+                    Files.createDirectories(target.getParent());
+                    Path lockFile = target.resolveSibling(target.getFileName() + ".lock");
+                    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE);
+                         FileLock lock = channel.lock()) {
+                        write(target, merge());
+                    }
+                    files.values().forEach(fileState -> fileState.changed.clear());
+                    classpathChanged = false;
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to write build state {}: {}", stateFile, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the state on disk with the outcomes this run recorded or forgot applied to it. Files whose content
+     * this run saw change are taken from this run as a whole.
+     */
+    private BuildState merge() {
+        BuildState merged = new BuildState(stateFile, pluginVersion);
+        Properties props = read(stateFile);
+        if (props != null && Objects.equals(pluginVersion, props.getProperty(PLUGIN_VERSION_KEY))) {
+            merged.restore(props);
+        }
+        if (classpathHash != null && !classpathHash.equals(merged.classpathHash)
+                && (classpathChanged || merged.classpathHash == null)) {
+            merged.files.values().forEach(fileState -> fileState.outcomes.keySet()
+                    .removeIf(BuildState::isClasspathDependent));
+            merged.classpathHash = classpathHash;
+        }
+        // Outcomes against another classpath than the one saved are not carried over
+        boolean sameClasspath = Objects.equals(classpathHash, merged.classpathHash);
+        for (Map.Entry<String, FileState> entry : files.entrySet()) {
+            FileState ours = entry.getValue();
+            FileState theirs = merged.files.get(entry.getKey());
+            if (theirs == null || ours.verified && !Objects.equals(ours.hash, theirs.hash)) {
+                FileState copy = ours.copy();
+                if (!sameClasspath) {
+                    copy.outcomes.keySet().removeIf(BuildState::isClasspathDependent);
+                }
+                merged.files.put(entry.getKey(), copy);
+            } else if (Objects.equals(ours.hash, theirs.hash)) {
+                theirs.apply(ours, sameClasspath);
+            }
+        }
+        return merged;
+    }
+
+    private static void write(Path target, BuildState state) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PLUGIN_VERSION_KEY, String.valueOf(state.pluginVersion));
+        if (state.classpathHash != null) {
+            props.setProperty(CLASSPATH_HASH_KEY, state.classpathHash);
+        }
+        for (Map.Entry<String, FileState> entry : state.files.entrySet()) {
+            if (!new File(entry.getKey()).exists()) {
+                continue;
+            }
+            entry.getValue().store(FILE_PREFIX + entry.getKey() + "#", props);
+        }
+        Path tmp = Files.createTempFile(target.getParent(), STATE_FILE_NAME, ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, "drools-spreadsheet-maven-plugin build state");
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileState current(File file) throws IOException {
+        File absolute = file.getAbsoluteFile();
+        long length = absolute.length();
+        long lastModified = absolute.lastModified();
+        FileState unchanged = files.computeIfPresent(absolute.getPath(), (path, previous) -> {
+            if (previous.length == length && previous.lastModified == lastModified) {
+                previous.verified = true;
+            }
+            return previous;
+        });
+        if (unchanged != null && unchanged.length == length && unchanged.lastModified == lastModified) {
+            return unchanged;
+        }
+        // Hashed outside the map, so lookups of other files sharing its bin do not wait for the disk
+        String hash = hash(absolute.toPath());
+        return files.compute(absolute.getPath(), (path, previous) -> {
+            if (previous != null && previous.length == length && previous.lastModified == lastModified) {
+                previous.verified = true;
+                return previous;
+            }
+            FileState next = previous != null && hash.equals(previous.hash) ? previous : new FileState();
+            next.hash = hash;
+            next.length = length;
+            next.lastModified = lastModified;
+            next.verified = true;
+            return next;
+        });
+    }
+
+    public static String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes the runtime classpath. Directories are hashed by the content of the class files they contain,
+     * archives by their path, size and modification time.
+     */
+    public static String hashClasspath(List<String> elements) throws IOException {
+        return hashClasspath(elements, Collections.emptySet());
+    }
+
+    /**
+     * Hashes the runtime classpath, leaving out the class files of directories whose path relative to the directory
+     * is in {@code ignoredClassFiles}, such as classes this plugin generates itself.
+     */
+    public static String hashClasspath(List<String> elements, Set<String> ignoredClassFiles) throws IOException {
+        MessageDigest digest = newDigest();
+        for (String element : elements) {
+            Path path = new File(element).toPath();
+            digest.update(element.getBytes(StandardCharsets.UTF_8));
+            if (Files.isDirectory(path)) {
+                List<Path> children;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    children = walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".class"))
+                            .filter(p -> !ignoredClassFiles.contains(path.relativize(p).toString()))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path child : children) {
+                    digest.update(path.relativize(child).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(hash(child).getBytes(StandardCharsets.UTF_8));
+                }
+            } else if (Files.isRegularFile(path)) {
+                digest.update(Long.toString(Files.size(path)).getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(Files.getLastModifiedTime(path).toMillis())
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static final class FileState {
+
+        private final Map<String, String> outcomes = new ConcurrentHashMap<>();
+        /**
+         * Steps whose outcome this run recorded or forgot since the last save.
+         */
+        private final Set<String> changed = ConcurrentHashMap.newKeySet();
+        private volatile String hash;
+        private volatile long length = -1;
+        private volatile long lastModified = -1;
+        private volatile String ruleSet;
+        /**
+         * Whether this run checked the hash against the file.
+         */
+        private volatile boolean verified;
+
+        private void put(String step, String outcome) {
+            outcomes.put(step, outcome);
+            changed.add(step);
+        }
+
+        private void removeIf(Predicate<String> filter) {
+            for (String step : outcomes.keySet()) {
+                if (filter.test(step)) {
+                    outcomes.remove(step);
+                    changed.add(step);
+                }
+            }
+        }
+
+        private FileState copy() {
+            FileState copy = new FileState();
+            copy.outcomes.putAll(outcomes);
+            copy.hash = hash;
+            copy.length = length;
+            copy.lastModified = lastModified;
+            copy.ruleSet = ruleSet;
+            return copy;
+        }
+
+        /**
+         * Applies the changes {@code ours} made to the same content, leaving the outcomes of other steps as saved.
+         */
+        private void apply(FileState ours, boolean sameClasspath) {
+            for (String step : ours.changed) {
+                String outcome = ours.outcomes.get(step);
+                if (outcome == null) {
+                    outcomes.remove(step);
+                } else if (sameClasspath || !isClasspathDependent(step)) {
+                    outcomes.put(step, outcome);
+                }
+            }
+            if (ours.verified) {
+                length = ours.length;
+                lastModified = ours.lastModified;
+            }
+            if (ruleSet == null) {
+                ruleSet = ours.ruleSet;
+            }
+        }
+
+        private void set(String field, String value) {
+            switch (field) {
+                case "hash":
+                    hash = value;
+                    break;
+                case "length":
+                    length = Long.parseLong(value);
+                    break;
+                case "lastModified":
+                    lastModified = Long.parseLong(value);
+                    break;
+                case "ruleset":
+                    ruleSet = value;
+                    break;
+                default:
+                    if (field.startsWith("outcome.")) {
+                        outcomes.put(field.substring("outcome.".length()), value);
+                    }
+            }
+        }
+
+        private void store(String prefix, Properties props) {
+            if (hash == null) {
+                return;
+            }
+            props.setProperty(prefix + "hash", hash);
+            props.setProperty(prefix + "length", Long.toString(length));
+            props.setProperty(prefix + "lastModified", Long.toString(lastModified));
+            if (ruleSet != null) {
+                props.setProperty(prefix + "ruleset", ruleSet);
+            }
+            outcomes.forEach((step, outcome) -> props.setProperty(prefix + "outcome." + step, outcome));
+        }
+    }
+}
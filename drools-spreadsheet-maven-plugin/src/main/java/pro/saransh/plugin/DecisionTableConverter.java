@@ -0,0 +1,378 @@
+package pro.saransh.plugin;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.drools.decisiontable.InputType;
+import org.drools.decisiontable.parser.DefaultRuleSheetListener;
+import org.drools.decisiontable.parser.xls.ExcelParser;
+import org.drools.decisiontable.parser.xls.PropertiesSheetListener;
+import org.drools.template.model.DRLOutput;
+import org.drools.template.model.Global;
+import org.drools.template.model.Import;
+import org.drools.template.model.Package;
+import org.drools.template.model.Rule;
+import org.drools.template.parser.DataListener;
+import org.drools.template.parser.DecisionTableParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Converts decision table spreadsheets to DRL. XLSX files are streamed by {@link XlsxDecisionTableParser}, XLS
+ * files go through Drools' own parser. The DRL is written to the target writer line by line instead of being
+ * assembled into one string first.
+ * <p>
+ * Workbooks with several rule worksheets can also be converted one worksheet at a time with
+ * {@link #convertSheet(File, SpreadsheetModel, String)} and merged with {@link #render(List, Writer)}.
+ *
+ * @author Saransh Kumar
+ */
+
+public final class DecisionTableConverter {
+
+    static final String DEFAULT_RULESET = "rule_table";
+    private static final Set<String> MERGED_OPTIONS = new HashSet<>(Arrays.asList(
+            DefaultRuleSheetListener.RULESET_TAG.toLowerCase(Locale.ROOT),
+            DefaultRuleSheetListener.IMPORT_TAG.toLowerCase(Locale.ROOT),
+            DefaultRuleSheetListener.VARIABLES_TAG.toLowerCase(Locale.ROOT),
+            DefaultRuleSheetListener.FUNCTIONS_TAG.toLowerCase(Locale.ROOT),
+            DefaultRuleSheetListener.QUERIES_TAG.toLowerCase(Locale.ROOT),
+            DefaultRuleSheetListener.DECLARES_TAG.toLowerCase(Locale.ROOT)));
+
+    private DecisionTableConverter() {
+        // Utility class
+    }
+
+    public static String convert(File file, SpreadsheetModel model) throws IOException {
+        return convert(file, model, TaskProfiler.disabled());
+    }
+
+    public static String convert(File file, SpreadsheetModel model, TaskProfiler profiler) throws IOException {
+        StringWriter out = new StringWriter();
+        convert(file, model, out, profiler);
+        return out.toString();
+    }
+
+    public static void convert(File file, SpreadsheetModel model, Writer out) throws IOException {
+        convert(file, model, out, TaskProfiler.disabled());
+    }
+
+    /**
+     * Converts {@code file}, timing reading the workbook and rendering the DRL with {@code profiler}.
+     */
+    public static void convert(File file, SpreadsheetModel model, Writer out, TaskProfiler profiler)
+            throws IOException {
+        DefaultRuleSheetListener listener = new DefaultRuleSheetListener(true, true);
+        try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.READ)) {
+            if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+                new XlsxDecisionTableParser(listener).parseFile(file);
+            } else {
+                try (InputStream in = model.openStream(file)) {
+                    InputType.XLS.createParser(listener).parseFile(in);
+                }
+            }
+        }
+        try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.CONVERT)) {
+            listener.getRuleSet().renderDRL(new WriterDRLOutput(out));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Converts {@code file} the way {@code generate-drl} does: the first worksheet, or with {@code splitWorksheets}
+     * every worksheet with a RuleTable merged into one DRL.
+     *
+     * @return the DRL, or {@code null} if the spreadsheet has no RuleTable
+     */
+    public static String convertWorkbook(File file, SpreadsheetModel model, boolean splitWorksheets)
+            throws IOException {
+        try {
+            if (!splitWorksheets) {
+                return convert(file, model);
+            }
+        } catch (DecisionTableParseException e) {
+            if (GenerateDrl.isNoRuleTable(e)) {
+                return null;
+            }
+            throw e;
+        }
+        List<Worksheet> sheets = new ArrayList<>();
+        for (Worksheet sheet : convertSheets(file, model, SpreadsheetHeaderReader.readSheetNames(file),
+                TaskProfiler.disabled())) {
+            if (sheet != null) {
+                sheets.add(sheet);
+            }
+        }
+        if (sheets.isEmpty()) {
+            return null;
+        }
+        StringWriter out = new StringWriter();
+        render(sheets, out);
+        return out.toString();
+    }
+
+    /**
+     * Parses one worksheet of {@code file}.
+     *
+     * @return the parsed worksheet, or {@code null} if it has no RuleTable
+     */
+    public static Worksheet convertSheet(File file, SpreadsheetModel model, String sheetName) throws IOException {
+        return convertSheet(file, model, sheetName, TaskProfiler.disabled());
+    }
+
+    /**
+     * Parses one worksheet of {@code file}, timing it with {@code profiler}.
+     *
+     * @return the parsed worksheet, or {@code null} if it has no RuleTable
+     */
+    public static Worksheet convertSheet(File file, SpreadsheetModel model, String sheetName, TaskProfiler profiler)
+            throws IOException {
+        return convertSheets(file, model, Collections.singletonList(sheetName), profiler).get(0);
+    }
+
+    /**
+     * Parses the worksheets {@code sheetNames} of {@code file}, reading the workbook once for all of them.
+     *
+     * @return the parsed worksheets in the order of {@code sheetNames}, {@code null} for those without a RuleTable
+     */
+    public static List<Worksheet> convertSheets(File file, SpreadsheetModel model, List<String> sheetNames,
+                                                TaskProfiler profiler) throws IOException {
+        List<DefaultRuleSheetListener> listeners = readSheets(file, model, sheetNames, profiler);
+        List<Worksheet> sheets = new ArrayList<>();
+        for (int i = 0; i < sheetNames.size(); i++) {
+            sheets.add(toWorksheet(sheetNames.get(i), listeners.get(i)));
+        }
+        return sheets;
+    }
+
+    /**
+     * Reads {@code file} once, feeding each worksheet of {@code sheetNames} to a listener of its own.
+     *
+     * @return the listener of each worksheet, in the order of {@code sheetNames}
+     */
+    static List<DefaultRuleSheetListener> readSheets(File file, SpreadsheetModel model, List<String> sheetNames,
+                                                     TaskProfiler profiler) throws IOException {
+        Map<String, List<DataListener>> listeners = new LinkedHashMap<>();
+        List<DefaultRuleSheetListener> sheetListeners = new ArrayList<>();
+        for (String sheetName : sheetNames) {
+            DefaultRuleSheetListener listener = new DefaultRuleSheetListener(true, true);
+            listeners.put(sheetName, Collections.singletonList(listener));
+            sheetListeners.add(listener);
+        }
+        try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.READ)) {
+            if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+                new XlsxDecisionTableParser(listeners).parseFile(file);
+            } else {
+                try (InputStream in = model.openStream(file)) {
+                    new ExcelParser(listeners).parseFile(in);
+                }
+            }
+        }
+        return sheetListeners;
+    }
+
+    /**
+     * Builds the ruleset of a worksheet read by {@link #readSheets(File, SpreadsheetModel, List, TaskProfiler)}.
+     *
+     * @return the worksheet, or {@code null} if it has no RuleTable
+     */
+    static Worksheet toWorksheet(String sheetName, DefaultRuleSheetListener listener) {
+        try {
+            return new Worksheet(sheetName, listener);
+        } catch (DecisionTableParseException e) {
+            if (!GenerateDrl.isNoRuleTable(e)) {
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes the worksheets of one workbook, or of all workbooks of one package, as a single DRL file. The first
+     * worksheet provides the package, its attributes and dialect; imports and globals of every worksheet are merged,
+     * and functions, queries, declared types and rules follow in worksheet order. A worksheet may leave out the
+     * RuleSet, otherwise it must declare the same one as the first worksheet.
+     *
+     * @return the worksheet of each DRL line range, keyed by the first line of the range
+     */
+    public static NavigableMap<Integer, String> render(List<Worksheet> sheets, Writer out) throws IOException {
+        // Built anew from the first worksheet, so rendering leaves the parsed worksheets as they were
+        Package merged = sheets.get(0).newRuleSet();
+        List<List<Rule>> rules = new ArrayList<>();
+        Set<String> imports = new HashSet<>();
+        Set<String> globals = new HashSet<>();
+        StringBuilder functions = new StringBuilder();
+        StringBuilder queries = new StringBuilder();
+        StringBuilder declares = new StringBuilder();
+        for (int i = 0; i < sheets.size(); i++) {
+            Worksheet sheet = sheets.get(i);
+            Package ruleSet = sheet.ruleSet;
+            boolean first = i == 0;
+            if (!first && !DEFAULT_RULESET.equals(ruleSet.getName())
+                    && !ruleSet.getName().equals(merged.getName())) {
+                throw new DecisionTableParseException("Worksheet '" + sheet.name + "' declares RuleSet "
+                        + ruleSet.getName() + ", expected " + merged.getName());
+            }
+            for (Import anImport : ruleSet.getImports()) {
+                if (imports.add(anImport.getClassName()) && !first) {
+                    merged.addImport(anImport);
+                }
+            }
+            for (Global global : ruleSet.getVariables()) {
+                if (globals.add(global.getIdentifier()) && !first) {
+                    merged.addVariable(global);
+                }
+            }
+            append(functions, sheet.properties.getSingleProperty(DefaultRuleSheetListener.FUNCTIONS_TAG));
+            append(queries, sheet.properties.getSingleProperty(DefaultRuleSheetListener.QUERIES_TAG));
+            append(declares, sheet.properties.getSingleProperty(DefaultRuleSheetListener.DECLARES_TAG));
+            rules.add(new ArrayList<>(ruleSet.getRules()));
+        }
+        if (sheets.size() > 1) {
+            setIfPresent(functions, merged::addFunctions);
+            setIfPresent(queries, merged::addQueries);
+            setIfPresent(declares, merged::addDeclaredType);
+        }
+        merged.getRules().clear();
+        NavigableMap<Integer, String> sheetLines = new TreeMap<>();
+        WriterDRLOutput output = new WriterDRLOutput(out);
+        try {
+            merged.renderDRL(output);
+            for (int i = 0; i < sheets.size(); i++) {
+                sheetLines.put(output.lines + 1, sheets.get(i).name);
+                output.writeLine("// worksheet: " + sheets.get(i).name);
+                for (Rule rule : rules.get(i)) {
+                    rule.renderDRL(output);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return sheetLines;
+    }
+
+    private static void append(StringBuilder listing, String value) {
+        if (value != null && !value.trim().isEmpty()) {
+            listing.append(listing.length() > 0 ? "\n" : "").append(value);
+        }
+    }
+
+    private static void setIfPresent(StringBuilder listing, Consumer<String> setter) {
+        if (listing.length() > 0) {
+            setter.accept(listing.toString());
+        }
+    }
+
+    /**
+     * The rule set and sheet properties parsed from one worksheet.
+     */
+    public static final class Worksheet {
+
+        private final String name;
+        private final DefaultRuleSheetListener listener;
+        private final Package ruleSet;
+        private final PropertiesSheetListener.CaseInsensitiveMap properties;
+
+        private Worksheet(String name, DefaultRuleSheetListener listener) {
+            this(name, listener, listener.getRuleSet());
+        }
+
+        private Worksheet(String name, DefaultRuleSheetListener listener, Package ruleSet) {
+            this.name = name;
+            this.listener = listener;
+            this.ruleSet = ruleSet;
+            this.properties = listener.getProperties();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns this worksheet labelled {@code name} in the rendered DRL.
+         */
+        public Worksheet withName(String name) {
+            return new Worksheet(name, listener, ruleSet);
+        }
+
+        /**
+         * Returns a new rule set of this worksheet, sharing its rules, that can be changed without changing this
+         * worksheet.
+         */
+        private Package newRuleSet() {
+            return listener.getRuleSet();
+        }
+
+        public String getPackageName() {
+            return ruleSet.getName();
+        }
+
+        public List<String> getRuleNames() {
+            List<String> names = new ArrayList<>();
+            ruleSet.getRules().forEach(rule -> names.add(rule.getName()));
+            return names;
+        }
+
+        /**
+         * Returns the type of each global, by identifier.
+         */
+        public Map<String, String> getGlobals() {
+            Map<String, String> globals = new TreeMap<>();
+            ruleSet.getVariables().forEach(global -> globals.put(global.getIdentifier(), global.getClassName()));
+            return globals;
+        }
+
+        /**
+         * Returns the RuleSet options that apply to the whole package, such as attributes, {@code Sequential} or
+         * {@code Dialect}, leaving out the imports, globals, functions, queries and declared types that
+         * {@link #render(List, Writer)} merges.
+         */
+        public Map<String, String> getPackageOptions() {
+            Map<String, String> options = new TreeMap<>();
+            for (String key : properties.keySet()) {
+                String option = key.toLowerCase(Locale.ROOT);
+                if (!MERGED_OPTIONS.contains(option)) {
+                    options.put(option, properties.getSingleProperty(key));
+                }
+            }
+            return options;
+        }
+    }
+
+    private static final class WriterDRLOutput extends DRLOutput {
+
+        private final Writer out;
+        private int lines;
+
+        private WriterDRLOutput(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void writeLine(String line) {
+            try {
+                out.write(line);
+                out.write('\n');
+                lines += line.chars().filter(c -> c == '\n').count() + 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
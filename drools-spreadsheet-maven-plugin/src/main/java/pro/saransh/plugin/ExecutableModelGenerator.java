@@ -0,0 +1,213 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.drools.compiler.kie.builder.impl.InternalKieModule;
+import org.drools.modelcompiler.ExecutableModelProject;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.ReleaseId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the decision tables into the Drools executable model and writes its classes and metadata into the
+ * classes directory, so a KieContainer built from the classpath loads the precompiled rules instead of parsing DRL
+ * and generating code at runtime. The spreadsheets are converted like {@code generate-drl} does, then built
+ * together with the project's {@code kmodule.xml}; the DRL itself is not written.
+ *
+ * @author Saransh Kumar
+ */
+
+public class ExecutableModelGenerator {
+
+    private static final String GENERATED_CLASS_NAMES = "generated-class-names";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutableModelGenerator.class);
+    private static final String RESOURCES_ROOT = "src/main/resources/";
+    private static final String KMODULE_XML = "META-INF/kmodule.xml";
+    private final File resourceDir;
+    private final File classesDir;
+    private final List<File> spreadsheetFiles;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final boolean splitWorksheets;
+    private final ReleaseId releaseId;
+    private final File fileList;
+
+    /**
+     * @param classesDir directory the compiled classes of the project are in, usually {@code target/classes}
+     * @param releaseId  release of the project, which the runtime finds the model of the classpath by
+     * @param fileList   file listing what was written to {@code classesDir}, which the next run deletes first
+     */
+    public ExecutableModelGenerator(File resourceDir, File classesDir, List<File> spreadsheetFiles,
+                                    TaskScheduler scheduler, SpreadsheetModel model, boolean splitWorksheets,
+                                    ReleaseId releaseId, File fileList) {
+        this.resourceDir = resourceDir;
+        this.classesDir = classesDir;
+        this.spreadsheetFiles = spreadsheetFiles;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.splitWorksheets = splitWorksheets;
+        this.releaseId = releaseId;
+        this.fileList = fileList;
+    }
+
+    /**
+     * Generates the executable model. Must run with the project classes on the context class loader.
+     *
+     * @return the number of classes written
+     */
+    public int execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            List<File> files = spreadsheetFiles != null ? spreadsheetFiles
+                    : FileUtils.listSpreadsheetFiles(resourceDir);
+            Map<File, String> drls = convert(files);
+            if (drls.isEmpty()) {
+                LOGGER.warn("No decision tables with a RuleTable, no executable model generated");
+                deletePrevious(classesDir, fileList);
+                return 0;
+            }
+            InternalKieModule kieModule;
+            try (TaskProfiler.Span span = scheduler.getProfiler().start(drls.keySet(), TaskProfiler.Phase.BUILD)) {
+                kieModule = build(drls);
+            }
+            try (TaskProfiler.Span span = scheduler.getProfiler().start(drls.keySet(), TaskProfiler.Phase.WRITE)) {
+                return write(kieModule);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Converts every spreadsheet with a RuleTable, sorted by file.
+     */
+    private Map<File, String> convert(List<File> files) throws MojoExecutionException, MojoFailureException {
+        Map<File, String> drls = Collections.synchronizedMap(new TreeMap<>());
+        List<Future<Void>> futures = new ArrayList<>();
+        for (File file : TaskScheduler.largestFirst(files)) {
+            futures.add(scheduler.submit(() -> {
+                try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.CONVERT)) {
+                    String drl = DecisionTableConverter.convertWorkbook(file, model, splitWorksheets);
+                    if (drl == null) {
+                        LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
+                    } else {
+                        drls.put(file, drl);
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Failed to convert file: {}", file);
+                    LOGGER.error(e.getMessage());
+                    scheduler.reportError();
+                    throw e;
+                }
+                return null;
+            }, model.estimateParseCost(file), Collections.singletonList(file)));
+        }
+        int failed = 0;
+        for (Future<Void> f : futures) {
+            try {
+                scheduler.await(f);
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        if (failed > 0 || scheduler.isCancelled()) {
+            throw new MojoFailureException("Failed to convert " + failed + " decision tables");
+        }
+        return drls;
+    }
+
+    private InternalKieModule build(Map<File, String> drls) throws IOException, MojoFailureException {
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem().generateAndWritePomXML(releaseId);
+        File kmoduleFile = new File(resourceDir, KMODULE_XML);
+        if (kmoduleFile.exists()) {
+            kieFileSystem.writeKModuleXML(Files.readAllBytes(kmoduleFile.toPath()));
+        }
+        Set<String> paths = new HashSet<>();
+        for (Map.Entry<File, String> drl : drls.entrySet()) {
+            String path = Shards.relativePath(resourceDir, drl.getKey());
+            kieFileSystem.write(RESOURCES_ROOT + RuleBenchmark.uniqueResourcePath(path, drl.getValue(), paths),
+                    drl.getValue());
+        }
+        LOGGER.info("Compiling the executable model of {} decision tables", drls.size());
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+        kieBuilder.buildAll(ExecutableModelProject.class);
+        List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        if (!errors.isEmpty()) {
+            errors.forEach(msg -> LOGGER.error(msg.toString()));
+            throw new MojoFailureException("Executable model has " + errors.size() + " compilation errors");
+        }
+        return (InternalKieModule) kieBuilder.getKieModule();
+    }
+
+    /**
+     * Writes the classes and {@code META-INF/kie} metadata of {@code kieModule}, after removing the files written by
+     * the previous run. The project's own {@code kmodule.xml} is kept when the resources were already copied.
+     * {@code generated-class-names} is left out: the runtime would expect the listed classes in the KieModule itself
+     * rather than on the classpath and fail to load them.
+     */
+    private int write(InternalKieModule kieModule) throws IOException {
+        deletePrevious(classesDir, fileList);
+        List<String> written = new ArrayList<>();
+        int classes = 0;
+        for (String name : kieModule.getFileNames()) {
+            boolean isClass = name.endsWith(".class");
+            boolean isMetadata = name.startsWith("META-INF/kie/") && !name.endsWith("/" + GENERATED_CLASS_NAMES)
+                    || name.equals("META-INF/kmodule.info");
+            Path target = classesDir.toPath().resolve(name);
+            if (name.equals(KMODULE_XML) && !Files.exists(target)) {
+                isMetadata = true;
+            }
+            if (!isClass && !isMetadata) {
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            Files.write(target, kieModule.getBytes(name));
+            written.add(name);
+            if (isClass) {
+                classes++;
+            }
+        }
+        Files.createDirectories(fileList.getAbsoluteFile().getParentFile().toPath());
+        Files.write(fileList.toPath(), written, StandardCharsets.UTF_8);
+        LOGGER.info("Wrote {} executable model classes to {}", classes, classesDir);
+        return classes;
+    }
+
+    /**
+     * Returns the paths, relative to the classes directory, of the files the last run wrote, empty if there was none.
+     */
+    static List<String> readFileList(File fileList) throws IOException {
+        if (!fileList.exists()) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(fileList.toPath(), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.trim().isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static void deletePrevious(File classesDir, File fileList) throws IOException {
+        for (String name : readFileList(fileList)) {
+            Files.deleteIfExists(classesDir.toPath().resolve(name));
+        }
+        Files.deleteIfExists(fileList.toPath());
+    }
+}
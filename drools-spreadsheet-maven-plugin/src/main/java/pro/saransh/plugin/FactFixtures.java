@@ -0,0 +1,576 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.kie.api.KieBase;
+import org.kie.api.definition.type.FactField;
+import org.kie.api.definition.type.FactType;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Facts inserted into the sessions of a rule benchmark, loaded from the CSV and JSON files of a directory. The file
+ * name is the fully qualified name of the fact type, e.g. {@code com.acme.Order.csv}, either a class of the project
+ * or a type declared in the rules. Every CSV row or JSON object is one fact:
+ * <ul>
+ *     <li>CSV files start with a header row of property names, empty cells leave the property unset. Quoted cells
+ *     may contain commas and doubled quotes, but not line breaks.</li>
+ *     <li>JSON files hold an array of flat objects whose values are strings, numbers, booleans or {@code null}.</li>
+ * </ul>
+ * Properties are set through a setter or, without one, the field. Values are converted to the property type once,
+ * when the fixtures are loaded, so creating the facts of a session only instantiates them.
+ *
+ * @author Saransh Kumar
+ */
+
+public class FactFixtures {
+
+    private static final String CSV_SUFFIX = ".csv";
+    private static final String JSON_SUFFIX = ".json";
+
+    private final List<Fixture> fixtures;
+
+    private FactFixtures(List<Fixture> fixtures) {
+        this.fixtures = fixtures;
+    }
+
+    /**
+     * Loads every fixture file below {@code dir}, resolving fact types against {@code kieBase} and then
+     * {@code classLoader}.
+     */
+    public static FactFixtures load(File dir, KieBase kieBase, ClassLoader classLoader)
+            throws IOException, MojoExecutionException {
+        List<Path> files;
+        try (Stream<Path> tree = Files.walk(dir.toPath())) {
+            files = tree.filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(CSV_SUFFIX) || path.toString().endsWith(JSON_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<Fixture> fixtures = new ArrayList<>();
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            boolean csv = fileName.endsWith(CSV_SUFFIX);
+            String typeName = fileName.substring(0, fileName.length() - (csv ? CSV_SUFFIX : JSON_SUFFIX).length());
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            List<Map<String, String>> records;
+            try {
+                records = csv ? parseCsv(content) : parseJson(content);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException("Invalid fixture " + file + ": " + e.getMessage());
+            }
+            fixtures.add(Fixture.create(file, resolveType(typeName, kieBase, classLoader), records));
+        }
+        return new FactFixtures(fixtures);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of facts of a session.
+     */
+    public int size() {
+        return fixtures.stream().mapToInt(fixture -> fixture.records.size()).sum();
+    }
+
+    /**
+     * Creates new instances of every fact, in file and record order.
+     */
+    public List<Object> newFacts() throws ReflectiveOperationException {
+        List<Object> facts = new ArrayList<>(size());
+        for (Fixture fixture : fixtures) {
+            for (Object[] values : fixture.records) {
+                Object fact = fixture.type.newInstance();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        fixture.properties.get(i).set(fact, values[i]);
+                    }
+                }
+                facts.add(fact);
+            }
+        }
+        return facts;
+    }
+
+    private static Type resolveType(String typeName, KieBase kieBase, ClassLoader classLoader)
+            throws MojoExecutionException {
+        try {
+            return new ClassType(Class.forName(typeName, true, classLoader));
+        } catch (ClassNotFoundException e) {
+            // Declared in the rules, the kbase only allows looking up declared types
+        }
+        int dot = typeName.lastIndexOf('.');
+        FactType factType = dot > 0
+                ? kieBase.getFactType(typeName.substring(0, dot), typeName.substring(dot + 1)) : null;
+        if (factType == null) {
+            throw new MojoExecutionException("Fact type " + typeName + " is neither declared in the rules nor a"
+                    + " class of the project");
+        }
+        return new DeclaredType(factType);
+    }
+
+    static Object convert(String text, Class<?> type) {
+        if (type == String.class || type == Object.class) {
+            return text;
+        }
+        if (type == int.class || type == Integer.class) {
+            return Integer.valueOf(text.trim());
+        }
+        if (type == long.class || type == Long.class) {
+            return Long.valueOf(text.trim());
+        }
+        if (type == double.class || type == Double.class) {
+            return Double.valueOf(text.trim());
+        }
+        if (type == float.class || type == Float.class) {
+            return Float.valueOf(text.trim());
+        }
+        if (type == short.class || type == Short.class) {
+            return Short.valueOf(text.trim());
+        }
+        if (type == byte.class || type == Byte.class) {
+            return Byte.valueOf(text.trim());
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return Boolean.valueOf(text.trim());
+        }
+        if (type == char.class || type == Character.class) {
+            if (text.length() != 1) {
+                throw new IllegalArgumentException("'" + text + "' is not a single character");
+            }
+            return text.charAt(0);
+        }
+        if (type == BigDecimal.class) {
+            return new BigDecimal(text.trim());
+        }
+        if (type == BigInteger.class) {
+            return new BigInteger(text.trim());
+        }
+        if (type == LocalDate.class) {
+            return LocalDate.parse(text.trim());
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(text.trim());
+        }
+        if (type.isEnum()) {
+            return enumValue(type, text.trim());
+        }
+        throw new IllegalArgumentException("Unsupported property type " + type.getName());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String name) {
+        return Enum.valueOf((Class<? extends Enum>) type, name);
+    }
+
+    static List<Map<String, String>> parseCsv(String content) {
+        List<Map<String, String>> records = new ArrayList<>();
+        List<String> header = null;
+        int lineNumber = 0;
+        for (String line : content.split("\r?\n")) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> cells = parseCsvLine(line, lineNumber);
+            if (header == null) {
+                header = cells;
+                continue;
+            }
+            if (cells.size() > header.size()) {
+                throw new IllegalArgumentException("line " + lineNumber + " has more cells than the header");
+            }
+            Map<String, String> record = new LinkedHashMap<>();
+            for (int i = 0; i < cells.size(); i++) {
+                if (!cells.get(i).isEmpty()) {
+                    record.put(header.get(i).trim(), cells.get(i));
+                }
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<String> parseCsvLine(String line, int lineNumber) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote on line " + lineNumber);
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+
+    static List<Map<String, String>> parseJson(String content) {
+        JsonReader reader = new JsonReader(content);
+        List<Map<String, String>> records = reader.readArray();
+        reader.skipWhitespace();
+        if (!reader.atEnd()) {
+            throw reader.error("unexpected content after the array");
+        }
+        return records;
+    }
+
+    private interface Type {
+
+        Object newInstance() throws ReflectiveOperationException;
+
+        Property property(String name);
+    }
+
+    private interface Property {
+
+        Class<?> type();
+
+        void set(Object fact, Object value) throws ReflectiveOperationException;
+    }
+
+    private static final class Fixture {
+
+        private final Type type;
+        private final List<Property> properties;
+        private final List<Object[]> records;
+
+        private Fixture(Type type, List<Property> properties, List<Object[]> records) {
+            this.type = type;
+            this.properties = properties;
+            this.records = records;
+        }
+
+        private static Fixture create(Path file, Type type, List<Map<String, String>> records)
+                throws MojoExecutionException {
+            Map<String, Integer> columns = new LinkedHashMap<>();
+            List<Property> properties = new ArrayList<>();
+            for (int i = 0; i < records.size(); i++) {
+                for (String name : records.get(i).keySet()) {
+                    if (!columns.containsKey(name)) {
+                        if (name.isEmpty()) {
+                            // A trailing comma in an exported CSV header gives an unnamed column
+                            throw new MojoExecutionException("Invalid fixture " + file + ", record " + (i + 1)
+                                    + ": value of a property without a name");
+                        }
+                        Property property = type.property(name);
+                        if (property == null) {
+                            throw new MojoExecutionException("Invalid fixture " + file + ": no property '" + name
+                                    + "'");
+                        }
+                        columns.put(name, properties.size());
+                        properties.add(property);
+                    }
+                }
+            }
+            List<Object[]> converted = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                Object[] values = new Object[properties.size()];
+                for (Map.Entry<String, String> value : records.get(i).entrySet()) {
+                    int column = columns.get(value.getKey());
+                    if (value.getValue() == null) {
+                        continue;
+                    }
+                    try {
+                        values[column] = convert(value.getValue(), properties.get(column).type());
+                    } catch (IllegalArgumentException | DateTimeException e) {
+                        throw new MojoExecutionException("Invalid fixture " + file + ", record " + (i + 1) + ", '"
+                                + value.getKey() + "': " + e.getMessage());
+                    }
+                }
+                converted.add(values);
+            }
+            return new Fixture(type, properties, converted);
+        }
+    }
+
+    private static final class DeclaredType implements Type {
+
+        private final FactType factType;
+
+        private DeclaredType(FactType factType) {
+            this.factType = factType;
+        }
+
+        @Override
+        public Object newInstance() throws ReflectiveOperationException {
+            return factType.newInstance();
+        }
+
+        @Override
+        public Property property(String name) {
+            FactField field = factType.getField(name);
+            if (field == null) {
+                return null;
+            }
+            return new Property() {
+                @Override
+                public Class<?> type() {
+                    return field.getType();
+                }
+
+                @Override
+                public void set(Object fact, Object value) {
+                    field.set(fact, value);
+                }
+            };
+        }
+    }
+
+    private static final class ClassType implements Type {
+
+        private final Class<?> type;
+        private final Constructor<?> constructor;
+
+        private ClassType(Class<?> type) throws MojoExecutionException {
+            this.type = type;
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new MojoExecutionException("Fact class " + type.getName() + " needs a constructor without"
+                        + " arguments");
+            }
+        }
+
+        @Override
+        public Object newInstance() throws ReflectiveOperationException {
+            return constructor.newInstance();
+        }
+
+        @Override
+        public Property property(String name) {
+            String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(setterName) && method.getParameterCount() == 1) {
+                    return new Property() {
+                        @Override
+                        public Class<?> type() {
+                            return method.getParameterTypes()[0];
+                        }
+
+                        @Override
+                        public void set(Object fact, Object value) throws ReflectiveOperationException {
+                            method.invoke(fact, value);
+                        }
+                    };
+                }
+            }
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(name);
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        return null;
+                    }
+                    field.setAccessible(true);
+                    return new Property() {
+                        @Override
+                        public Class<?> type() {
+                            return field.getType();
+                        }
+
+                        @Override
+                        public void set(Object fact, Object value) throws ReflectiveOperationException {
+                            field.set(fact, value);
+                        }
+                    };
+                } catch (NoSuchFieldException e) {
+                    // Declared by a superclass
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads an array of flat JSON objects, keeping every value as its text.
+     */
+    private static final class JsonReader {
+
+        private final String json;
+        private int pos;
+
+        private JsonReader(String json) {
+            this.json = json;
+        }
+
+        private List<Map<String, String>> readArray() {
+            expect('[');
+            List<Map<String, String>> records = new ArrayList<>();
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return records;
+            }
+            while (true) {
+                records.add(readObject());
+                skipWhitespace();
+                char c = next();
+                if (c == ']') {
+                    return records;
+                }
+                if (c != ',') {
+                    throw error("expected ',' or ']'");
+                }
+            }
+        }
+
+        private Map<String, String> readObject() {
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return Collections.emptyMap();
+            }
+            Map<String, String> record = new LinkedHashMap<>();
+            while (true) {
+                skipWhitespace();
+                String name = readString();
+                expect(':');
+                record.put(name, readScalar());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return record;
+                }
+                if (c != ',') {
+                    throw error("expected ',' or '}'");
+                }
+            }
+        }
+
+        private String readScalar() {
+            skipWhitespace();
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("nested objects and arrays are not supported");
+            }
+            int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = json.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw error("expected a value");
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            throw error("truncated escape");
+                        }
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(escaped);
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            skipWhitespace();
+            if (next() != expected) {
+                throw error("expected '" + expected + "'");
+            }
+        }
+
+        private char peek() {
+            if (atEnd()) {
+                throw error("unexpected end");
+            }
+            return json.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean atEnd() {
+            return pos >= json.length();
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + pos);
+        }
+    }
+}
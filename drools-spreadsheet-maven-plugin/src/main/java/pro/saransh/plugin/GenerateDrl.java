@@ -2,24 +2,21 @@ package pro.saransh.plugin;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.drools.decisiontable.InputType;
-import org.drools.decisiontable.SpreadsheetCompiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Saransh Kumar
@@ -27,79 +24,219 @@ import java.util.concurrent.TimeUnit;
 
 public class GenerateDrl {
 
+    public static final String NAME = "drl";
     private static final Logger LOGGER = LoggerFactory.getLogger(GenerateDrl.class);
     private final File resourceDir;
     private final File outputDir;
     private final List<File> spreadsheetFiles;
-    private final int poolSize;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
+    private final boolean splitWorksheets;
+    private final ResultCache cache;
 
-    public GenerateDrl(File resourceDir, File outputDir, List<File> spreadsheetFiles, int poolSize) {
+    /**
+     * @param splitWorksheets convert every worksheet as its own task and merge the worksheets with a RuleTable
+     *                        into the DRL file, instead of converting only the first worksheet
+     * @param cache           shared cache the DRL of spreadsheets converted before is copied from, or {@code null}
+     */
+    public GenerateDrl(File resourceDir, File outputDir, List<File> spreadsheetFiles, TaskScheduler scheduler,
+                       SpreadsheetModel model, BuildState state, boolean splitWorksheets, ResultCache cache) {
         this.resourceDir = resourceDir;
         this.outputDir = outputDir;
         this.spreadsheetFiles = spreadsheetFiles;
-        this.poolSize = poolSize;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
+        this.splitWorksheets = splitWorksheets;
+        this.cache = cache;
     }
 
     public void execute() throws MojoExecutionException, MojoFailureException {
         try {
-            final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
             List<File> files;
             if (this.spreadsheetFiles == null) {
                 files = FileUtils.listSpreadsheetFiles(this.resourceDir);
             } else {
                 files = this.spreadsheetFiles;
             }
-            Path outputPath = Paths.get(this.outputDir.getPath(), "classes", "generated-drl");
-            if (!Files.exists(outputPath)) {
-                Files.createDirectories(outputPath);
-            }
-            SpreadsheetCompiler compiler = new SpreadsheetCompiler();
-            try {
-                List<Future<Void>> futures = new ArrayList<>();
-                for (File file : files) {
-                    futures.add(executor.submit(() -> {
-                        Path drlFile = outputPath.resolve(file.getName().replaceAll("\\.xlsx?$", ".drl"));
-                        LOGGER.info("Converting: {} -> {}", file, drlFile);
-
-                        try (FileInputStream fis = new FileInputStream(file);
-                             PrintWriter writer = new PrintWriter(drlFile.toFile())) {
-                            String drl = compiler.compile(fis, InputType.XLS);
-                            writer.write(drl);
-                        } catch (Exception e) {
-                            if (e.getMessage() != null && e.getMessage().contains("No RuleTable cells in spreadsheet")) {
-                                LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
-                            } else {
-                                LOGGER.error("Failed to convert file: {}", file);
-                                LOGGER.error(e.getMessage());
-                            }
-                        }
-                        return null;
-                    }));
-                }
-                for (Future<Void> f : futures) {
-                    try {
-                        f.get();
-                    } catch (Exception e) {
-                        Throwable cause = e.getCause() != null ? e.getCause() : e;
-                        if (cause instanceof MojoFailureException) {
-                            throw (MojoFailureException) cause;
-                        }
-                        throw new MojoExecutionException("Error while generating drl files", e);
+            Path outputPath = createOutputPath(this.outputDir);
+            GeneratePackageDrl.deleteOutput(this.outputDir);
+            TaskProfiler profiler = scheduler.getProfiler();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (File file : TaskScheduler.largestFirst(files)) {
+                Path drlFile = getDrlFile(outputPath, file);
+                try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.DISCOVERY)) {
+                    if (state != null && isUpToDate(state, file, drlFile, splitWorksheets)) {
+                        LOGGER.debug("Up to date: {} -> {}", file, drlFile);
+                        continue;
                     }
+                    if (cache != null && restore(file, drlFile)) {
+                        continue;
+                    }
+                }
+                if (splitWorksheets) {
+                    futures.addAll(WorksheetTasks.submit(scheduler, model, Collections.singletonList(file),
+                            results -> write(file, drlFile, writer -> {
+                                try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.CONVERT)) {
+                                    results.get(file).render(writer);
+                                }
+                            })));
+                } else {
+                    futures.add(scheduler.submit(() -> {
+                        write(file, drlFile, writer -> DecisionTableConverter.convert(file, model, writer, profiler));
+                        return null;
+                    }, model.estimateParseCost(file), Collections.singletonList(file)));
                 }
-            } finally {
-                executor.shutdown();
+            }
+            for (Future<Void> f : futures) {
                 try {
-                    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
+                    scheduler.await(f);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof MojoFailureException) {
+                        throw (MojoFailureException) cause;
                     }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Error while generating drl files", e);
                 }
             }
+            if (scheduler.isCancelled()) {
+                throw new MojoFailureException("DRL generation stopped after errors");
+            }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getMessage());
         }
     }
+
+    /**
+     * Streams the DRL of {@code file} to {@code drlFile}. Reading and converting, timed by {@code drlWriter}, are
+     * nested in the write phase.
+     */
+    private void write(File file, Path drlFile, DrlWriter drlWriter) throws IOException {
+        LOGGER.info("Converting: {} -> {}", file, drlFile);
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.WRITE)) {
+            String hash = cache != null ? contentHash(state, file) : null;
+            try {
+                writeAtomically(drlFile, drlWriter);
+                recordOutcome(file, BuildState.PASSED);
+            } catch (Exception e) {
+                Files.deleteIfExists(drlFile);
+                if (isNoRuleTable(e)) {
+                    LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
+                    recordOutcome(file, BuildState.SKIPPED);
+                    cacheOutcome(hash, BuildState.SKIPPED, null);
+                } else {
+                    LOGGER.error("Failed to convert file: {}", file);
+                    LOGGER.error(e.getMessage());
+                    recordOutcome(file, BuildState.FAILED);
+                    scheduler.reportError();
+                }
+                return;
+            }
+            cacheOutcome(hash, BuildState.PASSED, drlFile);
+        }
+    }
+
+    /**
+     * Copies the DRL of {@code file} from the cache, if it was converted before.
+     *
+     * @return whether the cache had the outcome of {@code file}
+     */
+    private boolean restore(File file, Path drlFile) throws IOException {
+        String hash = contentHash(state, file);
+        String outcome = cache.get(outcomeKey(cache, hash, splitWorksheets));
+        if (BuildState.SKIPPED.equals(outcome)) {
+            LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
+            recordOutcome(file, BuildState.SKIPPED);
+            return true;
+        }
+        String drl = BuildState.PASSED.equals(outcome)
+                ? cache.get(drlKey(cache, hash, splitWorksheets)) : null;
+        if (drl == null) {
+            return false;
+        }
+        LOGGER.info("Reusing cached DRL: {} -> {}", file, drlFile);
+        writeAtomically(drlFile, writer -> writer.write(drl));
+        recordOutcome(file, BuildState.PASSED);
+        return true;
+    }
+
+    private void cacheOutcome(String hash, String outcome, Path drlFile) throws IOException {
+        if (cache == null) {
+            return;
+        }
+        if (drlFile != null) {
+            String drl = new String(Files.readAllBytes(drlFile), StandardCharsets.UTF_8);
+            cache.put(drlKey(cache, hash, splitWorksheets), drl);
+        }
+        cache.put(outcomeKey(cache, hash, splitWorksheets), outcome);
+    }
+
+    /**
+     * Writes {@code drlFile} through a temporary file next to it that is moved into place, so a failed write or a
+     * concurrent build never leaves a partial DRL.
+     */
+    static void writeAtomically(Path drlFile, DrlWriter drlWriter) throws IOException {
+        Path tmp = Files.createTempFile(drlFile.getParent(), drlFile.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                drlWriter.write(writer);
+            }
+            Files.move(tmp, drlFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static String drlKey(ResultCache cache, String hash, boolean splitWorksheets) {
+        return cache.key(hash, NAME, String.valueOf(splitWorksheets));
+    }
+
+    static String outcomeKey(ResultCache cache, String hash, boolean splitWorksheets) {
+        return cache.key(hash, NAME + ".outcome", String.valueOf(splitWorksheets));
+    }
+
+    static String contentHash(BuildState state, File file) throws IOException {
+        return state != null ? state.getHash(file) : BuildState.hash(file.toPath());
+    }
+
+    static Path createOutputPath(File outputDir) throws IOException {
+        Path outputPath = Paths.get(outputDir.getPath(), "classes", "generated-drl");
+        if (!Files.exists(outputPath)) {
+            Files.createDirectories(outputPath);
+        }
+        return outputPath;
+    }
+
+    static Path getDrlFile(Path outputPath, File file) {
+        return outputPath.resolve(file.getName().replaceAll("\\.xlsx?$", ".drl"));
+    }
+
+    static boolean isNoRuleTable(Exception e) {
+        return e.getMessage() != null && e.getMessage().contains("No RuleTable cells in spreadsheet");
+    }
+
+    /**
+     * Returns the build state step of converting a spreadsheet, kept apart per {@code splitWorksheets} as the flag
+     * changes which worksheets are converted.
+     */
+    static String step(boolean splitWorksheets) {
+        return splitWorksheets ? NAME + ".split" : NAME;
+    }
+
+    static boolean isUpToDate(BuildState state, File file, Path drlFile, boolean splitWorksheets) throws IOException {
+        String outcome = state.getOutcome(file, step(splitWorksheets));
+        return BuildState.SKIPPED.equals(outcome) || BuildState.PASSED.equals(outcome) && Files.exists(drlFile);
+    }
+
+    private void recordOutcome(File file, String outcome) throws IOException {
+        if (state != null) {
+            state.setOutcome(file, step(splitWorksheets), outcome);
+        }
+    }
+
+    interface DrlWriter {
+
+        void write(Writer writer) throws IOException;
+    }
 }
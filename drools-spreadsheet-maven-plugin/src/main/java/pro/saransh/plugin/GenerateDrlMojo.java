@@ -1,7 +1,6 @@
 package pro.saransh.plugin;
 
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -12,6 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Saransh Kumar
@@ -19,15 +20,36 @@ import java.io.File;
 
 @Mojo(name = "generate-drl", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true,
         requiresDependencyResolution = ResolutionScope.COMPILE)
-public class GenerateDrlMojo extends AbstractMojo {
+public class GenerateDrlMojo extends AbstractSpreadsheetMojo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GenerateDrlMojo.class);
-    @Parameter(defaultValue = "${project.basedir}/src/main/resources", property = "resourcesDir")
-    private File resourcesDir;
     @Parameter(defaultValue = "${project.build.directory}", property = "outputDir")
     private File outputDir;
-    @Parameter(property = "poolSize", defaultValue = "1")
-    private int poolSize;
+    /**
+     * Git ref, e.g. {@code origin/main}, to only process spreadsheets added or modified since. Everything is
+     * processed when the project is not in a git work tree or the ref cannot be resolved.
+     */
+    @Parameter(property = "sinceRef")
+    private String sinceRef;
+    /**
+     * Index, from {@code 0}, of the part of the spreadsheets this build processes when they are split between
+     * {@code shardCount} builds.
+     */
+    @Parameter(property = "shardIndex", defaultValue = "0")
+    private int shardIndex;
+    /**
+     * Number of builds the spreadsheets are split between. Every build computes the same partitions, balanced by
+     * estimated parse cost, and {@code validate-all} writes its result to {@code shardDir} for {@code merge-shards}.
+     */
+    @Parameter(property = "shardCount", defaultValue = "1")
+    private int shardCount;
+    /**
+     * Writes one DRL file per RuleSet package, merging the decision tables that share it, instead of one per
+     * spreadsheet, and a {@code kmodule.xml} fragment with a kbase per package. Every spreadsheet is read, so
+     * {@code sinceRef} and shards do not apply.
+     */
+    @Parameter(property = "mergePackages", defaultValue = "false")
+    private boolean mergePackages;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -35,6 +57,31 @@ public class GenerateDrlMojo extends AbstractMojo {
             LOGGER.error("Resources directory not found: {}", resourcesDir.getAbsolutePath());
             throw new MojoExecutionException("Resources directory not found");
         }
-        new GenerateDrl(resourcesDir, outputDir, null, poolSize).execute();
+        SpreadsheetModel model = getSpreadsheetModel();
+        List<File> files;
+        try {
+            files = FileUtils.listSpreadsheetFiles(resourcesDir);
+            if (!mergePackages) {
+                files = selectShard(filterChanged(files, sinceRef), model, shardIndex, shardCount);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+        BuildState state = loadBuildState();
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler);
+             ResultCache cache = openResultCache()) {
+            if (mergePackages) {
+                new GeneratePackageDrl(resourcesDir, outputDir, files, scheduler, model, state,
+                        splitWorksheets).execute();
+            } else {
+                new GenerateDrl(resourcesDir, outputDir, files, scheduler, model, state,
+                        splitWorksheets, cache).execute();
+            }
+        } finally {
+            if (state != null) {
+                state.save();
+            }
+        }
     }
 }
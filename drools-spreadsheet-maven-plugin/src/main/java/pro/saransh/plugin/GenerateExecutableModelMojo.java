@@ -0,0 +1,120 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.drools.core.util.Drools;
+import org.kie.api.KieServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the decision tables into the Drools executable model in the classes directory, so the runtime loads
+ * precompiled rules instead of parsing DRL. Runs after {@code compile} because the model is compiled against the
+ * project's fact classes, and is skipped when no spreadsheet, {@code kmodule.xml} or class changed since the last
+ * run. Applications loading the model need {@code org.drools:drools-model-compiler} on their classpath.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "generate-model", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class GenerateExecutableModelMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GenerateExecutableModelMojo.class);
+    @Parameter(property = "classesDir", defaultValue = "${project.build.outputDirectory}")
+    private File classesDir;
+    /**
+     * Directory the inputs of the last generated model, compared against to skip an unchanged model, and the list of
+     * files it wrote to {@code classesDir} are kept in.
+     */
+    @Parameter(property = "modelStateDir", defaultValue = "${project.build.directory}/executable-model")
+    private File stateDir;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!resourcesDir.exists()) {
+            LOGGER.error("Resources directory not found: {}", resourcesDir.getAbsolutePath());
+            throw new MojoExecutionException("Resources directory not found");
+        }
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler);
+             ProjectClassLoaders.Lease lease = ProjectClassLoaders.acquire(project.getRuntimeClasspathElements())) {
+            List<File> files = FileUtils.listSpreadsheetFiles(resourcesDir);
+            File fileList = new File(stateDir, "files.txt");
+            Properties fingerprint = fingerprint(files, fileList);
+            if (incremental && fingerprint.equals(readFingerprint())) {
+                LOGGER.info("Executable model is up to date");
+                return;
+            }
+            new ExecutableModelGenerator(resourcesDir, classesDir, files, scheduler, getSpreadsheetModel(),
+                    splitWorksheets, KieServices.Factory.get().newReleaseId(project.getGroupId(),
+                    project.getArtifactId(), project.getVersion()), fileList).execute();
+            writeFingerprint(fingerprint(files, fileList));
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns what the model is generated from: the versions, options, spreadsheets, {@code kmodule.xml} and the
+     * classpath without the classes generated by the last run.
+     */
+    private Properties fingerprint(List<File> files, File fileList)
+            throws IOException, DependencyResolutionRequiredException {
+        Properties props = new Properties();
+        props.setProperty("versions", pluginVersion + "/" + Drools.getFullVersion());
+        props.setProperty("releaseId", project.getGroupId() + ":" + project.getArtifactId() + ":"
+                + project.getVersion());
+        props.setProperty("splitWorksheets", String.valueOf(splitWorksheets));
+        for (File file : files) {
+            props.setProperty("file." + Shards.relativePath(resourcesDir, file), BuildState.hash(file.toPath()));
+        }
+        File kmoduleFile = new File(resourcesDir, "META-INF/kmodule.xml");
+        if (kmoduleFile.exists()) {
+            props.setProperty("kmodule", BuildState.hash(kmoduleFile.toPath()));
+        }
+        List<String> generated = ExecutableModelGenerator.readFileList(fileList);
+        props.setProperty("generated", String.valueOf(!generated.isEmpty()
+                && generated.stream().allMatch(name -> new File(classesDir, name).exists())));
+        Set<String> generatedClassFiles = generated.stream()
+                .filter(name -> name.endsWith(".class"))
+                .map(name -> name.replace('/', File.separatorChar))
+                .collect(Collectors.toSet());
+        props.setProperty("classpath",
+                BuildState.hashClasspath(project.getRuntimeClasspathElements(), generatedClassFiles));
+        return props;
+    }
+
+    private Properties readFingerprint() throws IOException {
+        Properties props = new Properties();
+        File fingerprintFile = new File(stateDir, "inputs.properties");
+        if (fingerprintFile.exists()) {
+            try (InputStream in = Files.newInputStream(fingerprintFile.toPath())) {
+                props.load(in);
+            }
+        }
+        return props;
+    }
+
+    private void writeFingerprint(Properties props) throws IOException {
+        Files.createDirectories(stateDir.toPath());
+        try (OutputStream out = Files.newOutputStream(new File(stateDir, "inputs.properties").toPath())) {
+            props.store(out, "Inputs of the executable model");
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Writes one DRL file per ruleset package instead of one per spreadsheet. The decision tables are grouped by the
+ * RuleSet of their first worksheet, each package is rendered with {@link DecisionTableConverter#render} so its
+ * imports and globals are declared once, and the file is only rewritten when its content changed. A package fails
+ * when two of its tables define a rule with the same name, a global with different types or different RuleSet
+ * options, since the merged DRL would not compile or would change what the rules do.
+ * <p>
+ * Next to the DRL, {@value #KMODULE_FRAGMENT_FILE} gets one kbase per package, and
+ * {@value #MANIFEST_FILE} records which spreadsheets each package was generated from, so an unchanged package is
+ * skipped and the DRL of a package that disappeared is deleted.
+ *
+ * @author Saransh Kumar
+ */
+
+public class GeneratePackageDrl {
+
+    public static final String NAME = GenerateDrl.NAME + ".package";
+    static final String MANIFEST_FILE = "generated-drl-packages.properties";
+    static final String KMODULE_FRAGMENT_FILE = "generated-drl-kmodule.xml";
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeneratePackageDrl.class);
+    private final File resourceDir;
+    private final File outputDir;
+    private final List<File> spreadsheetFiles;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
+    private final boolean splitWorksheets;
+
+    /**
+     * @param spreadsheetFiles every spreadsheet of the project: a package is generated from all of its tables
+     */
+    public GeneratePackageDrl(File resourceDir, File outputDir, List<File> spreadsheetFiles, TaskScheduler scheduler,
+                              SpreadsheetModel model, BuildState state, boolean splitWorksheets) {
+        this.resourceDir = resourceDir;
+        this.outputDir = outputDir;
+        this.spreadsheetFiles = spreadsheetFiles;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
+        this.splitWorksheets = splitWorksheets;
+    }
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            List<File> files = spreadsheetFiles != null ? spreadsheetFiles
+                    : FileUtils.listSpreadsheetFiles(resourceDir);
+            Path outputPath = GenerateDrl.createOutputPath(outputDir);
+            deleteSpreadsheetDrls(outputPath, files);
+            Map<String, List<File>> packages = groupByPackage(files);
+            Properties previous = readManifest(outputDir);
+            Properties manifest = new Properties();
+            Map<String, Future<Boolean>> futures = new LinkedHashMap<>();
+            for (Map.Entry<String, List<File>> entry : packages.entrySet()) {
+                String packageName = entry.getKey();
+                List<File> members = entry.getValue();
+                String sources = members.stream().map(file -> Shards.relativePath(resourceDir, file))
+                        .collect(Collectors.joining(","));
+                manifest.setProperty(packageName, sources);
+                Path drlFile = getDrlFile(outputPath, packageName);
+                if (state != null && sources.equals(previous.getProperty(packageName))
+                        && isUpToDate(members, drlFile)) {
+                    LOGGER.debug("Up to date: package {} -> {}", packageName, drlFile);
+                    continue;
+                }
+                long cost = members.stream().mapToLong(model::estimateParseCost).sum();
+                futures.put(packageName, scheduler.submit(() -> generate(packageName, members, drlFile), cost,
+                        members));
+            }
+            int failed = 0;
+            for (Map.Entry<String, Future<Boolean>> future : futures.entrySet()) {
+                try {
+                    if (Boolean.FALSE.equals(scheduler.await(future.getValue()))) {
+                        failed++;
+                    }
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Error while generating the DRL of package "
+                            + future.getKey(), e);
+                }
+            }
+            for (String packageName : previous.stringPropertyNames()) {
+                if (!manifest.containsKey(packageName)) {
+                    LOGGER.info("Deleting DRL of removed package {}", packageName);
+                    Files.deleteIfExists(getDrlFile(outputPath, packageName));
+                }
+            }
+            writeManifest(manifest);
+            writeKmoduleFragment(outputPath, packages.keySet());
+            if (failed > 0 || scheduler.isCancelled()) {
+                throw new MojoFailureException("DRL generation failed for " + failed + " packages");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Groups the spreadsheets by RuleSet, each group and the groups sorted by path so the output is stable.
+     */
+    private Map<String, List<File>> groupByPackage(List<File> files) throws IOException {
+        Map<String, List<File>> packages = new TreeMap<>();
+        List<File> sorted = new ArrayList<>(files);
+        sorted.sort((a, b) -> Shards.relativePath(resourceDir, a).compareTo(Shards.relativePath(resourceDir, b)));
+        for (File file : sorted) {
+            String ruleSet = state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
+            String packageName = ruleSet != null && !ruleSet.trim().isEmpty() ? ruleSet.trim()
+                    : DecisionTableConverter.DEFAULT_RULESET;
+            packages.computeIfAbsent(packageName, p -> new ArrayList<>()).add(file);
+        }
+        return packages;
+    }
+
+    private boolean isUpToDate(List<File> members, Path drlFile) throws IOException {
+        boolean rendered = false;
+        for (File file : members) {
+            String outcome = state.getOutcome(file, step());
+            if (BuildState.PASSED.equals(outcome)) {
+                rendered = true;
+            } else if (!BuildState.SKIPPED.equals(outcome)) {
+                return false;
+            }
+        }
+        return !rendered || Files.exists(drlFile);
+    }
+
+    /**
+     * Renders the DRL of one package and writes it if it changed.
+     *
+     * @return whether the package was generated without errors
+     */
+    private boolean generate(String packageName, List<File> members, Path drlFile) throws IOException {
+        List<DecisionTableConverter.Worksheet> sheets = new ArrayList<>();
+        Map<File, DecisionTableConverter.Worksheet> firstSheets = new LinkedHashMap<>();
+        try {
+            for (File file : members) {
+                String path = Shards.relativePath(resourceDir, file);
+                List<String> sheetNames = SpreadsheetHeaderReader.readSheetNames(file);
+                if (!splitWorksheets && sheetNames.size() > 1) {
+                    sheetNames = sheetNames.subList(0, 1);
+                }
+                List<DecisionTableConverter.Worksheet> converted = DecisionTableConverter.convertSheets(file, model,
+                        sheetNames, scheduler.getProfiler());
+                for (DecisionTableConverter.Worksheet sheet : converted) {
+                    if (sheet != null) {
+                        sheet = sheet.withName(path + "!" + sheet.getName());
+                        sheets.add(sheet);
+                        firstSheets.putIfAbsent(file, sheet);
+                    }
+                }
+                if (!firstSheets.containsKey(file)) {
+                    LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
+                }
+            }
+            List<String> conflicts = findConflicts(sheets, firstSheets);
+            if (!conflicts.isEmpty()) {
+                LOGGER.error("Cannot merge the decision tables of package {}:", packageName);
+                conflicts.forEach(conflict -> LOGGER.error(" - {}", conflict));
+                return fail(members, drlFile);
+            }
+            if (sheets.isEmpty()) {
+                Files.deleteIfExists(drlFile);
+            } else {
+                write(packageName, members, sheets, drlFile);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to generate the DRL of package {}", packageName);
+            LOGGER.error(e.getMessage());
+            return fail(members, drlFile);
+        }
+        for (File file : members) {
+            recordOutcome(file, firstSheets.containsKey(file) ? BuildState.PASSED : BuildState.SKIPPED);
+        }
+        return true;
+    }
+
+    private void write(String packageName, List<File> members, List<DecisionTableConverter.Worksheet> sheets,
+                       Path drlFile) throws IOException {
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(members, TaskProfiler.Phase.WRITE)) {
+            StringWriter drl = new StringWriter();
+            DecisionTableConverter.render(sheets, drl);
+            byte[] content = drl.toString().getBytes(StandardCharsets.UTF_8);
+            if (Files.exists(drlFile) && Arrays.equals(content, Files.readAllBytes(drlFile))) {
+                LOGGER.debug("Unchanged: package {} -> {}", packageName, drlFile);
+                return;
+            }
+            LOGGER.info("Converting: package {} ({} worksheets) -> {}", packageName, sheets.size(), drlFile);
+            Files.createDirectories(drlFile.getParent());
+            // Written next to the DRL file and moved into place, so an interrupted build never leaves a partial DRL
+            Path tmp = Files.createTempFile(drlFile.getParent(), drlFile.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, content);
+                Files.move(tmp, drlFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the DRL files written per spreadsheet by {@link GenerateDrl}, which would load every rule of the
+     * package a second time.
+     */
+    private static void deleteSpreadsheetDrls(Path outputPath, List<File> files) throws IOException {
+        for (File file : files) {
+            Path drlFile = GenerateDrl.getDrlFile(outputPath, file);
+            if (Files.deleteIfExists(drlFile)) {
+                LOGGER.info("Deleting DRL of spreadsheet {}, merging packages instead", file);
+            }
+        }
+    }
+
+    /**
+     * Deletes the package DRL files recorded in the manifest under {@code outputDir}, with the manifest and the
+     * kmodule fragment, so DRL generated per spreadsheet does not load every rule a second time.
+     */
+    static void deleteOutput(File outputDir) throws IOException {
+        File manifestFile = new File(outputDir, MANIFEST_FILE);
+        if (!manifestFile.exists()) {
+            return;
+        }
+        Path outputPath = GenerateDrl.createOutputPath(outputDir);
+        Properties manifest = readManifest(outputDir);
+        for (String packageName : manifest.stringPropertyNames()) {
+            LOGGER.info("Deleting DRL of package {}, converting spreadsheets separately instead", packageName);
+            Files.deleteIfExists(getDrlFile(outputPath, packageName));
+        }
+        Files.deleteIfExists(new File(outputDir, KMODULE_FRAGMENT_FILE).toPath());
+        Files.delete(manifestFile.toPath());
+    }
+
+    /**
+     * Returns the rule names defined twice, the globals declared with different types and the RuleSet options that
+     * differ from the first spreadsheet of the package.
+     */
+    private static List<String> findConflicts(List<DecisionTableConverter.Worksheet> sheets,
+                                              Map<File, DecisionTableConverter.Worksheet> firstSheets) {
+        List<String> conflicts = new ArrayList<>();
+        Map<String, String> rules = new TreeMap<>();
+        Map<String, String> globals = new TreeMap<>();
+        Map<String, String> globalSheets = new TreeMap<>();
+        for (DecisionTableConverter.Worksheet sheet : sheets) {
+            for (String rule : sheet.getRuleNames()) {
+                String previous = rules.putIfAbsent(rule, sheet.getName());
+                if (previous != null) {
+                    conflicts.add("rule " + rule + " is defined in " + previous + " and " + sheet.getName());
+                }
+            }
+            for (Map.Entry<String, String> global : sheet.getGlobals().entrySet()) {
+                String type = globals.putIfAbsent(global.getKey(), global.getValue());
+                globalSheets.putIfAbsent(global.getKey(), sheet.getName());
+                if (type != null && !type.equals(global.getValue())) {
+                    conflicts.add("global " + global.getKey() + " is a " + type + " in "
+                            + globalSheets.get(global.getKey()) + " and a " + global.getValue() + " in "
+                            + sheet.getName());
+                }
+            }
+        }
+        DecisionTableConverter.Worksheet first = null;
+        for (DecisionTableConverter.Worksheet sheet : firstSheets.values()) {
+            if (first == null) {
+                first = sheet;
+                continue;
+            }
+            Map<String, String> expected = first.getPackageOptions();
+            Map<String, String> actual = sheet.getPackageOptions();
+            Map<String, String> keys = new TreeMap<>(expected);
+            keys.putAll(actual);
+            for (String option : keys.keySet()) {
+                if (!Objects.equals(expected.get(option), actual.get(option))) {
+                    conflicts.add("RuleSet option " + option + " is " + describe(expected.get(option)) + " in "
+                            + first.getName() + " but " + describe(actual.get(option)) + " in " + sheet.getName());
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private static String describe(String option) {
+        return option != null ? "'" + option + "'" : "not set";
+    }
+
+    private boolean fail(List<File> members, Path drlFile) throws IOException {
+        Files.deleteIfExists(drlFile);
+        for (File file : members) {
+            recordOutcome(file, BuildState.FAILED);
+        }
+        scheduler.reportError();
+        return false;
+    }
+
+    private void recordOutcome(File file, String outcome) throws IOException {
+        if (state != null) {
+            state.setOutcome(file, step(), outcome);
+        }
+    }
+
+    private String step() {
+        return splitWorksheets ? NAME + ".split" : NAME;
+    }
+
+    static Path getDrlFile(Path outputPath, String packageName) {
+        String[] segments = packageName.split("\\.");
+        return outputPath.resolve(packageName.replace('.', '/')).resolve(segments[segments.length - 1] + ".drl");
+    }
+
+    private static Properties readManifest(File outputDir) throws IOException {
+        Properties manifest = new Properties();
+        File file = new File(outputDir, MANIFEST_FILE);
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                manifest.load(in);
+            }
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Properties manifest) throws IOException {
+        try (OutputStream out = Files.newOutputStream(new File(outputDir, MANIFEST_FILE).toPath())) {
+            manifest.store(out, "Spreadsheets of each generated DRL package");
+        }
+    }
+
+    /**
+     * Writes a {@code kmodule.xml} with one kbase per package that has a DRL file, named after the package and
+     * selecting its rules by the package the DRL declares.
+     */
+    private void writeKmoduleFragment(Path outputPath, Iterable<String> packageNames) throws IOException {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<kmodule xmlns=\"http://www.drools.org/xsd/kmodule\">\n");
+        for (String packageName : packageNames) {
+            if (Files.exists(getDrlFile(outputPath, packageName))) {
+                xml.append("  <kbase name=\"").append(packageName).append("\" packages=\"").append(packageName)
+                        .append("\"/>\n");
+            }
+        }
+        xml.append("</kmodule>\n");
+        Files.write(new File(outputDir, KMODULE_FRAGMENT_FILE).toPath(),
+                xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,113 @@
+package pro.saransh.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lists files changed against a git ref with the {@code git} command line, using the local repository only. Changes
+ * are taken from the merge base of the ref and {@code HEAD} to the working tree, so commits made on the ref since the
+ * branch was created do not count, while uncommitted and untracked files do.
+ *
+ * @author Saransh Kumar
+ */
+
+public final class GitChanges {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitChanges.class);
+    private static final long TIMEOUT_SECONDS = 60;
+    // ProcessBuilder.Redirect.DISCARD needs Java 9
+    private static final File NULL_FILE = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL"
+            : "/dev/null");
+
+    private GitChanges() {
+        // Utility class
+    }
+
+    /**
+     * Returns the files under {@code dir} added, copied, modified or renamed since {@code ref}, or {@code null}
+     * when {@code dir} is not in a git work tree, git is not installed or the ref cannot be resolved.
+     */
+    public static Set<File> changedSince(File dir, String ref) {
+        try {
+            List<String> base = git(dir, "merge-base", ref, "HEAD");
+            String since = base.isEmpty() ? ref : base.get(0);
+            Set<File> changed = new HashSet<>();
+            for (String path : git(dir, "diff", "--name-only", "--relative", "--diff-filter=ACMR", since, "--", ".")) {
+                changed.add(new File(dir, path).getAbsoluteFile());
+            }
+            for (String path : git(dir, "ls-files", "--others", "--exclude-standard", "--", ".")) {
+                changed.add(new File(dir, path).getAbsoluteFile());
+            }
+            return changed;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot list changes since {}: {}", ref, e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<String> git(File dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-c");
+        command.add("core.quotePath=false");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(dir)
+                .redirectError(ProcessBuilder.Redirect.to(NULL_FILE))
+                .start();
+        // Read on its own thread, so the timeout applies even when git hangs without closing its output
+        FutureTask<List<String>> output = new FutureTask<>(() -> readLines(process));
+        Thread reader = new Thread(output, "git-" + args[0]);
+        reader.setDaemon(true);
+        reader.start();
+        List<String> lines;
+        try {
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException("git " + args[0] + " timed out");
+            }
+            lines = output.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            throw new IOException("Interrupted while running git " + args[0], e);
+        } catch (TimeoutException e) {
+            process.destroyForcibly();
+            throw new IOException("git " + args[0] + " timed out");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot read the output of git " + args[0], e.getCause());
+        }
+        if (process.exitValue() != 0) {
+            throw new IOException("git " + String.join(" ", args) + " exited with " + process.exitValue());
+        }
+        return lines;
+    }
+
+    private static List<String> readLines(Process process) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+}
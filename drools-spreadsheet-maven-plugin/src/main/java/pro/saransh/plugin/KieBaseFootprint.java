@@ -0,0 +1,334 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.drools.core.common.BaseNode;
+import org.drools.core.impl.InternalKnowledgeBase;
+import org.drools.core.reteoo.EntryPointNode;
+import org.drools.core.reteoo.NodeTypeEnums;
+import org.drools.core.reteoo.Sink;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.ReleaseId;
+import org.kie.api.definition.KiePackage;
+import org.kie.api.runtime.KieContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds KieBases one at a time and measures what they cost at runtime: rules, Rete nodes by type, how many
+ * condition nodes are shared between rules, build time and the heap they retain.
+ * <p>
+ * The retained heap is estimated as the used heap after a full GC with the KieBase built, minus the used heap after
+ * a full GC before building it. Builds therefore run one at a time, and each is removed from the KIE repository once
+ * measured. The estimate includes the compiled rule classes of the module, which a running service keeps as well.
+ *
+ * @author Saransh Kumar
+ */
+
+public class KieBaseFootprint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KieBaseFootprint.class);
+    private static final String RESOURCES_ROOT = "src/main/resources/";
+    private static final String GROUP_ID = "pro.saransh.footprint";
+    private static final AtomicInteger BUILDS = new AtomicInteger();
+    private static final String WARM_UP_DRL = "package pro.saransh.footprint;\nrule \"warm-up\"\nwhen\nthen\nend\n";
+
+    private final boolean measureHeap;
+    private boolean warmedUp;
+
+    /**
+     * @param measureHeap estimate the retained heap, at the cost of two full GCs per KieBase
+     */
+    public KieBaseFootprint(boolean measureHeap) {
+        this.measureHeap = measureHeap;
+    }
+
+    /**
+     * Builds the default KieBase of {@code drl} alone.
+     */
+    public Row analyze(String name, String sourceName, String drl) throws MojoFailureException {
+        KieServices kieServices = KieServices.Factory.get();
+        warmUp(kieServices);
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        KieContainer kieContainer = build(kieServices, Collections.singletonMap(sourceName, drl), null);
+        try {
+            KieBase kieBase = kieContainer.getKieBase();
+            long buildNanos = System.nanoTime() - start;
+            long heap = usedHeap() - heapBefore;
+            return count(name, kieBase, buildNanos, heap);
+        } finally {
+            dispose(kieServices, kieContainer);
+        }
+    }
+
+    /**
+     * Compiles {@code drls} with {@code kmoduleFile} once and creates every kbase it declares. The build time and
+     * retained heap of a kbase cover creating it from the compiled module; compiling the module is only logged.
+     */
+    public List<Row> analyzeKieBases(Map<String, String> drls, File kmoduleFile)
+            throws IOException, MojoFailureException {
+        KieServices kieServices = KieServices.Factory.get();
+        warmUp(kieServices);
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        KieContainer kieContainer = build(kieServices, drls, Files.readAllBytes(kmoduleFile.toPath()));
+        try {
+            long moduleNanos = System.nanoTime() - start;
+            long moduleHeap = usedHeap() - heapBefore;
+            LOGGER.info("Compiled {} DRL files in {} ms{}", drls.size(), TimeUnit.NANOSECONDS.toMillis(moduleNanos),
+                    measureHeap ? ", retaining " + formatBytes(moduleHeap) : "");
+            List<Row> rows = new ArrayList<>();
+            for (String name : new TreeSet<>(kieContainer.getKieBaseNames())) {
+                heapBefore = usedHeap();
+                start = System.nanoTime();
+                KieBase kieBase = kieContainer.getKieBase(name);
+                long buildNanos = System.nanoTime() - start;
+                rows.add(count(name, kieBase, buildNanos, usedHeap() - heapBefore));
+            }
+            return rows;
+        } finally {
+            dispose(kieServices, kieContainer);
+        }
+    }
+
+    /**
+     * Builds a trivial KieBase first, so that loading the compiler and the caches it fills on first use are not
+     * measured as the cost of the first KieBase.
+     */
+    private void warmUp(KieServices kieServices) throws MojoFailureException {
+        if (!warmedUp) {
+            dispose(kieServices, build(kieServices, Collections.singletonMap("warm-up.drl", WARM_UP_DRL), null));
+            warmedUp = true;
+        }
+    }
+
+    private static KieContainer build(KieServices kieServices, Map<String, String> drls, byte[] kmoduleXml)
+            throws MojoFailureException {
+        ReleaseId releaseId = kieServices.newReleaseId(GROUP_ID, "kiebase-" + BUILDS.incrementAndGet(), "1.0.0");
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem().generateAndWritePomXML(releaseId);
+        if (kmoduleXml != null) {
+            kieFileSystem.writeKModuleXML(kmoduleXml);
+        }
+        Set<String> paths = new HashSet<>();
+        drls.forEach((name, drl) -> kieFileSystem.write(RESOURCES_ROOT
+                + RuleBenchmark.uniqueResourcePath(name, drl, paths), drl));
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+        kieBuilder.buildAll();
+        List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        if (!errors.isEmpty()) {
+            kieServices.getRepository().removeKieModule(releaseId);
+            throw new MojoFailureException(errors.size() + " compilation errors, first: " + errors.get(0).getText());
+        }
+        return kieServices.newKieContainer(releaseId, Thread.currentThread().getContextClassLoader());
+    }
+
+    private static void dispose(KieServices kieServices, KieContainer kieContainer) {
+        ReleaseId releaseId = kieContainer.getReleaseId();
+        kieContainer.dispose();
+        kieServices.getRepository().removeKieModule(releaseId);
+    }
+
+    private long usedHeap() {
+        if (!measureHeap) {
+            return 0;
+        }
+        // A second collection picks up what finalization or reference processing freed in the first
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Walks the Rete network of {@code kieBase} from its entry points and counts every node once.
+     */
+    private Row count(String name, KieBase kieBase, long buildNanos, long heap) {
+        Row row = new Row(name, TimeUnit.NANOSECONDS.toMillis(buildNanos), measureHeap ? Math.max(0, heap) : -1);
+        for (KiePackage kiePackage : kieBase.getKiePackages()) {
+            row.rules += kiePackage.getRules().size();
+        }
+        if (!(kieBase instanceof InternalKnowledgeBase)) {
+            return row;
+        }
+        Set<BaseNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<BaseNode> pending = new ArrayDeque<>();
+        for (EntryPointNode entryPoint : ((InternalKnowledgeBase) kieBase).getRete().getEntryPointNodes().values()) {
+            pending.addAll(entryPoint.getObjectTypeNodes().values());
+        }
+        while (!pending.isEmpty()) {
+            BaseNode node = pending.poll();
+            if (!seen.add(node)) {
+                continue;
+            }
+            row.add(node);
+            Sink[] sinks = node.getSinks();
+            if (sinks != null) {
+                for (Sink sink : sinks) {
+                    if (sink instanceof BaseNode) {
+                        pending.add((BaseNode) sink);
+                    }
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Writes {@code rows} as CSV, one KieBase per line, to be sorted and filtered in a spreadsheet.
+     */
+    public static void writeCsv(List<Row> rows, File file) throws IOException {
+        Files.createDirectories(file.toPath().toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("name,rules,nodes,objectTypeNodes,alphaNodes,betaNodes,accumulateNodes,otherNodes,"
+                    + "terminalNodes,sharedNodes,sharedRatio,heapBytes,buildMs\n");
+            for (Row row : rows) {
+                out.write(String.format(Locale.ROOT, "\"%s\",%d,%d,%d,%d,%d,%d,%d,%d,%d,%.3f,%d,%d\n",
+                        row.name.replace("\"", "\"\""), row.rules, row.getNodes(), row.objectTypeNodes,
+                        row.alphaNodes, row.betaNodes, row.accumulateNodes, row.otherNodes, row.terminalNodes,
+                        row.sharedNodes, row.getSharedRatio(), row.heapBytes, row.buildMillis));
+            }
+        }
+    }
+
+    /**
+     * Orders rows from the largest retained heap down, or from the most nodes down when heap was not measured.
+     */
+    public static Comparator<Row> largestFirst() {
+        return Comparator.comparingLong((Row row) -> row.heapBytes)
+                .thenComparingInt(Row::getNodes)
+                .thenComparingLong(row -> row.buildMillis)
+                .reversed()
+                .thenComparing(row -> row.name);
+    }
+
+    static String formatBytes(long bytes) {
+        return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * The footprint of one KieBase. Condition nodes are alpha, beta, accumulate and other nodes between the object
+     * type nodes and the terminal nodes; the shared ratio is the share of them used by more than one rule.
+     */
+    public static final class Row {
+
+        private final String name;
+        private final long buildMillis;
+        private final long heapBytes;
+        private int rules;
+        private int objectTypeNodes;
+        private int alphaNodes;
+        private int betaNodes;
+        private int accumulateNodes;
+        private int otherNodes;
+        private int terminalNodes;
+        private int sharedNodes;
+
+        private Row(String name, long buildMillis, long heapBytes) {
+            this.name = name;
+            this.buildMillis = buildMillis;
+            this.heapBytes = heapBytes;
+        }
+
+        private void add(BaseNode node) {
+            short type = node.getType();
+            if (type == NodeTypeEnums.ObjectTypeNode) {
+                objectTypeNodes++;
+                return;
+            }
+            if (NodeTypeEnums.isTerminalNode(node)) {
+                terminalNodes++;
+                return;
+            }
+            if (type == NodeTypeEnums.AlphaNode) {
+                alphaNodes++;
+            } else if (type == NodeTypeEnums.AccumulateNode) {
+                accumulateNodes++;
+            } else if (NodeTypeEnums.isBetaNode(node)) {
+                betaNodes++;
+            } else {
+                otherNodes++;
+            }
+            if (node.getAssociationsSize() > 1) {
+                sharedNodes++;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRules() {
+            return rules;
+        }
+
+        public int getNodes() {
+            return objectTypeNodes + getConditionNodes() + terminalNodes;
+        }
+
+        public int getConditionNodes() {
+            return alphaNodes + betaNodes + accumulateNodes + otherNodes;
+        }
+
+        public int getAlphaNodes() {
+            return alphaNodes;
+        }
+
+        public int getBetaNodes() {
+            return betaNodes;
+        }
+
+        public int getAccumulateNodes() {
+            return accumulateNodes;
+        }
+
+        public int getSharedNodes() {
+            return sharedNodes;
+        }
+
+        public double getSharedRatio() {
+            return getConditionNodes() > 0 ? (double) sharedNodes / getConditionNodes() : 0;
+        }
+
+        /**
+         * Returns the estimated retained heap, or {@code -1} when it was not measured.
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+
+        public long getBuildMillis() {
+            return buildMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d rules, %d nodes (%d alpha, %d beta, %d accumulate), %.0f%%"
+                            + " shared, %s, %d ms", name, rules, getNodes(), alphaNodes, betaNodes, accumulateNodes,
+                    getSharedRatio() * 100, formatBytes(heapBytes), buildMillis);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.drools.compiler.kie.builder.impl.KieBuilderImpl;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.builder.model.KieBaseModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles every kbase of {@code kmodule.xml} the way it is deployed: from the decision tables whose RuleSet is in
+ * its {@code packages} and those of the kbases it {@code includes}, transitively, with its own settings. Kbases are
+ * built in include order, a level at a time, and the kbases of a level in parallel; a kbase whose include failed is
+ * not compiled. With a build state, a kbase is only compiled again when one of its decision tables, its definition or
+ * the classpath changed, so a changed spreadsheet rebuilds the kbases that contain it and the ones including those.
+ *
+ * @author Saransh Kumar
+ */
+
+public class KieBaseGraphValidator implements Validator {
+
+    public static final String NAME = "kbase";
+    private static final Logger LOGGER = LoggerFactory.getLogger(KieBaseGraphValidator.class);
+    private static final String RESOURCES_ROOT = "src/main/resources/";
+    private final MavenProject project;
+    private final File resourceDir;
+    private final List<File> spreadsheetFiles;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
+    private final boolean splitWorksheets;
+
+    /**
+     * @param spreadsheetFiles every spreadsheet of the module, whatever changed, as the kbases are made of them
+     * @param state            build state the outcome of each kbase is recorded in for its decision tables, or
+     *                         {@code null} to compile every kbase
+     */
+    public KieBaseGraphValidator(MavenProject project, File resourceDir, List<File> spreadsheetFiles,
+                                 TaskScheduler scheduler, SpreadsheetModel model, BuildState state,
+                                 boolean splitWorksheets) {
+        this.project = project;
+        this.resourceDir = resourceDir;
+        this.spreadsheetFiles = spreadsheetFiles;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
+        this.splitWorksheets = splitWorksheets;
+    }
+
+    @Override
+    public void validate() throws MojoExecutionException, MojoFailureException {
+        try {
+            File kmoduleFile = FileUtils.getKModuleFile(resourceDir);
+            if (!kmoduleFile.exists()) {
+                LOGGER.warn("No kmodule.xml in {}, no kbases to validate", resourceDir);
+                return;
+            }
+            Document document = parse(kmoduleFile);
+            Map<String, KieBaseNode> kbases = readKieBases(document);
+            List<List<KieBaseNode>> levels = sortByIncludes(kbases);
+            List<File> files = spreadsheetFiles != null ? spreadsheetFiles
+                    : FileUtils.listSpreadsheetFiles(resourceDir);
+            assignFiles(levels, readRuleSets(files));
+
+            List<KieBaseNode> changed = new ArrayList<>();
+            Set<File> changedFiles = new HashSet<>();
+            for (List<KieBaseNode> level : levels) {
+                for (KieBaseNode kbase : level) {
+                    kbase.step = NAME + "." + kbase.name + "." + signature(kbase);
+                    if (kbase.files.isEmpty()) {
+                        LOGGER.warn("kbase {} has no decision tables", kbase.name);
+                    } else if (!isUpToDate(kbase)) {
+                        changed.add(kbase);
+                        changedFiles.addAll(kbase.files);
+                    }
+                }
+            }
+            LOGGER.info("{} of {} kbases unchanged since last validation", kbases.size() - changed.size(),
+                    kbases.size());
+            if (changed.isEmpty()) {
+                return;
+            }
+            for (KieBaseNode kbase : changed) {
+                kbase.kmoduleXml = flatten(document, kbase);
+            }
+            Map<File, String> drls = new ConcurrentHashMap<>();
+            Set<File> unconverted = convert(changedFiles, drls);
+            try (ProjectClassLoaders.Lease lease = ProjectClassLoaders.acquire(project.getRuntimeClasspathElements())) {
+                build(levels, new HashSet<>(changed), drls, unconverted);
+            }
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage());
+        } catch (ParserConfigurationException | SAXException | TransformerException e) {
+            throw new MojoExecutionException("Invalid kmodule.xml: " + e.getMessage(), e);
+        }
+    }
+
+    private static Document parse(File kmoduleFile) throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Document document = dbf.newDocumentBuilder().parse(kmoduleFile);
+        document.getDocumentElement().normalize();
+        return document;
+    }
+
+    /**
+     * Returns every kbase of {@code document}, in declaration order. Includes of kbases not declared in this
+     * {@code kmodule.xml}, such as those of a dependency, are left out with a warning.
+     */
+    static Map<String, KieBaseNode> readKieBases(Document document) throws MojoExecutionException {
+        Map<String, KieBaseNode> kbases = new LinkedHashMap<>();
+        NodeList elements = document.getElementsByTagNameNS("*", "kbase");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            KieBaseNode kbase = new KieBaseNode(element);
+            if (kbases.put(kbase.name, kbase) != null) {
+                throw new MojoExecutionException("Invalid kmodule.xml, kbase " + kbase.name + " is declared twice");
+            }
+        }
+        for (KieBaseNode kbase : kbases.values()) {
+            for (String name : split(kbase.element.getAttribute("includes"))) {
+                KieBaseNode include = kbases.get(name);
+                if (include == null) {
+                    LOGGER.warn("kbase {} includes {}, which is not declared in kmodule.xml and not validated",
+                            kbase.name, name);
+                } else {
+                    kbase.includes.add(include);
+                }
+            }
+        }
+        return kbases;
+    }
+
+    /**
+     * Groups the kbases by level: a kbase comes one level after the deepest kbase it includes, so every level only
+     * includes kbases of the levels before it.
+     */
+    static List<List<KieBaseNode>> sortByIncludes(Map<String, KieBaseNode> kbases) throws MojoExecutionException {
+        Map<KieBaseNode, Integer> depths = new HashMap<>();
+        List<List<KieBaseNode>> levels = new ArrayList<>();
+        for (KieBaseNode kbase : kbases.values()) {
+            int depth = depth(kbase, depths, new ArrayDeque<>());
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(depth).add(kbase);
+        }
+        return levels;
+    }
+
+    private static int depth(KieBaseNode kbase, Map<KieBaseNode, Integer> depths, Deque<KieBaseNode> path)
+            throws MojoExecutionException {
+        Integer known = depths.get(kbase);
+        if (known != null) {
+            return known;
+        }
+        if (path.contains(kbase)) {
+            StringBuilder cycle = new StringBuilder();
+            for (Iterator<KieBaseNode> it = path.descendingIterator(); it.hasNext(); ) {
+                cycle.append(it.next().name).append(" -> ");
+            }
+            throw new MojoExecutionException("Invalid kmodule.xml, kbase includes form a cycle: " + cycle
+                    + kbase.name);
+        }
+        path.push(kbase);
+        int depth = 0;
+        for (KieBaseNode include : kbase.includes) {
+            depth = Math.max(depth, depth(include, depths, path) + 1);
+        }
+        path.pop();
+        depths.put(kbase, depth);
+        return depth;
+    }
+
+    /**
+     * Reads the RuleSet of every spreadsheet; decision tables without one are compiled into the default package.
+     */
+    private Map<File, String> readRuleSets(List<File> files) throws MojoExecutionException {
+        Map<File, String> ruleSets = new ConcurrentHashMap<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (File file : TaskScheduler.largestFirst(files)) {
+            futures.add(scheduler.submit(() -> {
+                try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.DISCOVERY)) {
+                    String ruleSet = state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
+                    ruleSets.put(file, ruleSet != null ? ruleSet : DecisionTableConverter.DEFAULT_RULESET);
+                }
+                return null;
+            }, 0, Collections.singletonList(file)));
+        }
+        for (Future<Void> f : futures) {
+            try {
+                scheduler.await(f);
+            } catch (Exception e) {
+                throw new MojoExecutionException("Error while reading decision table rulesets", e);
+            }
+        }
+        return ruleSets;
+    }
+
+    /**
+     * Gives every kbase the decision tables of its packages and of the kbases it includes, levels being in include
+     * order.
+     */
+    private static void assignFiles(List<List<KieBaseNode>> levels, Map<File, String> ruleSets) {
+        KieServices kieServices = KieServices.Factory.get();
+        for (List<KieBaseNode> level : levels) {
+            for (KieBaseNode kbase : level) {
+                KieBaseModel kieBaseModel = kieServices.newKieModuleModel().newKieBaseModel(kbase.name);
+                kbase.packages.forEach(kieBaseModel::addPackage);
+                for (Map.Entry<File, String> ruleSet : ruleSets.entrySet()) {
+                    if (kbase.packages.isEmpty()
+                            || KieBuilderImpl.isPackageInKieBase(kieBaseModel, ruleSet.getValue())) {
+                        kbase.files.add(ruleSet.getKey());
+                    }
+                }
+                kbase.includes.forEach(include -> kbase.files.addAll(include.files));
+            }
+        }
+    }
+
+    /**
+     * Hashes what the kbase is compiled from besides the content of its decision tables: its definition, those of
+     * the kbases it includes and which decision tables it has.
+     */
+    private String signature(KieBaseNode kbase) {
+        MessageDigest digest = BuildState.newDigest();
+        Deque<KieBaseNode> pending = new ArrayDeque<>(Collections.singleton(kbase));
+        Set<KieBaseNode> seen = new HashSet<>();
+        while (!pending.isEmpty()) {
+            KieBaseNode next = pending.pop();
+            if (seen.add(next)) {
+                digest.update(next.definition().getBytes(StandardCharsets.UTF_8));
+                pending.addAll(next.includes);
+            }
+        }
+        for (File file : kbase.files) {
+            digest.update(Shards.relativePath(resourceDir, file).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        digest.update(String.valueOf(splitWorksheets).getBytes(StandardCharsets.UTF_8));
+        return BuildState.toHex(digest.digest()).substring(0, 12);
+    }
+
+    private boolean isUpToDate(KieBaseNode kbase) throws IOException {
+        if (state == null) {
+            return false;
+        }
+        for (File file : kbase.files) {
+            if (!state.isUpToDate(file, kbase.step)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a {@code kmodule.xml} declaring only {@code kbase}, its includes replaced by their packages, so the
+     * kbase is compiled once from all of its decision tables.
+     */
+    private static String flatten(Document document, KieBaseNode kbase) throws TransformerException {
+        Document copy = (Document) document.cloneNode(true);
+        NodeList elements = copy.getElementsByTagNameNS("*", "kbase");
+        for (int i = elements.getLength() - 1; i >= 0; i--) {
+            Element element = (Element) elements.item(i);
+            if (!kbase.name.equals(element.getAttribute("name"))) {
+                element.getParentNode().removeChild(element);
+                continue;
+            }
+            element.removeAttribute("includes");
+            Set<String> packages = new LinkedHashSet<>();
+            if (collectPackages(kbase, packages, new HashSet<>())) {
+                element.setAttribute("packages", String.join(",", packages));
+            } else {
+                element.removeAttribute("packages");
+            }
+        }
+        StringWriter out = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(copy), new StreamResult(out));
+        return out.toString();
+    }
+
+    /**
+     * Adds the packages of {@code kbase} and its includes to {@code packages}.
+     *
+     * @return {@code false} if one of them has all packages
+     */
+    private static boolean collectPackages(KieBaseNode kbase, Set<String> packages, Set<KieBaseNode> seen) {
+        if (!seen.add(kbase)) {
+            return true;
+        }
+        if (kbase.packages.isEmpty()) {
+            return false;
+        }
+        packages.addAll(kbase.packages);
+        for (KieBaseNode include : kbase.includes) {
+            if (!collectPackages(include, packages, seen)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts every spreadsheet of the kbases to compile once, as most belong to more than one kbase.
+     *
+     * @return the spreadsheets that failed to convert
+     */
+    private Set<File> convert(Set<File> files, Map<File, String> drls) {
+        Set<File> failed = ConcurrentHashMap.newKeySet();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (File file : TaskScheduler.largestFirst(files)) {
+            futures.add(scheduler.submit(() -> {
+                try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.CONVERT)) {
+                    String drl = DecisionTableConverter.convertWorkbook(file, model, splitWorksheets);
+                    if (drl != null) {
+                        drls.put(file, drl);
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Failed to convert {}: {}", file.getAbsolutePath(), e.getMessage());
+                    failed.add(file);
+                }
+                return null;
+            }, model.estimateParseCost(file), Collections.singletonList(file)));
+        }
+        for (Future<Void> f : futures) {
+            try {
+                scheduler.await(f);
+            } catch (Exception e) {
+                LOGGER.debug("Conversion task failed", e);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Compiles the changed kbases level by level, the kbases of a level in parallel.
+     */
+    private void build(List<List<KieBaseNode>> levels, Set<KieBaseNode> changed, Map<File, String> drls,
+                       Set<File> unconverted) throws MojoExecutionException, MojoFailureException {
+        Set<KieBaseNode> failed = ConcurrentHashMap.newKeySet();
+        for (List<KieBaseNode> level : levels) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (KieBaseNode kbase : level) {
+                if (!changed.contains(kbase) || scheduler.isCancelled()) {
+                    continue;
+                }
+                Optional<KieBaseNode> failedInclude = kbase.includes.stream().filter(failed::contains).findFirst();
+                if (failedInclude.isPresent()) {
+                    LOGGER.error("kbase {} not compiled, the kbase {} it includes failed", kbase.name,
+                            failedInclude.get().name);
+                    failed.add(kbase);
+                    continue;
+                }
+                long cost = kbase.files.stream().mapToLong(File::length).sum();
+                futures.add(scheduler.submit(() -> {
+                    if (!compile(kbase, drls, unconverted)) {
+                        failed.add(kbase);
+                        scheduler.reportError();
+                    }
+                    return null;
+                }, cost, kbase.files));
+            }
+            for (Future<Void> f : futures) {
+                try {
+                    scheduler.await(f);
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Error while validating kbases", e);
+                }
+            }
+        }
+        if (!failed.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            failed.forEach(kbase -> names.add(kbase.name));
+            Collections.sort(names);
+            throw new MojoFailureException("kbases failed to compile: " + names);
+        }
+        if (scheduler.isCancelled()) {
+            throw new MojoFailureException("kbase validation failed, stopped after first errors");
+        }
+    }
+
+    /**
+     * Compiles {@code kbase} from its decision tables and records the outcome for each of them.
+     *
+     * @return whether the kbase compiled without errors
+     */
+    private boolean compile(KieBaseNode kbase, Map<File, String> drls, Set<File> unconverted) throws IOException {
+        for (File file : kbase.files) {
+            if (unconverted.contains(file)) {
+                LOGGER.error("kbase {} not compiled, {} failed to convert", kbase.name,
+                        Shards.relativePath(resourceDir, file));
+                recordOutcome(kbase, BuildState.FAILED);
+                return false;
+            }
+        }
+        List<Message> errors;
+        Map<String, File> paths = new HashMap<>();
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(kbase.files, TaskProfiler.Phase.BUILD)) {
+            KieServices kieServices = KieServices.Factory.get();
+            KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+            kieFileSystem.writeKModuleXML(kbase.kmoduleXml);
+            Set<String> used = new HashSet<>();
+            for (File file : kbase.files) {
+                String drl = drls.get(file);
+                if (drl == null) {
+                    continue;
+                }
+                String path = RuleBenchmark.uniqueResourcePath(Shards.relativePath(resourceDir, file), drl,
+                        used);
+                paths.put(path, file);
+                kieFileSystem.write(RESOURCES_ROOT + path, drl);
+            }
+            LOGGER.debug("Compiling kbase {} from {} decision tables", kbase.name, paths.size());
+            KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+            kieBuilder.buildAll();
+            errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        } catch (Exception e) {
+            LOGGER.error("Failed to compile kbase {}: {}", kbase.name, e.getMessage());
+            recordOutcome(kbase, BuildState.FAILED);
+            return false;
+        }
+        if (!errors.isEmpty()) {
+            for (Message msg : errors) {
+                String path = msg.getPath() != null && msg.getPath().startsWith(RESOURCES_ROOT)
+                        ? msg.getPath().substring(RESOURCES_ROOT.length()) : msg.getPath();
+                File file = path != null ? paths.get(path) : null;
+                LOGGER.error("kbase {}{}: {}", kbase.name,
+                        file != null ? " [" + Shards.relativePath(resourceDir, file) + "]" : "", msg.getText());
+            }
+            recordOutcome(kbase, BuildState.FAILED);
+            return false;
+        }
+        LOGGER.info("kbase {} compiled from {} decision tables", kbase.name, paths.size());
+        recordOutcome(kbase, BuildState.PASSED);
+        return true;
+    }
+
+    private void recordOutcome(KieBaseNode kbase, String outcome) throws IOException {
+        if (state == null) {
+            return;
+        }
+        // Outcomes of earlier definitions of this kbase can no longer be up to date
+        String previous = NAME + "." + kbase.name + ".";
+        for (File file : kbase.files) {
+            state.replaceOutcome(file, previous, kbase.step, outcome);
+        }
+    }
+
+    private static List<String> split(String list) {
+        List<String> values = new ArrayList<>();
+        for (String value : list.split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A kbase of {@code kmodule.xml}, with the kbases it includes and, once assigned, its decision tables.
+     */
+    static final class KieBaseNode {
+
+        private final Element element;
+        private final String name;
+        private final List<String> packages;
+        private final List<KieBaseNode> includes = new ArrayList<>();
+        private final Set<File> files = new TreeSet<>();
+        private String step;
+        private String kmoduleXml;
+
+        private KieBaseNode(Element element) throws MojoExecutionException {
+            this.element = element;
+            this.name = element.getAttribute("name");
+            if (name.isEmpty()) {
+                throw new MojoExecutionException("Invalid kmodule.xml, kbase without a name");
+            }
+            this.packages = split(element.getAttribute("packages"));
+        }
+
+        /**
+         * Returns the attributes and content of the kbase element, which its settings and sessions are declared in.
+         */
+        private String definition() {
+            Map<String, String> attributes = new TreeMap<>();
+            NamedNodeMap map = element.getAttributes();
+            for (int i = 0; i < map.getLength(); i++) {
+                attributes.put(map.item(i).getNodeName(), map.item(i).getNodeValue());
+            }
+            StringBuilder sb = new StringBuilder(attributes.toString());
+            try {
+                StringWriter out = new StringWriter();
+                Transformer transformer = TransformerFactory.newInstance().newTransformer();
+                transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                NodeList children = element.getChildNodes();
+                for (int i = 0; i < children.getLength(); i++) {
+                    Node child = children.item(i);
+                    if (child.getNodeType() == Node.ELEMENT_NODE) {
+                        transformer.transform(new DOMSource(child), new StreamResult(out));
+                    }
+                }
+                sb.append(out);
+            } catch (TransformerException e) {
+                throw new IllegalStateException(e);
+            }
+            return sb.toString();
+        }
+    }
+}
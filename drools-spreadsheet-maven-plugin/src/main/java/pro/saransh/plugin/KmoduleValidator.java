@@ -16,10 +16,8 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Saransh Kumar
@@ -27,86 +25,112 @@ import java.util.concurrent.TimeUnit;
 
 public class KmoduleValidator implements Validator {
 
+    public static final String NAME = "kmodule";
     private static final Logger LOGGER = LoggerFactory.getLogger(KmoduleValidator.class);
     private final File resourceDir;
     private final List<File> spreadsheetFiles;
-    private final int poolSize;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
 
     public KmoduleValidator(File resourceDir, List<File> spreadsheetFiles, int poolSize) {
+        this(resourceDir, spreadsheetFiles, new TaskScheduler(poolSize), new SpreadsheetModel(), null);
+    }
+
+    public KmoduleValidator(File resourceDir, List<File> spreadsheetFiles, TaskScheduler scheduler,
+                            SpreadsheetModel model, BuildState state) {
         this.resourceDir = resourceDir;
         this.spreadsheetFiles = spreadsheetFiles;
-        this.poolSize = poolSize > 0 ? poolSize : 1;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
     }
 
     @Override
     public void validate() throws MojoExecutionException, MojoFailureException {
         try {
-            File kmoduleFile = FileUtils.getKModuleFile(this.resourceDir);
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document document = db.parse(kmoduleFile);
-            document.getDocumentElement().normalize();
-            NodeList kbases = document.getElementsByTagName("kbase");
-            Set<String> ruleSets = new HashSet<>();
-            for (int i = 0; i < kbases.getLength(); i++) {
-                Node kbase = kbases.item(i);
-                if (kbase.getNodeType() == Node.ELEMENT_NODE && kbase instanceof Element) {
-                    Element element = (Element) kbase;
-                    String packages = element.getAttribute("packages").replace(" ", "");
-                    String[] packagesSplitted = packages.split(",");
-                    ruleSets.addAll(Arrays.asList(packagesSplitted));
-                }
-            }
+            Set<String> ruleSets = readPackages(FileUtils.getKModuleFile(this.resourceDir));
             List<File> files;
             if (this.spreadsheetFiles == null) {
                 files = FileUtils.listSpreadsheetFiles(this.resourceDir);
             } else {
                 files = this.spreadsheetFiles;
             }
-            final ExecutorService executor = Executors.newFixedThreadPool(this.poolSize);
             LOGGER.info("Validating {} kmodule.xml with pool size {}", files.size(),
-                    this.poolSize);
-            Set<String> fileRuleSets = new HashSet<>();
-            try {
-                List<Future<Void>> futures = new ArrayList<>();
-                for (File file : files) {
-                    futures.add(executor.submit(() -> {
-                        String ruleSet = FileUtils.readRuleSet(file);
-                        if (ruleSet == null) {
-                            throw new MojoExecutionException("Invalid rule, file path - " + file.getName());
-                        }
-                        fileRuleSets.add(ruleSet);
-                        return null;
-                    }));
-                }
-
-                // Wait for all tasks to complete and propagate any unexpected exceptions
-                for (Future<Void> f : futures) {
-                    try {
-                        f.get();
-                    } catch (Exception e) {
-                        throw new MojoExecutionException("Error while validating kmodule.xml", e);
+                    scheduler.getParallelism());
+            Set<String> fileRuleSets = ConcurrentHashMap.newKeySet();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (File file : TaskScheduler.largestFirst(files)) {
+                futures.add(scheduler.submit(() -> {
+                    String ruleSet;
+                    try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.DISCOVERY)) {
+                        ruleSet = state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
                     }
-                }
-            } finally {
-                executor.shutdown();
+                    if (ruleSet == null) {
+                        scheduler.reportError();
+                        throw new MojoExecutionException("Invalid rule, file path - " + file.getName());
+                    }
+                    fileRuleSets.add(ruleSet);
+                    return null;
+                }, 0, Collections.singletonList(file)));
+            }
+
+            // Wait for all tasks to complete and propagate any unexpected exceptions
+            for (Future<Void> f : futures) {
                 try {
-                    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
+                    scheduler.await(f);
+                } catch (Exception e) {
+                    // Nothing waits for the remaining lookups anymore; the scheduler is shared with the
+                    // other validators, so only this validator's own tasks are cancelled
+                    for (Future<Void> other : futures) {
+                        other.cancel(false);
                     }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Error while validating kmodule.xml", e);
                 }
             }
-            ruleSets.removeAll(fileRuleSets);
-            if (!ruleSets.isEmpty()) {
-                throw new MojoExecutionException("Invalid Kmodule.xml, mismatch between file ruleset and kmodule packages - " + ruleSets);
+            if (scheduler.isCancelled()) {
+                LOGGER.warn("Skipping kmodule.xml package check, validation stopped after errors");
+                return;
             }
+            checkPackages(ruleSets, fileRuleSets);
         } catch (IOException e) {
             throw new MojoFailureException(e);
         } catch (ParserConfigurationException | SAXException e) {
             throw new MojoExecutionException(e);
         }
     }
+
+    /**
+     * Returns the packages of every kbase declared in {@code kmoduleFile}.
+     */
+    static Set<String> readPackages(File kmoduleFile) throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        Document document = db.parse(kmoduleFile);
+        document.getDocumentElement().normalize();
+        NodeList kbases = document.getElementsByTagName("kbase");
+        Set<String> ruleSets = new HashSet<>();
+        for (int i = 0; i < kbases.getLength(); i++) {
+            Node kbase = kbases.item(i);
+            if (kbase.getNodeType() == Node.ELEMENT_NODE && kbase instanceof Element) {
+                Element element = (Element) kbase;
+                String packages = element.getAttribute("packages").replace(" ", "");
+                String[] packagesSplitted = packages.split(",");
+                ruleSets.addAll(Arrays.asList(packagesSplitted));
+            }
+        }
+        return ruleSets;
+    }
+
+    /**
+     * Fails if a kmodule package is not the ruleset of any spreadsheet.
+     */
+    static void checkPackages(Set<String> kmodulePackages, Collection<String> fileRuleSets)
+            throws MojoExecutionException {
+        Set<String> ruleSets = new HashSet<>(kmodulePackages);
+        ruleSets.removeAll(fileRuleSets);
+        if (!ruleSets.isEmpty()) {
+            throw new MojoExecutionException("Invalid Kmodule.xml, mismatch between file ruleset and kmodule packages - " + ruleSets);
+        }
+    }
 }
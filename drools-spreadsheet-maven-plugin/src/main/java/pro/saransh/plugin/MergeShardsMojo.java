@@ -0,0 +1,154 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Combines the results that the shards of a sharded {@code validate-all} wrote to {@code shardDir} and runs the
+ * checks that need every spreadsheet: no two spreadsheets may declare the same ruleset, and every kmodule.xml
+ * package must be the ruleset of a spreadsheet. Spreadsheets no shard validated, e.g. because they did not change
+ * since {@code sinceRef}, are read from {@code resourcesDir}. Fails if any shard failed, a shard result is missing or
+ * a shard result was written for other spreadsheets than those in {@code resourcesDir}.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "merge-shards", threadSafe = true)
+public class MergeShardsMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MergeShardsMojo.class);
+
+    @Parameter(property = "validators", defaultValue = "table,kmodule")
+    private List<String> validators;
+    @Parameter(property = "shardDir", defaultValue = "${project.build.directory}/spreadsheet-shards")
+    private File shardDir;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        List<Shards.Result> results;
+        try {
+            List<File> files = resourcesDir.isDirectory() ? FileUtils.listSpreadsheetFiles(resourcesDir)
+                    : Collections.<File>emptyList();
+            results = readResults(Shards.inputDigest(resourcesDir, files, null));
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+        List<String> failures = new ArrayList<>();
+        Map<String, String> ruleSets = new TreeMap<>();
+        for (Shards.Result result : results) {
+            for (String failure : result.getFailures()) {
+                failures.add("shard " + result.getIndex() + " " + failure);
+            }
+            ruleSets.putAll(result.getRuleSets());
+        }
+        try {
+            addUnvalidated(ruleSets);
+            if (validators.stream().anyMatch(SpreadsheetRuleSetValidator.NAME::equalsIgnoreCase)) {
+                checkDuplicates(ruleSets, failures);
+            }
+            if (validators.stream().anyMatch(KmoduleValidator.NAME::equalsIgnoreCase)) {
+                File kmoduleFile = FileUtils.getKModuleFile(resourcesDir);
+                try {
+                    KmoduleValidator.checkPackages(KmoduleValidator.readPackages(kmoduleFile), ruleSets.values());
+                } catch (MojoExecutionException e) {
+                    failures.add(KmoduleValidator.NAME + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new MojoExecutionException(e);
+        }
+        LOGGER.info("Merged {} shard results covering {} spreadsheets", results.size(), ruleSets.size());
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> LOGGER.error("Validation failed - {}", failure));
+            throw new MojoFailureException("Spreadsheet validation failed: " + String.join("; ", failures));
+        }
+    }
+
+    /**
+     * Reads the result of every shard, rejecting results of a run over other spreadsheets than {@code input}, the
+     * digest of the spreadsheets in {@code resourcesDir}.
+     */
+    private List<Shards.Result> readResults(String input) throws MojoExecutionException, MojoFailureException {
+        File[] files = shardDir.listFiles((dir, name) -> name.startsWith(Shards.RESULT_PREFIX)
+                && name.endsWith(Shards.RESULT_SUFFIX));
+        if (files == null || files.length == 0) {
+            throw new MojoExecutionException("No shard results found in " + shardDir.getAbsolutePath());
+        }
+        Map<Integer, Shards.Result> results = new TreeMap<>();
+        int count = -1;
+        for (File file : files) {
+            Shards.Result result;
+            try {
+                result = Shards.Result.read(file);
+            } catch (IOException | NumberFormatException e) {
+                throw new MojoExecutionException("Failed to read shard result " + file + ": " + e.getMessage());
+            }
+            if (count != -1 && result.getCount() != count) {
+                throw new MojoExecutionException("Shard results in " + shardDir.getAbsolutePath()
+                        + " come from builds with different shard counts");
+            }
+            if (!input.equals(result.getInput())) {
+                throw new MojoExecutionException("Shard result " + file + " was not written for the spreadsheets in "
+                        + resourcesDir.getAbsolutePath() + ", it is left over from an earlier run");
+            }
+            count = result.getCount();
+            results.put(result.getIndex(), result);
+        }
+        Set<Integer> missing = new TreeSet<>();
+        for (int index = 0; index < count; index++) {
+            if (!results.containsKey(index)) {
+                missing.add(index);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new MojoFailureException("Missing results of shards " + missing + " of " + count);
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private void addUnvalidated(Map<String, String> ruleSets) throws IOException {
+        if (!resourcesDir.isDirectory()) {
+            return;
+        }
+        SpreadsheetModel model = getSpreadsheetModel();
+        for (File file : FileUtils.listSpreadsheetFiles(resourcesDir)) {
+            String path = Shards.relativePath(resourcesDir, file);
+            if (!ruleSets.containsKey(path)) {
+                String ruleSet = model.getRuleSet(file);
+                if (ruleSet != null) {
+                    ruleSets.put(path, ruleSet);
+                }
+            }
+        }
+    }
+
+    private static void checkDuplicates(Map<String, String> ruleSets, List<String> failures) {
+        Map<String, List<String>> paths = new TreeMap<>();
+        ruleSets.forEach((path, ruleSet) -> paths.computeIfAbsent(ruleSet, r -> new ArrayList<>()).add(path));
+        paths.forEach((ruleSet, files) -> {
+            if (files.size() > 1) {
+                LOGGER.error("Duplicate B1 value '{}' found in:", ruleSet);
+                files.forEach(file -> LOGGER.error(" - {}", file));
+                failures.add(SpreadsheetRuleSetValidator.NAME + ": Duplicate B1 value '" + ruleSet + "'");
+            }
+        });
+    }
+}
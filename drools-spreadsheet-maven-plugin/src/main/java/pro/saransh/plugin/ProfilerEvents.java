@@ -0,0 +1,108 @@
+package pro.saransh.plugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of {@link TaskProfiler}, recorded when the build runs with a flight recording, e.g.
+ * {@code MAVEN_OPTS=-XX:StartFlightRecording=filename=build.jfr}. Only this class refers to {@code jdk.jfr}, so the
+ * plugin still runs on JVMs without it; {@link #AVAILABLE} must be checked before calling any method.
+ *
+ * @author Saransh Kumar
+ */
+
+final class ProfilerEvents {
+
+    static final boolean AVAILABLE = isAvailable();
+
+    private ProfilerEvents() {
+        // Utility class
+    }
+
+    static Object beginPhase() {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitPhase(Object begun, String spreadsheets, String phase, long cpuNanos, long allocatedBytes) {
+        PhaseEvent event = (PhaseEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.spreadsheets = spreadsheets;
+            event.phase = phase;
+            event.cpuTime = cpuNanos;
+            event.allocated = allocatedBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginTask() {
+        TaskEvent event = new TaskEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitTask(Object begun, String spreadsheets, long queueNanos, long cost) {
+        TaskEvent event = (TaskEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.spreadsheets = spreadsheets;
+            event.queueWait = queueNanos;
+            event.cost = cost;
+            event.commit();
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Name("pro.saransh.SpreadsheetPhase")
+    @Label("Spreadsheet Phase")
+    @Description("One phase of the work done for a spreadsheet, or for a batch of spreadsheets compiled together")
+    @Category({"Drools Spreadsheet Plugin"})
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+
+        @Label("Spreadsheets")
+        String spreadsheets;
+        @Label("Phase")
+        String phase;
+        @Label("CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long cpuTime;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    @Name("pro.saransh.SpreadsheetTask")
+    @Label("Spreadsheet Task")
+    @Description("A task run by the worker pool, from start to end")
+    @Category({"Drools Spreadsheet Plugin"})
+    @StackTrace(false)
+    static final class TaskEvent extends Event {
+
+        @Label("Spreadsheets")
+        String spreadsheets;
+        @Label("Queue Wait")
+        @Description("Time between submitting the task and a worker starting it")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        @Label("Estimated Heap")
+        @DataAmount
+        long cost;
+    }
+}
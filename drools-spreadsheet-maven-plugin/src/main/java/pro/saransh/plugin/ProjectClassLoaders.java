@@ -0,0 +1,184 @@
+package pro.saransh.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Classloaders over project runtime classpaths, shared by every execution of this plugin in the JVM. Modules of a
+ * reactor, or successive builds in a Maven daemon, that resolve to the same classpath (same elements, with files of
+ * the same sizes and modification times) reuse one loader, so project and dependency classes are loaded and warmed
+ * up once. Loaders that are no longer leased are closed once more than {@value #MAX_CACHED} classpaths have been
+ * seen.
+ *
+ * @author Saransh Kumar
+ */
+
+public final class ProjectClassLoaders {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProjectClassLoaders.class);
+    private static final int MAX_CACHED = 4;
+    private static final LinkedHashMap<String, Entry> LOADERS = new LinkedHashMap<>(16, 0.75f, true);
+
+    private ProjectClassLoaders() {
+        // Utility class
+    }
+
+    /**
+     * Leases a loader over {@code elements} whose parent is the context classloader of the calling thread and
+     * installs it as that context classloader. Closing the lease restores the previous context classloader.
+     */
+    public static Lease acquire(List<String> elements) throws IOException {
+        Thread thread = Thread.currentThread();
+        ClassLoader parent = thread.getContextClassLoader();
+        String key = key(elements) + "@" + System.identityHashCode(parent);
+        Entry entry;
+        synchronized (LOADERS) {
+            entry = LOADERS.get(key);
+            if (entry == null || entry.parent != parent) {
+                entry = new Entry(newLoader(elements, parent), parent);
+                Entry replaced = LOADERS.put(key, entry);
+                // A leased loader is closed when its last lease is, as it is no longer cached
+                if (replaced != null && replaced.leases == 0) {
+                    close(replaced.loader);
+                }
+                LOGGER.debug("Created classloader over {} classpath elements", elements.size());
+            } else {
+                LOGGER.debug("Reusing classloader over {} classpath elements", elements.size());
+            }
+            entry.leases++;
+            evict();
+        }
+        thread.setContextClassLoader(entry.loader);
+        return new Lease(entry, thread, parent);
+    }
+
+    /**
+     * Keys a classpath on its element paths and the size and modification time of every file under them, which
+     * notices rebuilt classes without reading any of them.
+     */
+    private static String key(List<String> elements) throws IOException {
+        MessageDigest digest = BuildState.newDigest();
+        for (String element : elements) {
+            Path path = Paths.get(element);
+            digest.update(element.getBytes(StandardCharsets.UTF_8));
+            if (Files.isDirectory(path)) {
+                List<Path> children;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    children = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path child : children) {
+                    digest.update(path.relativize(child).toString().getBytes(StandardCharsets.UTF_8));
+                    update(digest, child);
+                }
+            } else if (Files.isRegularFile(path)) {
+                update(digest, path);
+            }
+        }
+        return BuildState.toHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        digest.update((attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ";")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static URLClassLoader newLoader(List<String> elements, ClassLoader parent) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String path : elements) {
+            File f = new File(path);
+            if (f.exists()) {
+                urls.add(f.toURI().toURL());
+                LOGGER.debug("Added classpath element: {}", f);
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[0]), parent);
+    }
+
+    private static void evict() {
+        Iterator<Entry> it = LOADERS.values().iterator();
+        int excess = LOADERS.size() - MAX_CACHED;
+        while (excess > 0 && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest.leases > 0) {
+                continue;
+            }
+            it.remove();
+            excess--;
+            close(eldest.loader);
+        }
+    }
+
+    private static void close(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close project classloader: {}", e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+
+        private final URLClassLoader loader;
+        private final ClassLoader parent;
+        private int leases;
+
+        private Entry(URLClassLoader loader, ClassLoader parent) {
+            this.loader = loader;
+            this.parent = parent;
+        }
+    }
+
+    public static final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private final Thread thread;
+        private final ClassLoader previous;
+        private boolean closed;
+
+        private Lease(Entry entry, Thread thread, ClassLoader previous) {
+            this.entry = entry;
+            this.thread = thread;
+            this.previous = previous;
+        }
+
+        public ClassLoader getClassLoader() {
+            return entry.loader;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread.setContextClassLoader(previous);
+            synchronized (LOADERS) {
+                entry.leases--;
+                if (entry.leases == 0 && !LOADERS.containsValue(entry)) {
+                    ProjectClassLoaders.close(entry.loader);
+                } else {
+                    evict();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package pro.saransh.plugin;
+
+import org.drools.core.util.Drools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Content-addressed store of validation outcomes and generated DRL that can be shared between workspaces, e.g. the
+ * checkouts of several branches on one CI agent. Entries are keyed by the content hash of the spreadsheet, the step,
+ * anything else the result depends on (such as the classpath fingerprint), the Drools version and the plugin
+ * version, so an entry is never stale, only unused.
+ * <p>
+ * Entries are written to a temporary file and moved into place, so concurrent builds never read a partial entry.
+ * Reading an entry refreshes its modification time; when the cache grows beyond its size limit, the entries least
+ * recently used are deleted.
+ *
+ * @author Saransh Kumar
+ */
+
+public class ResultCache implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long STALE_TMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path dir;
+    private final long maxBytes;
+    private final String versions;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    public ResultCache(File dir, long maxBytes, String pluginVersion) {
+        this.dir = dir.toPath();
+        this.maxBytes = maxBytes;
+        this.versions = pluginVersion + "/" + Drools.getFullVersion();
+    }
+
+    /**
+     * Returns the key of the result of {@code step} for a spreadsheet with content hash {@code contentHash}.
+     *
+     * @param context everything else the result depends on
+     */
+    public String key(String contentHash, String step, String... context) {
+        MessageDigest digest = BuildState.newDigest();
+        digest.update(versions.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(contentHash.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(step.getBytes(StandardCharsets.UTF_8));
+        for (String value : context) {
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        }
+        return BuildState.toHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached value of {@code key}, or {@code null} if there is none.
+     */
+    public String get(String key) {
+        Path entry = entry(key);
+        try {
+            String value = new String(Files.readAllBytes(entry), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return value;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOGGER.debug("Ignoring unreadable cache entry {}: {}", entry, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String key, String value) {
+        Path entry = entry(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            tmp = Files.createTempFile(entry.getParent(), key, TMP_SUFFIX);
+            Files.write(tmp, value.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            writes.incrementAndGet();
+        } catch (IOException e) {
+            // Another build may be evicting the directory, the result is simply not cached
+            LOGGER.debug("Failed to write cache entry {}: {}", entry, e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Removed with the stale temporary files
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries while the cache is larger than its limit.
+     */
+    @Override
+    public void close() {
+        if (hits.get() > 0 || writes.get() > 0) {
+            LOGGER.info("Result cache {}: {} hits, {} new entries", dir, hits.get(), writes.get());
+        }
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Cached> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue;
+                }
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP_SUFFIX) && now - lastModified > STALE_TMP_MILLIS) {
+                    delete(file);
+                } else if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(new Cached(file, attributes.size(), lastModified));
+                    total += attributes.size();
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Failed to list result cache {}: {}", dir, e.getMessage());
+            return;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(cached -> cached.lastModified));
+        int evicted = 0;
+        for (Cached cached : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            delete(cached.path);
+            total -= cached.size;
+            evicted++;
+        }
+        LOGGER.info("Evicted {} least recently used entries from result cache {}", evicted, dir);
+    }
+
+    private Path entry(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.debug("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Fingerprints a runtime classpath independently of where it is checked out: directories by the relative path
+     * and content of their class files, archives by file name and the name, size and CRC of every entry, so a
+     * rebuilt jar of the same size still changes the fingerprint.
+     */
+    public static String fingerprintClasspath(List<String> elements) throws IOException {
+        MessageDigest digest = BuildState.newDigest();
+        for (String element : elements) {
+            Path path = new File(element).toPath();
+            if (Files.isDirectory(path)) {
+                List<Path> children;
+                try (Stream<Path> walk = Files.walk(path)) {
+                    children = walk.filter(p -> Files.isRegularFile(p) && p.toString().endsWith(".class"))
+                            .sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path child : children) {
+                    digest.update(path.relativize(child).toString().replace(File.separatorChar, '/')
+                            .getBytes(StandardCharsets.UTF_8));
+                    digest.update(BuildState.hash(child).getBytes(StandardCharsets.UTF_8));
+                }
+            } else if (Files.isRegularFile(path)) {
+                digest.update(path.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(Files.size(path)).getBytes(StandardCharsets.UTF_8));
+                fingerprintArchive(path, digest);
+            }
+            digest.update((byte) 0);
+        }
+        return BuildState.toHex(digest.digest());
+    }
+
+    /**
+     * Adds the name, size and CRC of every entry of {@code archive}, read from its central directory.
+     */
+    private static void fingerprintArchive(Path archive, MessageDigest digest) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            List<? extends ZipEntry> entries = zip.stream()
+                    .sorted(Comparator.comparing(ZipEntry::getName))
+                    .collect(Collectors.toList());
+            for (ZipEntry entry : entries) {
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Long.toString(entry.getSize()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Long.toString(entry.getCrc()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+        } catch (ZipException e) {
+            // Not a zip archive, its name and size stand in for its content
+            LOGGER.debug("Cannot read classpath element {} as an archive: {}", archive, e.getMessage());
+        }
+    }
+
+    private static final class Cached {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private Cached(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.kie.api.KieBase;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how fast the rules of a project fire. Every session is a fresh {@link KieSession} of one
+ * {@link KieBase}: the fixture facts are inserted, all rules are fired and the session is disposed. The facts are
+ * created before the clock starts, so a session's latency covers only the engine. Warm-up sessions run first and
+ * are not measured, they let the JIT compile the generated rule classes.
+ *
+ * @author Saransh Kumar
+ */
+
+public class RuleBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleBenchmark.class);
+    private static final String RESOURCES_ROOT = "src/main/resources/";
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;?", Pattern.MULTILINE);
+
+    private final KieBase kieBase;
+    private final FactFixtures fixtures;
+    private final int warmupSessions;
+    private final int sessions;
+    private final int maxFirings;
+
+    /**
+     * @param maxFirings rules fired per session after which the session is considered to loop
+     */
+    public RuleBenchmark(KieBase kieBase, FactFixtures fixtures, int warmupSessions, int sessions, int maxFirings) {
+        this.kieBase = kieBase;
+        this.fixtures = fixtures;
+        this.warmupSessions = Math.max(0, warmupSessions);
+        this.sessions = Math.max(1, sessions);
+        this.maxFirings = maxFirings;
+    }
+
+    /**
+     * Compiles {@code drls}, keyed by a name used in error messages, into one {@link KieBase} with the context
+     * classloader. Each DRL is placed under the path of its package, so that the packages of the kbases of
+     * {@code kmoduleFile} select it.
+     *
+     * @param kmoduleFile kmodule.xml declaring {@code kieBaseName}, or {@code null} for a default kbase of all DRL
+     */
+    public static KieBase build(Map<String, String> drls, File kmoduleFile, String kieBaseName)
+            throws IOException, MojoFailureException {
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+        if (kmoduleFile != null) {
+            kieFileSystem.writeKModuleXML(Files.readAllBytes(kmoduleFile.toPath()));
+        }
+        Set<String> paths = new HashSet<>();
+        for (Map.Entry<String, String> drl : drls.entrySet()) {
+            kieFileSystem.write(RESOURCES_ROOT + uniqueResourcePath(drl.getKey(), drl.getValue(), paths),
+                    drl.getValue());
+        }
+        KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+        kieBuilder.buildAll();
+        List<Message> errors = kieBuilder.getResults().getMessages(Message.Level.ERROR);
+        if (!errors.isEmpty()) {
+            errors.forEach(msg -> LOGGER.error(msg.toString()));
+            throw new MojoFailureException("Rules to benchmark have " + errors.size() + " compilation errors");
+        }
+        KieContainer kieContainer = kieServices.newKieContainer(kieBuilder.getKieModule().getReleaseId(),
+                Thread.currentThread().getContextClassLoader());
+        try {
+            return kieBaseName != null ? kieContainer.getKieBase(kieBaseName) : kieContainer.getKieBase();
+        } catch (RuntimeException e) {
+            throw new MojoFailureException("No kbase " + (kieBaseName != null ? kieBaseName : "by default")
+                    + " to benchmark: " + e.getMessage());
+        }
+    }
+
+    static String resourcePath(String name, String drl) {
+        String fileName = new File(name).getName().replaceAll("\\.(xlsx?|drl)$", "") + ".drl";
+        Matcher matcher = PACKAGE.matcher(drl);
+        return matcher.find() ? matcher.group(1).replace('.', '/') + "/" + fileName : fileName;
+    }
+
+    /**
+     * Returns the {@link #resourcePath(String, String)} of {@code drl}, suffixed with {@code -2}, {@code -3}, ... when
+     * it is already in {@code used}, and adds it to {@code used}. Spreadsheets of the same name in different folders
+     * would otherwise overwrite each other in a {@link KieFileSystem}.
+     */
+    static String uniqueResourcePath(String name, String drl, Set<String> used) {
+        String path = resourcePath(name, drl);
+        String base = path.substring(0, path.length() - ".drl".length());
+        for (int i = 2; !used.add(path); i++) {
+            path = base + "-" + i + ".drl";
+        }
+        return path;
+    }
+
+    public Result run() throws MojoExecutionException, MojoFailureException {
+        for (int i = 0; i < warmupSessions; i++) {
+            runSession(newFacts());
+        }
+        long[] latencies = new long[sessions];
+        long firings = -1;
+        for (int i = 0; i < sessions; i++) {
+            List<Object> facts = newFacts();
+            long start = System.nanoTime();
+            int fired = runSession(facts);
+            latencies[i] = System.nanoTime() - start;
+            if (firings >= 0 && fired != firings) {
+                LOGGER.warn("Session {} fired {} rules instead of {}, the rules are not deterministic", i, fired,
+                        firings);
+            }
+            firings = fired;
+        }
+        return new Result(fixtures.size(), firings, latencies);
+    }
+
+    private List<Object> newFacts() throws MojoExecutionException {
+        try {
+            return fixtures.newFacts();
+        } catch (ReflectiveOperationException e) {
+            throw new MojoExecutionException("Cannot create the fixture facts", e);
+        }
+    }
+
+    private int runSession(List<Object> facts) throws MojoFailureException {
+        KieSession session = kieBase.newKieSession();
+        try {
+            for (Object fact : facts) {
+                session.insert(fact);
+            }
+            int fired = session.fireAllRules(maxFirings);
+            if (fired >= maxFirings) {
+                throw new MojoFailureException("A session fired " + fired + " rules, the rules probably loop");
+            }
+            return fired;
+        } finally {
+            session.dispose();
+        }
+    }
+
+    /**
+     * Throughput and session latency percentiles of a benchmark run, stored as a properties file so that a baseline
+     * can be committed next to the rules.
+     */
+    public static final class Result {
+
+        private static final String FACTS_KEY = "facts";
+        private static final String FIRINGS_KEY = "firings";
+        private static final String SESSIONS_KEY = "sessions";
+        private static final String THROUGHPUT_KEY = "throughput.factsPerSecond";
+        private static final String P50_KEY = "latency.p50.ms";
+        private static final String P90_KEY = "latency.p90.ms";
+        private static final String P99_KEY = "latency.p99.ms";
+        private static final String MAX_KEY = "latency.max.ms";
+
+        private final int facts;
+        private final long firings;
+        private final int sessions;
+        private final double throughput;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Result(int facts, long firings, long[] latencies) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long latency : sorted) {
+                total += latency;
+            }
+            this.facts = facts;
+            this.firings = firings;
+            this.sessions = sorted.length;
+            this.throughput = total > 0 ? (double) facts * sorted.length / total * 1e9 : 0;
+            this.p50 = percentile(sorted, 50);
+            this.p90 = percentile(sorted, 90);
+            this.p99 = percentile(sorted, 99);
+            this.max = sorted[sorted.length - 1] / 1e6;
+        }
+
+        private Result(Properties props) {
+            this.facts = Integer.parseInt(props.getProperty(FACTS_KEY, "0"));
+            this.firings = Long.parseLong(props.getProperty(FIRINGS_KEY, "0"));
+            this.sessions = Integer.parseInt(props.getProperty(SESSIONS_KEY, "0"));
+            this.throughput = Double.parseDouble(props.getProperty(THROUGHPUT_KEY, "0"));
+            this.p50 = Double.parseDouble(props.getProperty(P50_KEY, "0"));
+            this.p90 = Double.parseDouble(props.getProperty(P90_KEY, "0"));
+            this.p99 = Double.parseDouble(props.getProperty(P99_KEY, "0"));
+            this.max = Double.parseDouble(props.getProperty(MAX_KEY, "0"));
+        }
+
+        /**
+         * Nearest-rank percentile of sorted nanosecond latencies, in milliseconds.
+         */
+        static double percentile(long[] sorted, int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+
+        public static Result read(File file) throws IOException {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                props.load(in);
+            }
+            if (props.getProperty(THROUGHPUT_KEY) == null || props.getProperty(P90_KEY) == null) {
+                throw new IOException("Not a rule benchmark result: " + file);
+            }
+            return new Result(props);
+        }
+
+        public void write(File file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty(FACTS_KEY, String.valueOf(facts));
+            props.setProperty(FIRINGS_KEY, String.valueOf(firings));
+            props.setProperty(SESSIONS_KEY, String.valueOf(sessions));
+            props.setProperty(THROUGHPUT_KEY, format(throughput));
+            props.setProperty(P50_KEY, format(p50));
+            props.setProperty(P90_KEY, format(p90));
+            props.setProperty(P99_KEY, format(p99));
+            props.setProperty(MAX_KEY, format(max));
+            Path target = file.toPath().toAbsolutePath();
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "drools-spreadsheet-maven-plugin rule benchmark");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Returns how this result regressed from {@code baseline}: throughput lower, or p90 latency higher, by more
+         * than {@code maxPercent}. The p99 and max latencies are reported but not compared, a single GC pause moves
+         * them too much.
+         */
+        public List<String> regressionsFrom(Result baseline, double maxPercent) {
+            List<String> regressions = new ArrayList<>();
+            double throughputChange = change(baseline.throughput, throughput);
+            if (-throughputChange > maxPercent) {
+                regressions.add(String.format(Locale.ROOT, "throughput dropped %.1f%% (%s -> %s facts/s)",
+                        -throughputChange, format(baseline.throughput), format(throughput)));
+            }
+            double p90Change = change(baseline.p90, p90);
+            if (p90Change > maxPercent) {
+                regressions.add(String.format(Locale.ROOT, "p90 latency rose %.1f%% (%s -> %s ms)", p90Change,
+                        format(baseline.p90), format(p90)));
+            }
+            return regressions;
+        }
+
+        private static double change(double from, double to) {
+            return from > 0 ? (to - from) / from * 100 : 0;
+        }
+
+        private static String format(double value) {
+            return String.format(Locale.ROOT, "%.3f", value);
+        }
+
+        public int getFacts() {
+            return facts;
+        }
+
+        public long getFirings() {
+            return firings;
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d facts, %d rules fired, %d sessions: %s facts/s,"
+                            + " p50 %s ms, p90 %s ms, p99 %s ms, max %s ms", facts, firings, sessions,
+                    format(throughput), format(p50), format(p90), format(p99), format(max));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.drools.decisiontable.parser.xls.ExcelParser;
+import org.drools.template.parser.DataListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+
+/**
+ * Lints the condition cells of every decision table with {@link RuleTableLinter}. Only the worksheets that are
+ * converted to DRL are linted: the first one, or every worksheet with {@code splitWorksheets}. Findings are logged
+ * with their cell, and the build fails when one reaches the severity the policy fails on.
+ *
+ * @author Saransh Kumar
+ */
+
+public class RulePerformanceValidator implements Validator {
+
+    public static final String NAME = "performance";
+    private static final Logger LOGGER = LoggerFactory.getLogger(RulePerformanceValidator.class);
+    private final File resourceDir;
+    private final List<File> spreadsheetFiles;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
+    private final boolean splitWorksheets;
+    private final RuleTableLinter.Policy policy;
+
+    public RulePerformanceValidator(File resourceDir, List<File> spreadsheetFiles, TaskScheduler scheduler,
+                                    SpreadsheetModel model, BuildState state, boolean splitWorksheets,
+                                    RuleTableLinter.Policy policy) {
+        this.resourceDir = resourceDir;
+        this.spreadsheetFiles = spreadsheetFiles;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
+        this.splitWorksheets = splitWorksheets;
+        this.policy = policy;
+    }
+
+    @Override
+    public void validate() throws MojoExecutionException, MojoFailureException {
+        try {
+            List<File> files = spreadsheetFiles != null ? spreadsheetFiles
+                    : FileUtils.listSpreadsheetFiles(resourceDir);
+            // One segment after the name, so recording it forgets the steps of earlier policies
+            String step = NAME + "." + policy.fingerprint() + (splitWorksheets ? "-split" : "");
+            LOGGER.info("Linting {} decision tables for rule performance with pool size {}", files.size(),
+                    scheduler.getParallelism());
+            Queue<RuleTableLinter.Finding> findings = new ConcurrentLinkedQueue<>();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (File file : TaskScheduler.largestFirst(files)) {
+                if (state != null && state.isUpToDate(file, step)) {
+                    LOGGER.debug("Up to date: {}", file);
+                    continue;
+                }
+                futures.add(scheduler.submit(() -> {
+                    List<RuleTableLinter.Finding> fileFindings = lint(file);
+                    findings.addAll(fileFindings);
+                    if (fileFindings.stream().anyMatch(policy::fails)) {
+                        scheduler.reportError();
+                    }
+                    if (state != null) {
+                        state.replaceOutcome(file, NAME + ".", step,
+                                fileFindings.isEmpty() ? BuildState.PASSED : BuildState.FAILED);
+                    }
+                    return null;
+                }, model.estimateParseCost(file), Collections.singletonList(file)));
+            }
+            for (Future<Void> f : futures) {
+                try {
+                    scheduler.await(f);
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Error while linting decision tables", e);
+                }
+            }
+            report(new ArrayList<>(findings));
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    private List<RuleTableLinter.Finding> lint(File file) throws IOException {
+        List<String> sheets = SpreadsheetHeaderReader.readSheetNames(file);
+        if (!splitWorksheets && sheets.size() > 1) {
+            sheets = sheets.subList(0, 1);
+        }
+        Map<String, RuleTableLinter> linters = new LinkedHashMap<>();
+        sheets.forEach(sheet -> linters.put(sheet, new RuleTableLinter(file, sheet, policy)));
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.READ)) {
+            Map<String, List<DataListener>> listeners = new LinkedHashMap<>();
+            linters.forEach((sheet, linter) -> listeners.put(sheet, Collections.singletonList(linter)));
+            if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+                new XlsxDecisionTableParser(listeners).parseFile(file);
+            } else {
+                try (InputStream in = model.openStream(file)) {
+                    new ExcelParser(listeners).parseFile(in);
+                }
+            }
+        }
+        List<RuleTableLinter.Finding> findings = new ArrayList<>();
+        linters.values().forEach(linter -> findings.addAll(linter.getFindings()));
+        return findings;
+    }
+
+    private void report(List<RuleTableLinter.Finding> findings) throws MojoFailureException {
+        Collections.sort(findings);
+        int failing = 0;
+        for (RuleTableLinter.Finding finding : findings) {
+            if (policy.fails(finding)) {
+                failing++;
+                LOGGER.error("{}", finding);
+            } else if (finding.getSeverity() == RuleTableLinter.Severity.INFO) {
+                LOGGER.info("{}", finding);
+            } else {
+                LOGGER.warn("{}", finding);
+            }
+        }
+        if (!findings.isEmpty()) {
+            LOGGER.info("{} rule performance findings, {} failing the build", findings.size(), failing);
+        }
+        if (failing > 0) {
+            throw new MojoFailureException(failing + " rule performance findings fail the lint policy");
+        }
+    }
+}
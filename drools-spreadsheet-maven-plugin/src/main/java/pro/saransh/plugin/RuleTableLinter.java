@@ -0,0 +1,389 @@
+package pro.saransh.plugin;
+
+import org.apache.poi.ss.util.CellReference;
+import org.drools.template.parser.DataListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds condition cells of a decision table worksheet that compile but keep Rete from indexing them. It reads the
+ * cells of every RuleTable the way Drools lays them out: the keyword row, the object type row, the template row,
+ * the label row, then one rule per row until a blank row. Condition templates and object types are checked once
+ * per column; the data cells of a condition column are only checked when its template is a bare {@code $param} or
+ * {@code $1}, which takes the whole constraint from them.
+ * <p>
+ * Checks, by id:
+ * <ul>
+ *     <li>{@code eval}: {@code eval(...)} is evaluated for every fact and never indexed.</li>
+ *     <li>{@code method-call}: a method call in a constraint instead of a property, which alpha nodes cannot hash.</li>
+ *     <li>{@code negation}: {@code !=}, {@code not in} and the like on a column with many distinct values, each
+ *     value becomes an alpha node evaluated one by one.</li>
+ *     <li>{@code regex}: {@code matches} or {@code soundslike}, never indexed.</li>
+ *     <li>{@code unbounded-collect}: {@code collect} or {@code accumulate} over a pattern without constraints.</li>
+ *     <li>{@code from}: {@code from} over an expression, re-evaluated for every match.</li>
+ * </ul>
+ *
+ * @author Saransh Kumar
+ */
+
+public class RuleTableLinter implements DataListener {
+
+    public static final String EVAL = "eval";
+    public static final String METHOD_CALL = "method-call";
+    public static final String NEGATION = "negation";
+    public static final String REGEX = "regex";
+    public static final String UNBOUNDED_COLLECT = "unbounded-collect";
+    public static final String FROM = "from";
+    public static final List<String> CHECKS = Collections.unmodifiableList(
+            Arrays.asList(EVAL, METHOD_CALL, NEGATION, REGEX, UNBOUNDED_COLLECT, FROM));
+
+    private static final String RULE_TABLE = "ruletable";
+    /**
+     * Templates that are replaced by the whole cell, so the cell text is the constraint.
+     */
+    private static final Set<String> BARE_PARAMS = new HashSet<>(Arrays.asList("$param", "$1"));
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"(?:\\\\.|[^\"\\\\])*\"|'(?:\\\\.|[^'\\\\])*'");
+    private static final Pattern EVAL_CALL = Pattern.compile("\\beval\\s*\\(");
+    private static final Pattern CALL = Pattern.compile("(?<![\\w$])([A-Za-z_][\\w.]*)\\s*\\(");
+    private static final Pattern NEGATED = Pattern.compile(
+            "!=|\\bnot\\s+(?:in|contains|memberOf|matches)\\b|\\bexcludes\\b");
+    private static final Pattern REGEX_OPERATOR = Pattern.compile("\\b(?:matches|soundslike)\\b");
+    private static final Pattern UNBOUNDED = Pattern.compile(
+            "\\b(?:collect|accumulate)\\s*\\(\\s*(?:\\$?\\w+\\s*:\\s*)?[\\w.]+\\s*(?:\\(\\s*\\))?\\s*[,)]");
+    private static final Pattern FROM_EXPRESSION = Pattern.compile("\\bfrom\\s+(?!collect\\b|accumulate\\b)\\S");
+    /**
+     * Words followed by a parenthesis that are operators or DRL keywords rather than method calls.
+     */
+    private static final Set<String> NOT_CALLS = new HashSet<>(Arrays.asList("eval", "in", "matches", "memberOf",
+            "contains", "excludes", "soundslike", "not", "exists", "forall", "from", "collect", "accumulate", "and",
+            "or", "new", "str", "over", "window", "init", "action", "reverse", "result", "entry-point"));
+
+    private final File file;
+    private final String sheetName;
+    private final Policy policy;
+    private final TreeMap<Integer, TreeMap<Integer, String>> rows = new TreeMap<>();
+    private final Set<Long> mergedCells = new HashSet<>();
+    private final List<Finding> findings = new ArrayList<>();
+
+    public RuleTableLinter(File file, String sheetName, Policy policy) {
+        this.file = file;
+        this.sheetName = sheetName;
+        this.policy = policy;
+    }
+
+    @Override
+    public void startSheet(String name) {
+        // The sheet is given to the constructor
+    }
+
+    @Override
+    public void newRow(int rowNumber, int columns) {
+        // Cells are collected as they come
+    }
+
+    @Override
+    public void newCell(int row, int column, String value, int mergedColStart) {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        rows.computeIfAbsent(row, r -> new TreeMap<>()).put(column, value.trim());
+        if (mergedColStart != DataListener.NON_MERGED && mergedColStart != column) {
+            mergedCells.add(key(row, column));
+        }
+    }
+
+    @Override
+    public void finishSheet() {
+        for (Map.Entry<Integer, TreeMap<Integer, String>> row : rows.entrySet()) {
+            for (Map.Entry<Integer, String> cell : row.getValue().entrySet()) {
+                if (cell.getValue().toLowerCase(Locale.ROOT).startsWith(RULE_TABLE)) {
+                    lintTable(row.getKey(), cell.getKey());
+                }
+            }
+        }
+        rows.clear();
+        mergedCells.clear();
+    }
+
+    /**
+     * Returns what was found, in sheet order.
+     */
+    public List<Finding> getFindings() {
+        return findings;
+    }
+
+    private void lintTable(int tableRow, int tableColumn) {
+        Map<Integer, String> keywords = cells(tableRow + 1, tableColumn);
+        Map<Integer, String> patterns = cells(tableRow + 2, tableColumn);
+        Map<Integer, String> templates = cells(tableRow + 3, tableColumn);
+        for (Map.Entry<Integer, String> pattern : patterns.entrySet()) {
+            int column = pattern.getKey();
+            if (isCondition(keywords.get(column)) && !mergedCells.contains(key(tableRow + 2, column))) {
+                lintPattern(tableRow + 2, column, pattern.getValue());
+            }
+        }
+        int lastRow = tableRow + 5;
+        while (!cells(lastRow, tableColumn).isEmpty()) {
+            lastRow++;
+        }
+        for (Map.Entry<Integer, String> keyword : keywords.entrySet()) {
+            int column = keyword.getKey();
+            if (!isCondition(keyword.getValue())) {
+                continue;
+            }
+            String template = templates.get(column);
+            boolean bareParam = BARE_PARAMS.contains(template);
+            Set<String> values = new HashSet<>();
+            for (int row = tableRow + 5; row < lastRow; row++) {
+                String value = cells(row, tableColumn).get(column);
+                if (value != null) {
+                    values.add(value);
+                    if (bareParam) {
+                        lintData(row, column, value);
+                    }
+                }
+            }
+            if (template != null) {
+                lintTemplate(tableRow + 3, column, template, values.size());
+            }
+        }
+    }
+
+    private void lintPattern(int row, int column, String pattern) {
+        String code = withoutLiterals(pattern);
+        if (EVAL_CALL.matcher(code).find()) {
+            report(row, column, EVAL, "eval in the pattern '" + pattern + "' is evaluated for every fact and"
+                    + " cannot be indexed, use field constraints");
+        }
+        lintSources(row, column, pattern, code);
+    }
+
+    private void lintTemplate(int row, int column, String template, int distinctValues) {
+        String code = withoutLiterals(template);
+        if (EVAL_CALL.matcher(code).find()) {
+            report(row, column, EVAL, "eval in the template '" + template + "' is evaluated for every fact and"
+                    + " cannot be indexed, use field constraints");
+        }
+        String call = findCall(code);
+        if (call != null) {
+            report(row, column, METHOD_CALL, "method call " + call + "() in the template '" + template
+                    + "' cannot be hashed by alpha nodes, constrain a property instead");
+        }
+        if (NEGATED.matcher(code).find() && distinctValues >= policy.highCardinality) {
+            report(row, column, NEGATION, "negated constraint '" + template + "' on a column with "
+                    + distinctValues + " distinct values creates an alpha node per value that is checked one by"
+                    + " one, prefer a positive constraint on fewer values");
+        }
+        Matcher regex = REGEX_OPERATOR.matcher(code);
+        if (regex.find()) {
+            report(row, column, REGEX, regex.group() + " in the template '" + template + "' is never indexed"
+                    + (distinctValues >= policy.highCardinality ? ", and the column has " + distinctValues
+                    + " distinct values" : ""));
+        }
+        lintSources(row, column, template, code);
+    }
+
+    private void lintData(int row, int column, String value) {
+        String code = withoutLiterals(value);
+        if (EVAL_CALL.matcher(code).find()) {
+            report(row, column, EVAL, "eval in '" + value + "' is evaluated for every fact and cannot be indexed");
+            return;
+        }
+        String call = findCall(code);
+        if (call != null) {
+            report(row, column, METHOD_CALL, "method call " + call + "() in '" + value
+                    + "' cannot be hashed by alpha nodes, constrain a property instead");
+        }
+    }
+
+    private void lintSources(int row, int column, String text, String code) {
+        if (UNBOUNDED.matcher(code).find()) {
+            report(row, column, UNBOUNDED_COLLECT, "'" + text + "' collects every fact of the type, constrain the"
+                    + " collected pattern");
+        } else if (FROM_EXPRESSION.matcher(code).find()) {
+            report(row, column, FROM, "'" + text + "' evaluates the from expression for every match and bypasses"
+                    + " alpha indexing");
+        }
+    }
+
+    private void report(int row, int column, String check, String message) {
+        Severity severity = policy.severityOf(check);
+        if (severity != null) {
+            findings.add(new Finding(file, sheetName, row, column, check, severity, message));
+        }
+    }
+
+    private Map<Integer, String> cells(int row, int fromColumn) {
+        TreeMap<Integer, String> cells = rows.get(row);
+        return cells == null ? Collections.emptyMap() : cells.tailMap(fromColumn, true);
+    }
+
+    private static boolean isCondition(String keyword) {
+        if (keyword == null) {
+            return false;
+        }
+        String upper = keyword.toUpperCase(Locale.ROOT);
+        return "CONDITION".equals(upper) || "C".equals(upper);
+    }
+
+    private static String findCall(String code) {
+        Matcher matcher = CALL.matcher(code);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String last = name.substring(name.lastIndexOf('.') + 1);
+            if (!NOT_CALLS.contains(name) && !NOT_CALLS.contains(last)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static String withoutLiterals(String text) {
+        return STRING_LITERAL.matcher(text).replaceAll("\"\"");
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    public enum Severity {
+        INFO, WARNING, ERROR
+    }
+
+    /**
+     * Which checks run, at which severity, and from which severity findings fail the build.
+     */
+    public static final class Policy {
+
+        private final Map<String, Severity> severities = new TreeMap<>();
+        private final Severity failOn;
+        private final int highCardinality;
+
+        /**
+         * @param overrides       {@code check=severity} entries, where severity is {@code info}, {@code warning},
+         *                        {@code error} or {@code off}
+         * @param failOn          lowest severity that fails the build, or {@code none}
+         * @param highCardinality distinct values from which a column counts as high-cardinality
+         */
+        public Policy(List<String> overrides, String failOn, int highCardinality) {
+            severities.put(EVAL, Severity.ERROR);
+            severities.put(METHOD_CALL, Severity.WARNING);
+            severities.put(NEGATION, Severity.WARNING);
+            severities.put(REGEX, Severity.WARNING);
+            severities.put(UNBOUNDED_COLLECT, Severity.WARNING);
+            severities.put(FROM, Severity.INFO);
+            if (overrides != null) {
+                for (String override : overrides) {
+                    String[] parts = override.split("=", 2);
+                    String check = parts[0].trim();
+                    if (!CHECKS.contains(check) || parts.length < 2) {
+                        throw new IllegalArgumentException("Invalid lint policy '" + override + "', expected"
+                                + " check=severity with check one of " + CHECKS);
+                    }
+                    String severity = parts[1].trim();
+                    severities.put(check, "off".equalsIgnoreCase(severity) ? null : parse(severity));
+                }
+            }
+            this.failOn = "none".equalsIgnoreCase(failOn) ? null : parse(failOn);
+            this.highCardinality = Math.max(1, highCardinality);
+        }
+
+        private static Severity parse(String severity) {
+            try {
+                return Severity.valueOf(severity.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown lint severity '" + severity + "', expected info,"
+                        + " warning, error or off");
+            }
+        }
+
+        public Severity severityOf(String check) {
+            return severities.get(check);
+        }
+
+        public boolean fails(Finding finding) {
+            return failOn != null && finding.severity.compareTo(failOn) >= 0;
+        }
+
+        /**
+         * Identifies the policy in the build state, so that a changed policy lints every spreadsheet again.
+         */
+        public String fingerprint() {
+            Map<String, Object> settings = new TreeMap<>(severities);
+            settings.put("failOn", failOn);
+            settings.put("highCardinality", highCardinality);
+            return Integer.toHexString(settings.toString().hashCode());
+        }
+    }
+
+    /**
+     * One flagged cell.
+     */
+    public static final class Finding implements Comparable<Finding> {
+
+        private final File file;
+        private final String sheet;
+        private final int row;
+        private final int column;
+        private final String check;
+        private final Severity severity;
+        private final String message;
+
+        Finding(File file, String sheet, int row, int column, String check, Severity severity, String message) {
+            this.file = file;
+            this.sheet = sheet;
+            this.row = row;
+            this.column = column;
+            this.check = check;
+            this.severity = severity;
+            this.message = message;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        public String getCheck() {
+            return check;
+        }
+
+        /**
+         * Returns the cell as Excel writes it, e.g. {@code 'Sheet1'!C7}.
+         */
+        public String getCell() {
+            return new CellReference(sheet, row, column, false, false).formatAsString();
+        }
+
+        @Override
+        public int compareTo(Finding other) {
+            int order = file.compareTo(other.file);
+            if (order == 0) {
+                order = sheet.compareTo(other.sheet);
+            }
+            if (order == 0) {
+                order = Integer.compare(row, other.row);
+            }
+            return order != 0 ? order : Integer.compare(column, other.column);
+        }
+
+        @Override
+        public String toString() {
+            return file + " [" + getCell() + "] " + severity + " " + check + ": " + message;
+        }
+    }
+}
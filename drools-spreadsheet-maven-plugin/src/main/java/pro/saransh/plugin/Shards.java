@@ -0,0 +1,187 @@
+package pro.saransh.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits spreadsheets between the nodes of a sharded build and records what each shard found, so that cross-file
+ * checks can be run once over the results of every shard.
+ * <p>
+ * Partitions are balanced by estimated cost rather than by count: spreadsheets are taken from the most to the least
+ * expensive and each goes to the shard with the lowest total so far. Ties are broken by path relative to the
+ * resources directory, so every node computes the same partitions from the same checkout.
+ *
+ * @author Saransh Kumar
+ */
+
+public final class Shards {
+
+    public static final String RESULT_PREFIX = "shard-";
+    public static final String RESULT_SUFFIX = ".properties";
+    private static final String INDEX_KEY = "shard.index";
+    private static final String COUNT_KEY = "shard.count";
+    private static final String INPUT_KEY = "shard.input";
+    private static final String RULESET_PREFIX = "ruleset.";
+    private static final String FAILURE_PREFIX = "failure.";
+
+    private Shards() {
+        // Utility class
+    }
+
+    /**
+     * Returns the spreadsheets of {@code files} assigned to shard {@code index} of {@code count}.
+     */
+    public static List<File> select(List<File> files, File resourceDir, int index, int count,
+                                    ToLongFunction<File> cost) {
+        if (count <= 1) {
+            return files;
+        }
+        List<File> sorted = new ArrayList<>(files);
+        Map<File, Long> costs = new HashMap<>();
+        files.forEach(file -> costs.put(file, cost.applyAsLong(file)));
+        sorted.sort(Comparator.comparing((File file) -> costs.get(file)).reversed()
+                .thenComparing(file -> relativePath(resourceDir, file)));
+        long[] totals = new long[count];
+        List<File> selected = new ArrayList<>();
+        for (File file : sorted) {
+            int lightest = 0;
+            for (int shard = 1; shard < count; shard++) {
+                if (totals[shard] < totals[lightest]) {
+                    lightest = shard;
+                }
+            }
+            totals[lightest] += Math.max(1, costs.get(file));
+            if (lightest == index) {
+                selected.add(file);
+            }
+        }
+        return selected;
+    }
+
+    public static String relativePath(File resourceDir, File file) {
+        Path base = resourceDir.toPath().toAbsolutePath().normalize();
+        Path path = file.toPath().toAbsolutePath().normalize();
+        String relative = path.startsWith(base) ? base.relativize(path).toString() : path.toString();
+        return relative.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Returns a digest of the paths and contents of {@code files}, equal on every node building the same checkout.
+     */
+    public static String inputDigest(File resourceDir, List<File> files, BuildState state) throws IOException {
+        Map<String, String> hashes = new TreeMap<>();
+        for (File file : files) {
+            hashes.put(relativePath(resourceDir, file), GenerateDrl.contentHash(state, file));
+        }
+        MessageDigest digest = BuildState.newDigest();
+        hashes.forEach((path, hash) -> {
+            digest.update(path.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(hash.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        });
+        return BuildState.toHex(digest.digest());
+    }
+
+    public static File resultFile(File shardDir, int index) {
+        return new File(shardDir, RESULT_PREFIX + index + RESULT_SUFFIX);
+    }
+
+    /**
+     * What one shard found: the ruleset of every spreadsheet it validated, keyed by path relative to the resources
+     * directory, and the failure of every validator that failed, as {@code name: message}. The digest of the
+     * spreadsheets the shards were split from tells results of the same run apart from leftovers of earlier ones.
+     */
+    public static final class Result {
+
+        private final int index;
+        private final int count;
+        private final String input;
+        private final Map<String, String> ruleSets = new TreeMap<>();
+        private final List<String> failures = new ArrayList<>();
+
+        public Result(int index, int count, String input) {
+            this.index = index;
+            this.count = count;
+            this.input = input;
+        }
+
+        public static Result read(File file) throws IOException {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                props.load(in);
+            }
+            String index = props.getProperty(INDEX_KEY);
+            String count = props.getProperty(COUNT_KEY);
+            if (index == null || count == null) {
+                throw new IOException("Not a shard result: " + file);
+            }
+            Result result = new Result(Integer.parseInt(index), Integer.parseInt(count),
+                    props.getProperty(INPUT_KEY));
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith(RULESET_PREFIX)) {
+                    result.ruleSets.put(key.substring(RULESET_PREFIX.length()), props.getProperty(key));
+                }
+            }
+            for (int i = 0; props.getProperty(FAILURE_PREFIX + i) != null; i++) {
+                result.failures.add(props.getProperty(FAILURE_PREFIX + i));
+            }
+            return result;
+        }
+
+        public void write(File file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty(INDEX_KEY, String.valueOf(index));
+            props.setProperty(COUNT_KEY, String.valueOf(count));
+            if (input != null) {
+                props.setProperty(INPUT_KEY, input);
+            }
+            ruleSets.forEach((path, ruleSet) -> props.setProperty(RULESET_PREFIX + path, ruleSet));
+            for (int i = 0; i < failures.size(); i++) {
+                props.setProperty(FAILURE_PREFIX + i, failures.get(i));
+            }
+            Path target = file.toPath();
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "drools-spreadsheet-maven-plugin shard " + index + " of " + count);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public Map<String, String> getRuleSets() {
+            return ruleSets;
+        }
+
+        public List<String> getFailures() {
+            return failures;
+        }
+    }
+}
@@ -8,18 +8,14 @@ import org.kie.api.KieServices;
 import org.kie.api.builder.KieBuilder;
 import org.kie.api.builder.KieFileSystem;
 import org.kie.api.builder.Message;
-import org.kie.api.io.Resource;
-import org.kie.internal.io.ResourceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -30,12 +26,25 @@ import java.util.concurrent.atomic.AtomicReference;
 
 public class SpreadsheetDecisionTableValidator implements Validator {
 
+    public static final String NAME = "table";
     private static final Logger LOGGER = LoggerFactory.getLogger(SpreadsheetDecisionTableValidator.class);
+    private static final String RESOURCES_ROOT = "src/main/resources/";
     private final MavenProject project;
     private final File resourceDir;
     private final List<File> spreadsheetFiles;
+    private final List<File> contextFiles;
     private final File classesDir;
-    private final int poolSize;
+    private final TaskScheduler scheduler;
+    private final int batchSize;
+    private final File drlOutputDir;
+    private final SpreadsheetModel model;
+    private final BuildState state;
+    private final boolean splitWorksheets;
+    private final ResultCache cache;
+    private final Map<File, NavigableMap<Integer, String>> sheetLines = new ConcurrentHashMap<>();
+    private final Map<File, String> hashes = new ConcurrentHashMap<>();
+    private final Set<File> context = new HashSet<>();
+    private String classpathFingerprint;
 
     public SpreadsheetDecisionTableValidator(MavenProject project, File classesDir, File resourceDir) {
         this(project, classesDir, resourceDir, null, 1);
@@ -43,128 +52,527 @@ public class SpreadsheetDecisionTableValidator implements Validator {
 
     public SpreadsheetDecisionTableValidator(MavenProject project, File classesDir, File resourceDir,
                                              List<File> spreadsheetFiles, int poolSize) {
+        this(project, classesDir, resourceDir, spreadsheetFiles, new TaskScheduler(poolSize), 1, null,
+                new SpreadsheetModel(), null, false, null);
+    }
+
+    /**
+     * Spreadsheets are always converted to DRL by {@link DecisionTableConverter}, the converter {@code generate-drl}
+     * uses, and that DRL is compiled; the spreadsheets never go through the decision table support of
+     * {@link KieBuilder}.
+     *
+     * @param batchSize    number of spreadsheets compiled together in one {@link KieFileSystem}. Spreadsheets of
+     *                     the same ruleset package always share a batch, {@code 1} compiles every spreadsheet on its
+     *                     own.
+     * @param drlOutputDir when set, the DRL converted and validated for every spreadsheet is also written there, the
+     *                     same way {@link GenerateDrl} does, so it is converted once for both.
+     * @param splitWorksheets convert every worksheet as its own task and merge the worksheets with a RuleTable,
+     *                        instead of converting only the first worksheet. Errors are reported with the worksheet
+     *                        they come from.
+     * @param cache           shared cache outcomes of spreadsheets validated before against the same classpath are
+     *                        reused from, or {@code null}
+     */
+    public SpreadsheetDecisionTableValidator(MavenProject project, File classesDir, File resourceDir,
+                                             List<File> spreadsheetFiles, TaskScheduler scheduler, int batchSize,
+                                             File drlOutputDir, SpreadsheetModel model, BuildState state,
+                                             boolean splitWorksheets, ResultCache cache) {
+        this(project, classesDir, resourceDir, spreadsheetFiles, spreadsheetFiles, scheduler, batchSize,
+                drlOutputDir, model, state, splitWorksheets, cache);
+    }
+
+    /**
+     * @param contextFiles spreadsheets compiled with the validated spreadsheets of their ruleset package when
+     *                     {@code batchSize} is above {@code 1}, including unchanged ones, so that errors between the
+     *                     tables of a package are found. They are only compiled: their outcome is not recorded, and
+     *                     their errors fail the validated spreadsheets of their batch. {@code null} for all
+     *                     spreadsheets of {@code resourceDir}.
+     */
+    public SpreadsheetDecisionTableValidator(MavenProject project, File classesDir, File resourceDir,
+                                             List<File> spreadsheetFiles, List<File> contextFiles,
+                                             TaskScheduler scheduler, int batchSize, File drlOutputDir,
+                                             SpreadsheetModel model, BuildState state, boolean splitWorksheets,
+                                             ResultCache cache) {
         this.project = project;
         this.classesDir = classesDir;
         this.resourceDir = resourceDir;
         this.spreadsheetFiles = spreadsheetFiles;
-        this.poolSize = poolSize > 0 ? poolSize : 1;
+        this.contextFiles = contextFiles;
+        this.scheduler = scheduler;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.drlOutputDir = drlOutputDir;
+        this.model = model;
+        this.state = state;
+        this.splitWorksheets = splitWorksheets;
+        this.cache = cache;
     }
 
     @Override
     public void validate() throws MojoExecutionException, MojoFailureException {
         try {
-            addProjectClassesToContextClassLoader(classesDir);
-            KieServices kieServices = KieServices.Factory.get();
             List<File> files;
             if (this.spreadsheetFiles == null) {
                 files = FileUtils.listSpreadsheetFiles(this.resourceDir);
             } else {
                 files = this.spreadsheetFiles;
             }
-            final Queue<Message> errors = new ConcurrentLinkedQueue<>();
-            final AtomicReference<Exception> failureException = new AtomicReference<>();
-            final AtomicBoolean hadError = new AtomicBoolean(false);
+            final Path drlOutputPath = drlOutputDir != null ? GenerateDrl.createOutputPath(drlOutputDir) : null;
+            if (drlOutputDir != null) {
+                GeneratePackageDrl.deleteOutput(drlOutputDir);
+            }
+            final TaskProfiler profiler = scheduler.getProfiler();
+            if (state != null) {
+                List<File> changed = new ArrayList<>();
+                for (File file : files) {
+                    try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.DISCOVERY)) {
+                        if (!state.isUpToDate(file, step(splitWorksheets)) || drlOutputPath != null
+                                && !GenerateDrl.isUpToDate(state, file, GenerateDrl.getDrlFile(drlOutputPath, file),
+                                splitWorksheets)) {
+                            changed.add(file);
+                        }
+                    }
+                }
+                LOGGER.info("{} of {} spreadsheet decision tables unchanged since last validation",
+                        files.size() - changed.size(), files.size());
+                files = changed;
+                if (files.isEmpty()) {
+                    return;
+                }
+            }
+            if (cache != null) {
+                files = restoreCached(files, drlOutputPath);
+                if (files.isEmpty()) {
+                    return;
+                }
+            }
+            // Modules and builds sharing a classpath reuse one loader, released when validation completes
+            try (ProjectClassLoaders.Lease lease = ProjectClassLoaders.acquire(project.getRuntimeClasspathElements())) {
+                validate(files, drlOutputPath);
+            }
+        } catch (IOException | DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    private void validate(List<File> files, Path drlOutputPath)
+            throws IOException, MojoExecutionException, MojoFailureException {
+        KieServices kieServices = KieServices.Factory.get();
+        final Queue<Message> errors = new ConcurrentLinkedQueue<>();
+        final AtomicReference<Exception> failureException = new AtomicReference<>();
+        final AtomicBoolean hadError = new AtomicBoolean(false);
+
+        context.addAll(packageMates(files));
+        List<File> compiled = new ArrayList<>(files);
+        compiled.addAll(context);
+        List<List<File>> batches = createBatches(compiled);
+        LOGGER.info("Validating {} spreadsheet decision tables in {} batches with pool size {}", files.size(),
+                batches.size(), scheduler.getParallelism());
+        List<Future<Void>> futures = new ArrayList<>();
+        for (final List<File> batch : batches) {
+            if (splitWorksheets) {
+                // The task converting the last worksheet of the batch compiles it
+                futures.addAll(WorksheetTasks.submit(scheduler, model, batch, results -> {
+                    Map<File, String> drls = convert(batch, drlOutputPath, results, failureException, hadError);
+                    compile(kieServices, new ArrayList<>(drls.keySet()), drls, errors, failureException, hadError);
+                }));
+                continue;
+            }
+            futures.add(scheduler.submit(() -> {
+                Map<File, String> drls = convert(batch, drlOutputPath, null, failureException, hadError);
+                compile(kieServices, new ArrayList<>(drls.keySet()), drls, errors, failureException, hadError);
+                return null;
+            }, estimateCost(batch), batch));
+        }
 
-            final ExecutorService executor = Executors.newFixedThreadPool(this.poolSize);
-            LOGGER.info("Validating {} spreadsheet decision tables with pool size {}", files.size(),
-                    this.poolSize);
+        for (Future<Void> f : futures) {
             try {
-                List<Future<Void>> futures = new ArrayList<>();
-                for (final File file : files) {
-                    futures.add(executor.submit(() -> {
-                        LOGGER.debug("Validating spreadsheet rule: {}", file.getAbsolutePath());
-                        try {
-                            KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
-                            Resource dt = ResourceFactory.newFileResource(file);
-                            kieFileSystem.write(dt);
-                            KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
-                            kieBuilder.buildAll();
-                            kieBuilder.getResults().getMessages()
-                                    .forEach(msg -> {
-                                        if (msg.getLevel() == Message.Level.ERROR) {
-                                            LOGGER.error(msg.toString());
-                                            errors.add(msg);
-                                            hadError.set(true);
-                                        } else {
-                                            LOGGER.debug(msg.toString());
-                                        }
-                                    });
-                        } catch (Exception e) {
-                            String m = e.getMessage() == null ? "" : e.getMessage();
-                            if (!m.contains("No RuleTable")) {
-                                failureException.compareAndSet(null, e);
-                                hadError.set(true);
-                            }
-                        }
-                        return null;
-                    }));
+                scheduler.await(f);
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof MojoFailureException) {
+                    throw (MojoFailureException) cause;
                 }
+                throw new MojoExecutionException("Error while validating decision table spreadsheets", e);
+            }
+        }
 
-                for (Future<Void> f : futures) {
-                    try {
-                        f.get();
-                    } catch (Exception e) {
-                        Throwable cause = e.getCause() != null ? e.getCause() : e;
-                        if (cause instanceof MojoFailureException) {
-                            throw (MojoFailureException) cause;
-                        }
-                        throw new MojoExecutionException("Error while validating decision table spreadsheets", e);
-                    }
+        if (failureException.get() != null) {
+            throw new MojoFailureException(failureException.get().getMessage());
+        }
+
+        if (hadError.get() || !errors.isEmpty()) {
+            if (scheduler.isCancelled()) {
+                throw new MojoFailureException("Spreadsheet validation failed, stopped after first errors");
+            }
+            throw new MojoFailureException("Spreadsheet validation failed!");
+        }
+    }
+
+    /**
+     * Takes the outcome of every spreadsheet validated before from the cache.
+     *
+     * @return the spreadsheets that still need to be validated
+     */
+    private List<File> restoreCached(List<File> files, Path drlOutputPath)
+            throws IOException, DependencyResolutionRequiredException {
+        classpathFingerprint = ResultCache.fingerprintClasspath(project.getRuntimeClasspathElements());
+        List<File> remaining = new ArrayList<>();
+        for (File file : files) {
+            try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.DISCOVERY)) {
+                if (!restoreCached(file, drlOutputPath)) {
+                    remaining.add(file);
                 }
-            } finally {
-                executor.shutdown();
-                try {
-                    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
+            }
+        }
+        if (remaining.size() < files.size()) {
+            LOGGER.info("Reusing cached outcome of {} spreadsheet decision tables", files.size() - remaining.size());
+        }
+        return remaining;
+    }
+
+    private boolean restoreCached(File file, Path drlOutputPath) throws IOException {
+        String hash = GenerateDrl.contentHash(state, file);
+        hashes.put(file, hash);
+        String outcome = cache.get(tableKey(hash));
+        if (BuildState.PASSED.equals(outcome) && drlOutputPath != null) {
+            String drl = cache.get(GenerateDrl.drlKey(cache, hash, splitWorksheets));
+            if (drl == null) {
+                return false;
+            }
+            GenerateDrl.writeAtomically(GenerateDrl.getDrlFile(drlOutputPath, file), writer -> writer.write(drl));
+        } else if (!BuildState.PASSED.equals(outcome) && !BuildState.SKIPPED.equals(outcome)) {
+            return false;
+        }
+        LOGGER.debug("Reusing cached outcome {} of {}", outcome, file);
+        if (state != null) {
+            state.setOutcome(file, step(splitWorksheets), outcome);
+        }
+        recordDrlOutcome(file, outcome);
+        return true;
+    }
+
+    /**
+     * Returns the build state step of validating a decision table, kept apart per {@code splitWorksheets} as the
+     * flag changes which worksheets are compiled.
+     */
+    static String step(boolean splitWorksheets) {
+        return splitWorksheets ? NAME + ".split" : NAME;
+    }
+
+    private String tableKey(String hash) {
+        return cache.key(hash, NAME, classpathFingerprint, String.valueOf(splitWorksheets));
+    }
+
+    /**
+     * Returns the spreadsheets of {@link #contextFiles} that are not in {@code files} but share a ruleset package with
+     * one of them, when spreadsheets are batched.
+     */
+    private List<File> packageMates(List<File> files) throws IOException {
+        if (batchSize == 1) {
+            return Collections.emptyList();
+        }
+        Set<String> packages = new HashSet<>();
+        for (File file : files) {
+            packages.add(ruleSet(file));
+        }
+        packages.remove(null);
+        Set<File> validated = new HashSet<>(files);
+        List<File> mates = new ArrayList<>();
+        for (File file : contextFiles != null ? contextFiles : FileUtils.listSpreadsheetFiles(resourceDir)) {
+            if (!validated.contains(file) && packages.contains(ruleSet(file))) {
+                mates.add(file);
+            }
+        }
+        if (!mates.isEmpty()) {
+            LOGGER.info("Compiling {} unchanged decision tables sharing a package with changed ones", mates.size());
+        }
+        return mates;
+    }
+
+    private String ruleSet(File file) throws IOException {
+        return state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
+    }
+
+    /**
+     * Groups the spreadsheets by ruleset package and packs whole groups into batches of about {@code batchSize}.
+     * Batches are returned largest first.
+     */
+    private List<List<File>> createBatches(List<File> files) throws IOException {
+        List<List<File>> batches = new ArrayList<>();
+        if (batchSize == 1) {
+            TaskScheduler.largestFirst(files).forEach(file -> batches.add(Collections.singletonList(file)));
+            return batches;
+        }
+        Map<String, List<File>> packages = new TreeMap<>();
+        for (File file : files) {
+            String ruleSet = ruleSet(file);
+            if (ruleSet == null) {
+                batches.add(Collections.singletonList(file));
+            } else {
+                packages.computeIfAbsent(ruleSet, p -> new ArrayList<>()).add(file);
+            }
+        }
+        List<File> current = new ArrayList<>();
+        for (List<File> group : packages.values()) {
+            current.addAll(group);
+            if (current.size() >= batchSize) {
+                batches.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        batches.sort(Comparator.comparingLong(SpreadsheetDecisionTableValidator::size).reversed());
+        return batches;
+    }
+
+    /**
+     * Converts every spreadsheet of {@code batch} to DRL and, when {@code drlOutputPath} is set, writes it there.
+     *
+     * @param worksheets the worksheets already converted from each spreadsheet, merged instead of converting the
+     *                   spreadsheet again; {@code null} to convert the first worksheet of each spreadsheet
+     * @return the DRL of every spreadsheet that could be converted, in batch order
+     */
+    private Map<File, String> convert(List<File> batch, Path drlOutputPath, Map<File, WorksheetTasks.Result> worksheets,
+                                      AtomicReference<Exception> failureException, AtomicBoolean hadError)
+            throws IOException {
+        Map<File, String> drls = new LinkedHashMap<>();
+        for (File file : batch) {
+            if (scheduler.isCancelled()) {
+                break;
+            }
+            Path drlFile = drlOutputPath != null && !context.contains(file)
+                    ? GenerateDrl.getDrlFile(drlOutputPath, file) : null;
+            if (drlFile != null) {
+                LOGGER.info("Converting: {} -> {}", file, drlFile);
+            }
+            TaskProfiler profiler = scheduler.getProfiler();
+            String drl;
+            try {
+                if (worksheets != null) {
+                    StringWriter out = new StringWriter();
+                    try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.CONVERT)) {
+                        sheetLines.put(file, worksheets.get(file).render(out));
                     }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                    Thread.currentThread().interrupt();
+                    drl = out.toString();
+                } else {
+                    drl = DecisionTableConverter.convert(file, model, profiler);
+                }
+            } catch (Exception e) {
+                if (GenerateDrl.isNoRuleTable(e)) {
+                    LOGGER.warn("WARN: Skipping {} - No RuleTable cells found", file);
+                    recordOutcome(file, BuildState.SKIPPED);
+                    recordDrlOutcome(file, BuildState.SKIPPED);
+                    cacheDrl(file, BuildState.SKIPPED, null);
+                } else {
+                    LOGGER.error("Failed to convert file: {}", file);
+                    LOGGER.error(e.getMessage());
+                    failureException.compareAndSet(null, e);
+                    hadError.set(true);
+                    scheduler.reportError();
+                    recordOutcome(file, BuildState.FAILED);
+                    recordDrlOutcome(file, BuildState.FAILED);
                 }
+                continue;
             }
+            try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.WRITE)) {
+                if (drlFile != null) {
+                    GenerateDrl.writeAtomically(drlFile, writer -> writer.write(drl));
+                    recordDrlOutcome(file, BuildState.PASSED);
+                }
+                cacheDrl(file, BuildState.PASSED, drl);
+            }
+            drls.put(file, drl);
+        }
+        return drls;
+    }
+
+    /**
+     * Estimates the heap needed by a batch: its spreadsheets are converted one at a time, but the DRL of every
+     * spreadsheet is then compiled together, which needs about as much again.
+     */
+    private long estimateCost(List<File> batch) {
+        long max = 0;
+        long total = 0;
+        for (File file : batch) {
+            long cost = model.estimateParseCost(file);
+            max = Math.max(max, cost);
+            total += cost;
+        }
+        return max + total;
+    }
 
-            if (failureException.get() != null) {
-                throw new MojoFailureException(failureException.get().getMessage());
+    private static long size(List<File> batch) {
+        return batch.stream().mapToLong(File::length).sum();
+    }
+
+    /**
+     * Compiles {@code batch} in a single {@link KieBuilder} and attributes every error to the spreadsheet it was
+     * reported for. A failing batch is only split, in halves, when an error cannot be attributed to a spreadsheet.
+     *
+     * @param drls the DRL converted from each spreadsheet, compiled instead of the spreadsheet itself
+     * @return whether any spreadsheet of the batch failed
+     */
+    private boolean compile(KieServices kieServices, List<File> batch, Map<File, String> drls, Queue<Message> errors,
+                            AtomicReference<Exception> failureException, AtomicBoolean hadError)
+            throws IOException {
+        if (batch.isEmpty() || scheduler.isCancelled()) {
+            return false;
+        }
+        Map<String, File> paths = new HashMap<>();
+        List<Message> messages;
+        // Closed before a failing batch is split, so the halves are timed on their own
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(batch, TaskProfiler.Phase.BUILD)) {
+            KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+            for (File file : batch) {
+                LOGGER.debug("Validating spreadsheet rule: {}", file.getAbsolutePath());
+                String path = resourcePath(file).replaceAll("\\.xlsx?$", ".drl");
+                kieFileSystem.write(RESOURCES_ROOT + path, drls.get(file));
+                paths.put(path, file);
+            }
+            KieBuilder kieBuilder = kieServices.newKieBuilder(kieFileSystem);
+            kieBuilder.buildAll();
+            messages = kieBuilder.getResults().getMessages();
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                LOGGER.debug("Batch of {} decision tables failed ({}), splitting", batch.size(), e.getMessage());
+                return split(kieServices, batch, drls, errors, failureException, hadError);
             }
+            File file = batch.get(0);
+            String m = e.getMessage() == null ? "" : e.getMessage();
+            if (!m.contains("No RuleTable")) {
+                LOGGER.error("Failed to compile {}: {}", file.getAbsolutePath(), m);
+                failureException.compareAndSet(null, e);
+                hadError.set(true);
+                scheduler.reportError();
+                recordOutcome(file, BuildState.FAILED);
+                return true;
+            }
+            recordOutcome(file, BuildState.SKIPPED);
+            return false;
+        }
 
-            if (hadError.get() || !errors.isEmpty()) {
-                throw new MojoFailureException("Spreadsheet validation failed!");
+        Map<File, List<Message>> fileErrors = new HashMap<>();
+        List<Message> unattributed = new ArrayList<>();
+        for (Message msg : messages) {
+            if (msg.getLevel() != Message.Level.ERROR) {
+                LOGGER.debug(msg.toString());
+                continue;
             }
-        } catch (IOException | DependencyResolutionRequiredException e) {
-            throw new MojoExecutionException(e.getMessage());
+            File file = batch.size() == 1 ? batch.get(0) : findFile(paths, msg.getPath());
+            if (file == null) {
+                unattributed.add(msg);
+            } else {
+                fileErrors.computeIfAbsent(file, f -> new ArrayList<>()).add(msg);
+            }
+        }
+        if (!unattributed.isEmpty()) {
+            LOGGER.debug("Batch of {} decision tables failed without a source path, splitting", batch.size());
+            if (split(kieServices, batch, drls, errors, failureException, hadError)) {
+                return true;
+            }
+            // Both halves compile on their own, the error only shows up when they are combined
+            LOGGER.error("Decision tables fail when compiled together: {}", batch);
+            unattributed.forEach(msg -> LOGGER.error(msg.toString()));
+            errors.addAll(unattributed);
+            hadError.set(true);
+            for (File file : batch) {
+                scheduler.reportError();
+                recordOutcome(file, BuildState.FAILED);
+            }
+            return true;
+        }
+        boolean contextFailed = false;
+        for (File file : batch) {
+            List<Message> fileMessages = fileErrors.get(file);
+            if (fileMessages != null) {
+                fileMessages.forEach(msg -> LOGGER.error(describe(file, msg)));
+                errors.addAll(fileMessages);
+                hadError.set(true);
+                scheduler.reportError();
+                contextFailed |= context.contains(file);
+            }
+        }
+        // An unchanged table failing next to changed ones fails because of them
+        for (File file : batch) {
+            boolean failed = contextFailed || fileErrors.containsKey(file);
+            recordOutcome(file, failed ? BuildState.FAILED : BuildState.PASSED, batch.size() == 1);
         }
+        return !fileErrors.isEmpty();
     }
 
-    private void addProjectClassesToContextClassLoader(File classesDir) throws IOException, DependencyResolutionRequiredException {
-        List<URL> urls = new ArrayList<>();
+    private boolean split(KieServices kieServices, List<File> batch, Map<File, String> drls, Queue<Message> errors,
+                          AtomicReference<Exception> failureException, AtomicBoolean hadError) throws IOException {
+        int middle = batch.size() / 2;
+        boolean failed = compile(kieServices, batch.subList(0, middle), drls, errors, failureException, hadError);
+        return compile(kieServices, batch.subList(middle, batch.size()), drls, errors, failureException, hadError)
+                || failed;
+    }
 
-        // Add target/classes
-//        if (classesDir.exists()) {
-//            urls.add(classesDir.toURI().toURL());
-//            LOGGER.info("Added classes directory to classloader: {}", classesDir);
-//        }
-//
-//        if (project.getArtifacts() != null) {
-//            for (Artifact artifact : project.getArtifacts()) {
-//                File f = artifact.getFile();
-//                if (f != null && f.exists()) {
-//                    urls.add(f.toURI().toURL());
-//                }
-//            }
-//        }
+    /**
+     * Prefixes an error of a spreadsheet converted worksheet by worksheet with the worksheet it comes from.
+     */
+    private String describe(File file, Message msg) {
+        NavigableMap<Integer, String> lines = sheetLines.get(file);
+        Map.Entry<Integer, String> sheet = lines != null ? lines.floorEntry(msg.getLine()) : null;
+        return sheet != null ? "Worksheet '" + sheet.getValue() + "': " + msg : msg.toString();
+    }
 
-        List<String> elements = project.getRuntimeClasspathElements();
-        for (String path : elements) {
-            File f = new File(path);
-            if (f.exists()) {
-                urls.add(f.toURI().toURL());
-                LOGGER.debug("Added classpath element: {}", f);
-            }
+    private String resourcePath(File file) {
+        Path base = resourceDir.toPath().toAbsolutePath();
+        Path path = file.toPath().toAbsolutePath();
+        String relative = path.startsWith(base) ? base.relativize(path).toString() : file.getName();
+        return relative.replace(File.separatorChar, '/');
+    }
+
+    private static File findFile(Map<String, File> paths, String messagePath) {
+        if (messagePath == null) {
+            return null;
         }
+        String path = messagePath.startsWith(RESOURCES_ROOT) ? messagePath.substring(RESOURCES_ROOT.length())
+                : messagePath;
+        return paths.get(path);
+    }
+
+    private void recordOutcome(File file, String outcome) throws IOException {
+        recordOutcome(file, outcome, true);
+    }
 
-        ClassLoader current = Thread.currentThread().getContextClassLoader();
-        URLClassLoader projectClassLoader = new URLClassLoader(urls.toArray(new URL[0]), current);
-        Thread.currentThread().setContextClassLoader(projectClassLoader);
-        LOGGER.debug("Added {} classpath elements to Drools classloader", urls.size());
+    /**
+     * @param alone whether {@code file} was compiled on its own. The shared cache is keyed by the content of the
+     *              spreadsheet only, so a table passing together with its batch, which may declare types or
+     *              functions it uses, is not cached: elsewhere it may be compiled alone or with other tables.
+     */
+    private void recordOutcome(File file, String outcome, boolean alone) throws IOException {
+        if (context.contains(file)) {
+            return;
+        }
+        if (state != null) {
+            state.setOutcome(file, step(splitWorksheets), outcome);
+        }
+        String hash = hashes.get(file);
+        if (hash != null && alone && !BuildState.FAILED.equals(outcome)) {
+            cache.put(tableKey(hash), outcome);
+        }
+    }
+
+    /**
+     * Stores the DRL converted from {@code file} for {@link GenerateDrl} and later validations.
+     */
+    private void cacheDrl(File file, String outcome, String drl) {
+        String hash = hashes.get(file);
+        if (hash == null || context.contains(file)) {
+            return;
+        }
+        if (drl != null) {
+            cache.put(GenerateDrl.drlKey(cache, hash, splitWorksheets), drl);
+        }
+        cache.put(GenerateDrl.outcomeKey(cache, hash, splitWorksheets), outcome);
+    }
+
+    private void recordDrlOutcome(File file, String outcome) throws IOException {
+        if (state != null && drlOutputDir != null && !context.contains(file)) {
+            state.setOutcome(file, GenerateDrl.step(splitWorksheets), outcome);
+        }
     }
 }
@@ -0,0 +1,356 @@
+package pro.saransh.plugin;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactoryInputStream;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the ruleset cell (B1 of the first sheet) and the worksheet names without building a workbook object
+ * model. XLSX files are streamed with SAX and parsing stops after the first row, XLS files are read
+ * record by record and parsing stops at the first record past row 1.
+ *
+ * @author Saransh Kumar
+ */
+
+public final class SpreadsheetHeaderReader {
+
+    private static final int RULESET_ROW = 0;
+    private static final int RULESET_COLUMN = 1;
+
+    private SpreadsheetHeaderReader() {
+        // Utility class
+    }
+
+    public static String readRuleSet(File file) throws IOException {
+        FileMagic magic = FileMagic.valueOf(file);
+        String value;
+        if (magic == FileMagic.OOXML) {
+            try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+                value = readXssf(pkg);
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Failed to read " + file.getName(), e);
+            }
+        } else if (magic == FileMagic.OLE2) {
+            try (POIFSFileSystem fs = new POIFSFileSystem(file, true)) {
+                value = readHssf(fs);
+            }
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + ": " + file.getName());
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    /**
+     * Returns the names of the worksheets of {@code file}, in workbook order.
+     */
+    public static List<String> readSheetNames(File file) throws IOException {
+        FileMagic magic = FileMagic.valueOf(file);
+        List<String> names = new ArrayList<>();
+        if (magic == FileMagic.OOXML) {
+            try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+                 InputStream workbook = new XSSFReader(pkg).getWorkbookData()) {
+                parse(workbook, new DefaultHandler() {
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        if ("sheet".equals(localName)) {
+                            names.add(attributes.getValue("name"));
+                        }
+                    }
+                });
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Failed to read " + file.getName(), e);
+            }
+        } else if (magic == FileMagic.OLE2) {
+            try (POIFSFileSystem fs = new POIFSFileSystem(file, true);
+                 DocumentInputStream in = fs.createDocumentInputStream(
+                         HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot()))) {
+                RecordFactoryInputStream records = new RecordFactoryInputStream(in, false);
+                Record record;
+                while ((record = records.nextRecord()) != null) {
+                    if (record instanceof BoundSheetRecord) {
+                        names.add(((BoundSheetRecord) record).getSheetname());
+                    } else if (record instanceof BOFRecord
+                            && ((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            throw new IOException("Unsupported spreadsheet format " + magic + ": " + file.getName());
+        }
+        return names;
+    }
+
+    private static String readXssf(OPCPackage pkg)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        XSSFReader reader = new XSSFReader(pkg);
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        if (!sheets.hasNext()) {
+            return null;
+        }
+        FirstRowHandler cellHandler = new FirstRowHandler(RULESET_ROW, RULESET_COLUMN);
+        try (InputStream sheet = sheets.next()) {
+            parse(sheet, cellHandler);
+        }
+        if (cellHandler.value == null || !"s".equals(cellHandler.type)) {
+            return cellHandler.resolve();
+        }
+        int index = Integer.parseInt(cellHandler.value.trim());
+        SharedStringHandler stringHandler = new SharedStringHandler(index);
+        try (InputStream strings = reader.getSharedStringsData()) {
+            parse(strings, stringHandler);
+        }
+        return stringHandler.found ? stringHandler.text.toString() : null;
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        try {
+            xmlReader.parse(new InputSource(in));
+        } catch (StopParsingException e) {
+            // Requested cell reached, the rest of the part is never read
+        }
+    }
+
+    private static String readHssf(POIFSFileSystem fs) throws IOException {
+        String entry = HSSFWorkbook.getWorkbookDirEntryName(fs.getRoot());
+        try (DocumentInputStream in = fs.createDocumentInputStream(entry)) {
+            RecordFactoryInputStream records = new RecordFactoryInputStream(in, false);
+            SSTRecord sst = null;
+            boolean inFirstSheet = false;
+            boolean expectFormulaString = false;
+            Record record;
+            while ((record = records.nextRecord()) != null) {
+                if (record instanceof BOFRecord) {
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        inFirstSheet = true;
+                    }
+                    continue;
+                }
+                if (!inFirstSheet) {
+                    if (record instanceof SSTRecord) {
+                        sst = (SSTRecord) record;
+                    }
+                    continue;
+                }
+                if (record instanceof EOFRecord) {
+                    return null;
+                }
+                if (expectFormulaString) {
+                    return record instanceof StringRecord ? ((StringRecord) record).getString() : null;
+                }
+                if (!(record instanceof CellValueRecordInterface)) {
+                    continue;
+                }
+                CellValueRecordInterface cell = (CellValueRecordInterface) record;
+                if (cell.getRow() > RULESET_ROW) {
+                    return null;
+                }
+                if (cell.getRow() < RULESET_ROW || cell.getColumn() != RULESET_COLUMN) {
+                    continue;
+                }
+                if (record instanceof LabelSSTRecord) {
+                    return sst == null ? null : sst.getString(((LabelSSTRecord) record).getSSTIndex()).getString();
+                } else if (record instanceof LabelRecord) {
+                    return ((LabelRecord) record).getValue();
+                } else if (record instanceof NumberRecord) {
+                    return NumberToTextConverter.toText(((NumberRecord) record).getValue());
+                } else if (record instanceof RKRecord) {
+                    return NumberToTextConverter.toText(((RKRecord) record).getRKNumber());
+                } else if (record instanceof BoolErrRecord) {
+                    BoolErrRecord boolErr = (BoolErrRecord) record;
+                    return boolErr.isBoolean() ? String.valueOf(boolErr.getBooleanValue()).toUpperCase() : null;
+                } else if (record instanceof FormulaRecord) {
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (!formula.hasCachedResultString()) {
+                        return NumberToTextConverter.toText(formula.getValue());
+                    }
+                    expectFormulaString = true;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops the SAX parser once the requested cell is read or can no longer come. It is thrown for every workbook, so
+     * a single instance without a stack trace is reused.
+     */
+    private static final class StopParsingException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+        private static final StopParsingException INSTANCE = new StopParsingException();
+
+        private StopParsingException() {
+            super("Stop parsing");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * Captures the raw value and type of one cell in the first row of a sheet part.
+     */
+    private static final class FirstRowHandler extends DefaultHandler {
+
+        private final int targetRow;
+        private final int targetColumn;
+        private final StringBuilder buffer = new StringBuilder();
+        private int currentRow = -1;
+        private int nextColumn;
+        private boolean inTarget;
+        private boolean collecting;
+        private String type;
+        private String value;
+
+        private FirstRowHandler(int targetRow, int targetColumn) {
+            this.targetRow = targetRow;
+            this.targetColumn = targetColumn;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            if ("row".equals(localName)) {
+                String r = attributes.getValue("r");
+                currentRow = r != null ? Integer.parseInt(r) - 1 : currentRow + 1;
+                nextColumn = 0;
+                if (currentRow > targetRow) {
+                    throw StopParsingException.INSTANCE;
+                }
+            } else if ("c".equals(localName) && currentRow == targetRow) {
+                String r = attributes.getValue("r");
+                int column = r != null ? new CellReference(r).getCol() : nextColumn;
+                nextColumn = column + 1;
+                if (column > targetColumn) {
+                    throw StopParsingException.INSTANCE;
+                }
+                inTarget = column == targetColumn;
+                type = attributes.getValue("t");
+            } else if (inTarget && ("v".equals(localName) || "t".equals(localName))) {
+                collecting = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (collecting && ("v".equals(localName) || "t".equals(localName))) {
+                collecting = false;
+            } else if (inTarget && "c".equals(localName)) {
+                value = buffer.toString();
+                throw StopParsingException.INSTANCE;
+            } else if ("row".equals(localName) && currentRow == targetRow) {
+                throw StopParsingException.INSTANCE;
+            } else if ("sheetData".equals(localName)) {
+                throw StopParsingException.INSTANCE;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                buffer.append(ch, start, length);
+            }
+        }
+
+        private String resolve() {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            if (type == null || "n".equals(type)) {
+                return NumberToTextConverter.toText(Double.parseDouble(value));
+            }
+            if ("b".equals(type)) {
+                return "1".equals(value) ? "TRUE" : "FALSE";
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Collects the text of a single shared string entry and stops at its closing tag.
+     */
+    private static final class SharedStringHandler extends DefaultHandler {
+
+        private final int targetIndex;
+        private final StringBuilder text = new StringBuilder();
+        private int index = -1;
+        private int phoneticDepth;
+        private boolean collecting;
+        private boolean found;
+
+        private SharedStringHandler(int targetIndex) {
+            this.targetIndex = targetIndex;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("si".equals(localName)) {
+                index++;
+            } else if ("rPh".equals(localName)) {
+                phoneticDepth++;
+            } else if ("t".equals(localName) && index == targetIndex && phoneticDepth == 0) {
+                collecting = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if ("t".equals(localName)) {
+                collecting = false;
+            } else if ("rPh".equals(localName)) {
+                phoneticDepth--;
+            } else if ("si".equals(localName) && index == targetIndex) {
+                found = true;
+                throw StopParsingException.INSTANCE;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Per-build view of the project spreadsheets. Each file is read from disk and its header parsed once, no matter
+ * how many validators or goals ask for it, unless several ask for it at the same time. Header metadata is always
+ * kept, file contents are kept in a least recently used cache bounded by {@code maxCachedBytes}.
+ * <p>
+ * The model also estimates the heap needed to parse each spreadsheet, used to admit tasks against a memory
+ * budget. XLSX files are estimated from the uncompressed size of their sheet and shared string parts, read from
+ * the zip directory without inflating anything; XLS files from their file size.
+ *
+ * @author Saransh Kumar
+ */
+
+public class SpreadsheetModel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpreadsheetModel.class);
+    private static final String CONTEXT_KEY = SpreadsheetModel.class.getName();
+    public static final long DEFAULT_MAX_CACHED_BYTES = 64L * 1024 * 1024;
+    private static final int XLSX_COST_FACTOR = 4;
+    private static final int XLS_COST_FACTOR = 10;
+
+    private final long maxCachedBytes;
+    private final Map<File, Header> headers = new ConcurrentHashMap<>();
+    private final Map<File, Cost> costs = new ConcurrentHashMap<>();
+    private final LinkedHashMap<File, Content> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    public SpreadsheetModel() {
+        this(DEFAULT_MAX_CACHED_BYTES);
+    }
+
+    public SpreadsheetModel(long maxCachedBytes) {
+        this.maxCachedBytes = Math.max(0, maxCachedBytes);
+    }
+
+    /**
+     * Returns the model shared by every goal of this plugin running on {@code project} in the current build.
+     */
+    public static SpreadsheetModel forProject(MavenProject project, long maxCachedBytes) {
+        if (project == null) {
+            return new SpreadsheetModel(maxCachedBytes);
+        }
+        synchronized (project) {
+            Object model = project.getContextValue(CONTEXT_KEY);
+            if (model instanceof SpreadsheetModel) {
+                return (SpreadsheetModel) model;
+            }
+            SpreadsheetModel created = new SpreadsheetModel(maxCachedBytes);
+            project.setContextValue(CONTEXT_KEY, created);
+            return created;
+        }
+    }
+
+    public String getRuleSet(File file) {
+        File key = file.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        long length = key.length();
+        Header header = headers.get(key);
+        if (header != null && header.matches(lastModified, length)) {
+            return header.ruleSet;
+        }
+        // Read outside the map, so lookups of other files sharing its bin do not wait for the disk
+        header = new Header(lastModified, length, FileUtils.readRuleSet(key));
+        headers.put(key, header);
+        return header.ruleSet;
+    }
+
+    /**
+     * Returns the estimated heap, in bytes, needed to convert {@code file} to DRL.
+     */
+    public long estimateParseCost(File file) {
+        File key = file.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        long length = key.length();
+        Cost cost = costs.get(key);
+        if (cost != null && cost.matches(lastModified, length)) {
+            return cost.bytes;
+        }
+        cost = new Cost(lastModified, length, computeParseCost(key));
+        costs.put(key, cost);
+        return cost.bytes;
+    }
+
+    private static long computeParseCost(File file) {
+        try (ZipFile zip = new ZipFile(file)) {
+            long xml = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith("xl/worksheets/") || name.equals("xl/sharedStrings.xml")) {
+                    xml += entry.getSize() >= 0 ? entry.getSize() : entry.getCompressedSize() * 10;
+                }
+            }
+            return xml * XLSX_COST_FACTOR;
+        } catch (IOException e) {
+            // Not a zip, an XLS workbook is loaded whole by POI
+            return file.length() * XLS_COST_FACTOR;
+        }
+    }
+
+    public byte[] getContent(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        long length = key.length();
+        synchronized (contents) {
+            Content content = contents.get(key);
+            if (content != null && content.matches(lastModified, length)) {
+                return content.bytes;
+            }
+        }
+        byte[] bytes = Files.readAllBytes(key.toPath());
+        synchronized (contents) {
+            Content previous = contents.remove(key);
+            if (previous != null) {
+                cachedBytes -= previous.bytes.length;
+            }
+            if (bytes.length <= maxCachedBytes) {
+                contents.put(key, new Content(lastModified, length, bytes));
+                cachedBytes += bytes.length;
+                evict();
+            }
+        }
+        return bytes;
+    }
+
+    public InputStream openStream(File file) throws IOException {
+        return new ByteArrayInputStream(getContent(file));
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<File, Content>> it = contents.entrySet().iterator();
+        while (cachedBytes > maxCachedBytes && it.hasNext()) {
+            Map.Entry<File, Content> eldest = it.next();
+            cachedBytes -= eldest.getValue().bytes.length;
+            it.remove();
+            LOGGER.debug("Evicted {} from spreadsheet cache", eldest.getKey());
+        }
+    }
+
+    private static final class Header {
+
+        private final long lastModified;
+        private final long length;
+        private final String ruleSet;
+
+        private Header(long lastModified, long length, String ruleSet) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.ruleSet = ruleSet;
+        }
+
+        private boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+    private static final class Cost {
+
+        private final long lastModified;
+        private final long length;
+        private final long bytes;
+
+        private Cost(long lastModified, long length, long bytes) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.bytes = bytes;
+        }
+
+        private boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+
+    private static final class Content {
+
+        private final long lastModified;
+        private final long length;
+        private final byte[] bytes;
+
+        private Content(long lastModified, long length, byte[] bytes) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.bytes = bytes;
+        }
+
+        private boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+    }
+}
@@ -9,7 +9,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -19,19 +22,40 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SpreadsheetRuleSetValidator implements Validator {
 
+    public static final String NAME = "ruleset";
     private static final Logger LOGGER = LoggerFactory.getLogger(SpreadsheetRuleSetValidator.class);
     private final File resourceDir;
     private final List<File> spreadsheetFiles;
-    private final int poolSize;
+    private final List<File> contextFiles;
+    private final TaskScheduler scheduler;
+    private final SpreadsheetModel model;
+    private final BuildState state;
 
     public SpreadsheetRuleSetValidator(File resourceDir) {
         this(resourceDir, null, 1);
     }
 
     public SpreadsheetRuleSetValidator(File resourceDir, List<File> spreadsheetFiles, int poolSize) {
+        this(resourceDir, spreadsheetFiles, new TaskScheduler(poolSize), new SpreadsheetModel(), null);
+    }
+
+    public SpreadsheetRuleSetValidator(File resourceDir, List<File> spreadsheetFiles, TaskScheduler scheduler,
+                                       SpreadsheetModel model, BuildState state) {
+        this(resourceDir, spreadsheetFiles, Collections.emptyList(), scheduler, model, state);
+    }
+
+    /**
+     * @param contextFiles spreadsheets that are not validated themselves, but whose ruleset must not be repeated by
+     *                     one of {@code spreadsheetFiles}
+     */
+    public SpreadsheetRuleSetValidator(File resourceDir, List<File> spreadsheetFiles, List<File> contextFiles,
+                                       TaskScheduler scheduler, SpreadsheetModel model, BuildState state) {
         this.resourceDir = resourceDir;
         this.spreadsheetFiles = spreadsheetFiles;
-        this.poolSize = poolSize > 0 ? poolSize : 1;
+        this.contextFiles = contextFiles;
+        this.scheduler = scheduler;
+        this.model = model;
+        this.state = state;
     }
 
     @Override
@@ -46,68 +70,89 @@ public class SpreadsheetRuleSetValidator implements Validator {
             final ConcurrentHashMap<String, String> seen = new ConcurrentHashMap<>();
             final Path resourcePath = resourceDir.toPath().toAbsolutePath();
             final AtomicBoolean error = new AtomicBoolean(false);
+            final Set<String> validated = new HashSet<>();
+            files.forEach(file -> validated.add(file.getAbsolutePath()));
 
-            final ExecutorService executor = Executors.newFixedThreadPool(this.poolSize);
-            LOGGER.info("Validating {} spreadsheet ruleset files with pool size {}", files.size(), this.poolSize);
-            try {
-                List<Future<Void>> futures = new ArrayList<>();
-                for (final File file : files) {
-                    futures.add(executor.submit(() -> {
-                        LOGGER.debug("Validating file: {}", file.getAbsolutePath());
-                        Path filePath = file.toPath().toAbsolutePath();
-                        String validPath = resourcePath.relativize(filePath).toString();
-                        String fileName = file.getName();
-                        validPath = validPath.replace("\\", ".")
-                                .replace("/", ".")
-                                .substring(0, validPath.length() - fileName.length() - 1);
-                        String value = FileUtils.readRuleSet(file);
-                        if (value == null) {
-                            LOGGER.error("Invalid or empty B1 cell in file: {}", file.getAbsolutePath());
-                            error.set(true);
-                            return null;
-                        }
-                        if (!validPath.equals(value)) {
-                            LOGGER.error("File must be in directory '{}' to match ruleset value, but found in '{}',",
-                                    value, validPath);
-                            error.set(true);
-                            return null;
-                        }
-                        String previous = seen.putIfAbsent(value, file.getAbsolutePath());
-                        if (previous != null) {
-                            LOGGER.error("Duplicate B1 value '{}' found in:", value);
-                            LOGGER.error(" - {}", previous);
-                            LOGGER.error(" - {}", file.getAbsolutePath());
-                            error.set(true);
-                        }
-                        return null;
-                    }));
+            LOGGER.info("Validating {} spreadsheet ruleset files with pool size {}", files.size(),
+                    scheduler.getParallelism());
+            List<Future<Void>> futures = new ArrayList<>();
+            for (final File file : contextFiles) {
+                if (validated.contains(file.getAbsolutePath())) {
+                    continue;
                 }
-
-                // Wait for all tasks to complete and propagate any unexpected exceptions
-                for (Future<Void> f : futures) {
-                    try {
-                        f.get();
-                    } catch (Exception e) {
-                        throw new MojoExecutionException("Error while validating spreadsheets", e);
+                futures.add(scheduler.submit(() -> {
+                    String value = readRuleSet(file);
+                    String previous = value != null ? seen.putIfAbsent(value, file.getAbsolutePath()) : null;
+                    if (previous != null && validated.contains(previous)) {
+                        reportDuplicate(value, previous, file);
+                        error.set(true);
+                        scheduler.reportError();
                     }
-                }
-            } finally {
-                executor.shutdown();
-                try {
-                    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
+                    return null;
+                }, 0, Collections.singletonList(file)));
+            }
+            for (final File file : TaskScheduler.largestFirst(files)) {
+                futures.add(scheduler.submit(() -> {
+                    LOGGER.debug("Validating file: {}", file.getAbsolutePath());
+                    Path filePath = file.toPath().toAbsolutePath();
+                    String validPath = resourcePath.relativize(filePath).toString();
+                    String fileName = file.getName();
+                    validPath = validPath.replace("\\", ".")
+                            .replace("/", ".")
+                            .substring(0, validPath.length() - fileName.length() - 1);
+                    String value = readRuleSet(file);
+                    if (value == null) {
+                        LOGGER.error("Invalid or empty B1 cell in file: {}", file.getAbsolutePath());
+                        error.set(true);
+                        scheduler.reportError();
+                        return null;
+                    }
+                    if (!validPath.equals(value)) {
+                        LOGGER.error("File must be in directory '{}' to match ruleset value, but found in '{}',",
+                                value, validPath);
+                        error.set(true);
+                        scheduler.reportError();
+                        return null;
+                    }
+                    String previous = seen.putIfAbsent(value, file.getAbsolutePath());
+                    if (previous != null) {
+                        reportDuplicate(value, previous, file);
+                        error.set(true);
+                        scheduler.reportError();
                     }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                    Thread.currentThread().interrupt();
+                    return null;
+                }, 0, Collections.singletonList(file)));
+            }
+
+            // Wait for all tasks to complete and propagate any unexpected exceptions
+            for (Future<Void> f : futures) {
+                try {
+                    scheduler.await(f);
+                } catch (Exception e) {
+                    throw new MojoExecutionException("Error while validating spreadsheets", e);
                 }
             }
 
             if (error.get()) {
+                if (scheduler.isCancelled()) {
+                    throw new MojoFailureException("Spreadsheet ruleset validation failed, stopped after first errors");
+                }
                 throw new MojoFailureException("Spreadsheet ruleset validation failed");
             }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getMessage());
         }
     }
+
+    private String readRuleSet(File file) throws IOException {
+        try (TaskProfiler.Span span = scheduler.getProfiler().start(file, TaskProfiler.Phase.DISCOVERY)) {
+            return state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
+        }
+    }
+
+    private static void reportDuplicate(String value, String previous, File file) {
+        LOGGER.error("Duplicate B1 value '{}' found in:", value);
+        LOGGER.error(" - {}", previous);
+        LOGGER.error(" - {}", file.getAbsolutePath());
+    }
 }
@@ -0,0 +1,482 @@
+package pro.saransh.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Times the work done for each spreadsheet, split into {@link Phase phases}, and the tasks of the
+ * {@link TaskScheduler} it is attached to. Every phase records wall time, thread CPU time and allocated bytes;
+ * phases nest, e.g. reading a workbook inside writing its DRL, and each is counted without the phases nested in it.
+ * Time spent compiling a batch is shared evenly between its spreadsheets. Every task records how long it waited
+ * between being submitted and starting, and how busy the workers were overall. A pool may run more tasks at once
+ * than its parallelism while a worker is blocked inside Drools, which shows as a utilization above 1.
+ * <p>
+ * Phases and tasks are also emitted as JDK Flight Recorder events when the JVM supports it, see
+ * {@link ProfilerEvents}. On {@link #close()} a JSON report is written with the totals per phase, the slowest
+ * spreadsheets and the profile of every spreadsheet. A disabled profiler records nothing.
+ *
+ * @author Saransh Kumar
+ */
+
+public class TaskProfiler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskProfiler.class);
+    private static final TaskProfiler DISABLED = new TaskProfiler(null, null, 0, null);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> TASK_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    private static final Span NO_SPAN = new Span(null, Collections.emptyList(), null);
+
+    /**
+     * What the time of a spreadsheet is spent on.
+     */
+    public enum Phase {
+        /**
+         * Finding out what to do with the spreadsheet: its B1 ruleset, worksheet names, content hash and whether
+         * it is up to date or cached.
+         */
+        DISCOVERY,
+        /**
+         * Reading the workbook with POI into the decision table model.
+         */
+        READ,
+        /**
+         * Rendering the decision table model as DRL.
+         */
+        CONVERT,
+        /**
+         * Compiling the DRL with a {@code KieBuilder}.
+         */
+        BUILD,
+        /**
+         * Writing the DRL file and recording the outcome.
+         */
+        WRITE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final File reportFile;
+    private final File resourceDir;
+    private final int top;
+    private final String name;
+    private final long started = System.nanoTime();
+    private final Map<File, Profile> files = new ConcurrentHashMap<>();
+    private final Profile unattributed = new Profile();
+    private final AtomicInteger parallelism = new AtomicInteger(1);
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicInteger tasks = new AtomicInteger();
+    private final Set<String> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+
+    /**
+     * @param reportFile  where the JSON report is written on {@link #close()}
+     * @param resourceDir spreadsheets are reported by their path relative to it
+     * @param top         number of spreadsheets listed as the slowest
+     * @param name        what is being profiled, e.g. the goal, included in the report
+     */
+    public TaskProfiler(File reportFile, File resourceDir, int top, String name) {
+        this.reportFile = reportFile;
+        this.resourceDir = resourceDir;
+        this.top = Math.max(0, top);
+        this.name = name;
+    }
+
+    /**
+     * Returns a profiler that records nothing.
+     */
+    public static TaskProfiler disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return reportFile != null;
+    }
+
+    /**
+     * Starts timing {@code phase} of {@code file} on the current thread; close the span when the phase ends.
+     *
+     * @param file the spreadsheet, or {@code null} for work not done for a single spreadsheet
+     */
+    public Span start(File file, Phase phase) {
+        if (!isEnabled()) {
+            return NO_SPAN;
+        }
+        return new Span(this, file != null ? Collections.singletonList(file) : Collections.emptyList(), phase);
+    }
+
+    /**
+     * Starts timing {@code phase} of work shared by {@code batch}, e.g. compiling the spreadsheets together.
+     */
+    public Span start(Collection<File> batch, Phase phase) {
+        if (!isEnabled()) {
+            return NO_SPAN;
+        }
+        return new Span(this, new ArrayList<>(batch), phase);
+    }
+
+    void useParallelism(int workers) {
+        parallelism.accumulateAndGet(workers, Math::max);
+    }
+
+    /**
+     * Records that a task for {@code batch}, submitted at {@code submitted}, starts on the current thread.
+     *
+     * @return the running task, passed to {@link #taskFinished(Object)}, or {@code null} when disabled
+     */
+    Object taskStarted(Collection<File> batch, long submitted, long cost) {
+        if (!isEnabled()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long wait = start - submitted;
+        tasks.incrementAndGet();
+        queueNanos.addAndGet(wait);
+        // A worker joining work forked by Drools may run another task inside the current one, only the outermost
+        // task counts as keeping the worker busy
+        boolean outermost = TASK_DEPTH.get()[0]++ == 0;
+        if (outermost) {
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            workers.add(Thread.currentThread().getName());
+        }
+        for (File file : batch) {
+            profile(file).addQueueWait(wait);
+        }
+        return new Task(batch, start, wait, cost, outermost,
+                ProfilerEvents.AVAILABLE ? ProfilerEvents.beginTask() : null);
+    }
+
+    void taskFinished(Object running) {
+        if (running == null) {
+            return;
+        }
+        Task task = (Task) running;
+        TASK_DEPTH.get()[0]--;
+        if (task.outermost) {
+            busyNanos.addAndGet(System.nanoTime() - task.start);
+            active.decrementAndGet();
+        }
+        if (task.event != null) {
+            ProfilerEvents.commitTask(task.event, describe(task.batch), task.wait, task.cost);
+        }
+    }
+
+    /**
+     * Writes the report and logs the slowest spreadsheets.
+     */
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        List<Map.Entry<File, Profile>> sorted = new ArrayList<>(files.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<File, Profile> entry) -> entry.getValue().totalWall())
+                .reversed());
+        List<Map.Entry<File, Profile>> slowest = sorted.subList(0, Math.min(top, sorted.size()));
+        double utilization = elapsed > 0 ? (double) busyNanos.get() / ((double) elapsed * parallelism.get()) : 0;
+        try {
+            Files.createDirectories(reportFile.getAbsoluteFile().getParentFile().toPath());
+            Files.write(reportFile.toPath(), toJson(elapsed, utilization, sorted, slowest)
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write profile {}: {}", reportFile, e.getMessage());
+            return;
+        }
+        LOGGER.info("Profiled {} spreadsheets in {} tasks: pool size {} {}% busy, at most {} tasks at once on {}"
+                        + " threads, {} ms queued", files.size(), tasks.get(), parallelism.get(),
+                Math.round(utilization * 100), peakActive.get(), workers.size(),
+                TimeUnit.NANOSECONDS.toMillis(queueNanos.get()));
+        LOGGER.info("Wrote profile {}, slowest spreadsheets:", reportFile);
+        for (Map.Entry<File, Profile> entry : slowest) {
+            LOGGER.info(" - {} ms {}", TimeUnit.NANOSECONDS.toMillis(entry.getValue().totalWall()),
+                    relativePath(entry.getKey()));
+        }
+    }
+
+    private String toJson(long elapsed, double utilization, List<Map.Entry<File, Profile>> sorted,
+                          List<Map.Entry<File, Profile>> slowest) {
+        Profile totals = new Profile();
+        totals.addAll(unattributed);
+        sorted.forEach(entry -> totals.addAll(entry.getValue()));
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"name\": ").append(quote(name)).append(",\n");
+        json.append("  \"parallelism\": ").append(parallelism.get()).append(",\n");
+        json.append("  \"elapsedMs\": ").append(millis(elapsed)).append(",\n");
+        json.append("  \"busyMs\": ").append(millis(busyNanos.get())).append(",\n");
+        json.append("  \"utilization\": ").append(String.format(Locale.ROOT, "%.3f", utilization)).append(",\n");
+        json.append("  \"peakActiveTasks\": ").append(peakActive.get()).append(",\n");
+        json.append("  \"workerThreads\": ").append(workers.size()).append(",\n");
+        json.append("  \"tasks\": ").append(tasks.get()).append(",\n");
+        json.append("  \"queueWaitMs\": ").append(millis(queueNanos.get())).append(",\n");
+        json.append("  \"phases\": ");
+        appendPhases(json, totals, "  ");
+        json.append(",\n  \"slowest\": [");
+        for (int i = 0; i < slowest.size(); i++) {
+            Map.Entry<File, Profile> entry = slowest.get(i);
+            json.append(i == 0 ? "\n" : ",\n").append("    {\"file\": ").append(quote(relativePath(entry.getKey())))
+                    .append(", \"wallMs\": ").append(millis(entry.getValue().totalWall())).append('}');
+        }
+        json.append(slowest.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"files\": [");
+        for (int i = 0; i < sorted.size(); i++) {
+            Profile profile = sorted.get(i).getValue();
+            json.append(i == 0 ? "\n" : ",\n").append("    {\n");
+            json.append("      \"file\": ").append(quote(relativePath(sorted.get(i).getKey()))).append(",\n");
+            json.append("      \"wallMs\": ").append(millis(profile.totalWall())).append(",\n");
+            json.append("      \"cpuMs\": ").append(millis(profile.totalCpu())).append(",\n");
+            json.append("      \"allocatedBytes\": ").append(profile.totalAllocated()).append(",\n");
+            json.append("      \"queueWaitMs\": ").append(millis(profile.queueWait)).append(",\n");
+            json.append("      \"tasks\": ").append(profile.tasks).append(",\n");
+            json.append("      \"phases\": ");
+            appendPhases(json, profile, "      ");
+            json.append("\n    }");
+        }
+        json.append(sorted.isEmpty() ? "]\n" : "\n  ]\n");
+        return json.append("}\n").toString();
+    }
+
+    private static void appendPhases(StringBuilder json, Profile profile, String indent) {
+        json.append('{');
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (profile.wall[i] == 0 && profile.cpu[i] == 0 && profile.allocated[i] == 0) {
+                continue;
+            }
+            json.append(first ? "\n" : ",\n").append(indent).append("  ").append(quote(phase.label()))
+                    .append(": {\"wallMs\": ").append(millis(profile.wall[i]))
+                    .append(", \"cpuMs\": ").append(millis(profile.cpu[i]))
+                    .append(", \"allocatedBytes\": ").append(profile.allocated[i]).append('}');
+            first = false;
+        }
+        json.append(first ? "}" : "\n" + indent + "}");
+    }
+
+    private void record(List<File> batch, Phase phase, long wall, long cpu, long allocated) {
+        if (batch.isEmpty()) {
+            unattributed.add(phase, wall, cpu, allocated);
+            return;
+        }
+        int n = batch.size();
+        for (File file : batch) {
+            profile(file).add(phase, wall / n, cpu / n, allocated / n);
+        }
+    }
+
+    private Profile profile(File file) {
+        return files.computeIfAbsent(file.getAbsoluteFile(), f -> new Profile());
+    }
+
+    private String relativePath(File file) {
+        return resourceDir != null ? Shards.relativePath(resourceDir, file) : file.getPath();
+    }
+
+    private String describe(List<File> batch) {
+        return batch.stream().map(this::relativePath).collect(Collectors.joining(", "));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static long cpuTime() {
+        try {
+            return Math.max(0, THREADS.getCurrentThreadCpuTime());
+        } catch (UnsupportedOperationException e) {
+            return 0;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            try {
+                return Math.max(0, ((com.sun.management.ThreadMXBean) THREADS)
+                        .getThreadAllocatedBytes(Thread.currentThread().getId()));
+            } catch (UnsupportedOperationException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * One phase being timed on the current thread.
+     */
+    public static final class Span implements AutoCloseable {
+
+        private final TaskProfiler profiler;
+        private final List<File> batch;
+        private final Phase phase;
+        private final Span parent;
+        private final long wallStart;
+        private final long cpuStart;
+        private final long allocatedStart;
+        private final Object event;
+        private long nestedWall;
+        private long nestedCpu;
+        private long nestedAllocated;
+
+        private Span(TaskProfiler profiler, List<File> batch, Phase phase) {
+            this.profiler = profiler;
+            this.batch = batch;
+            this.phase = phase;
+            if (profiler == null) {
+                this.parent = null;
+                this.wallStart = 0;
+                this.cpuStart = 0;
+                this.allocatedStart = 0;
+                this.event = null;
+                return;
+            }
+            this.parent = CURRENT.get();
+            CURRENT.set(this);
+            this.event = ProfilerEvents.AVAILABLE ? ProfilerEvents.beginPhase() : null;
+            this.cpuStart = cpuTime();
+            this.allocatedStart = allocatedBytes();
+            this.wallStart = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (profiler == null) {
+                return;
+            }
+            long wall = System.nanoTime() - wallStart;
+            long cpu = cpuTime() - cpuStart;
+            long allocated = allocatedBytes() - allocatedStart;
+            if (CURRENT.get() == this) {
+                if (parent != null) {
+                    CURRENT.set(parent);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+            if (parent != null) {
+                parent.nestedWall += wall;
+                parent.nestedCpu += cpu;
+                parent.nestedAllocated += allocated;
+            }
+            profiler.record(batch, phase, Math.max(0, wall - nestedWall), Math.max(0, cpu - nestedCpu),
+                    Math.max(0, allocated - nestedAllocated));
+            if (event != null) {
+                ProfilerEvents.commitPhase(event, profiler.describe(batch), phase.label(), cpu, allocated);
+            }
+        }
+    }
+
+    private static final class Profile {
+
+        private final long[] wall = new long[Phase.values().length];
+        private final long[] cpu = new long[Phase.values().length];
+        private final long[] allocated = new long[Phase.values().length];
+        private long queueWait;
+        private int tasks;
+
+        private synchronized void add(Phase phase, long wall, long cpu, long allocated) {
+            this.wall[phase.ordinal()] += wall;
+            this.cpu[phase.ordinal()] += cpu;
+            this.allocated[phase.ordinal()] += allocated;
+        }
+
+        private synchronized void addQueueWait(long nanos) {
+            queueWait += nanos;
+            tasks++;
+        }
+
+        private synchronized void addAll(Profile other) {
+            synchronized (other) {
+                for (int i = 0; i < wall.length; i++) {
+                    wall[i] += other.wall[i];
+                    cpu[i] += other.cpu[i];
+                    allocated[i] += other.allocated[i];
+                }
+            }
+        }
+
+        private synchronized long totalWall() {
+            long total = 0;
+            for (long value : wall) {
+                total += value;
+            }
+            return total;
+        }
+
+        private synchronized long totalCpu() {
+            long total = 0;
+            for (long value : cpu) {
+                total += value;
+            }
+            return total;
+        }
+
+        private synchronized long totalAllocated() {
+            long total = 0;
+            for (long value : allocated) {
+                total += value;
+            }
+            return total;
+        }
+    }
+
+    private static final class Task {
+
+        private final List<File> batch;
+        private final long start;
+        private final long wait;
+        private final long cost;
+        private final boolean outermost;
+        private final Object event;
+
+        private Task(Collection<File> batch, long start, long wait, long cost, boolean outermost, Object event) {
+            this.batch = new ArrayList<>(batch);
+            this.start = start;
+            this.wait = wait;
+            this.cost = cost;
+            this.outermost = outermost;
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package pro.saransh.plugin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool shared by every validator and generator of the build. Schedulers created with the same settings
+ * share one work-stealing pool, so goals running concurrently on several modules ({@code -T}) draw from a single
+ * execution budget instead of each starting its own pool. The pool is shut down when the last scheduler using
+ * it is closed; idle workers time out, so a scheduler that is never closed does not keep threads alive.
+ * <p>
+ * On Java 21 and later, tasks can run on virtual threads instead; the number of tasks running at the same time
+ * is still bounded by the parallelism.
+ * <p>
+ * Each scheduler is also the cancellation scope of one goal execution. Validators report every failing
+ * spreadsheet through {@link #reportError()}; once {@code maxErrors} is reached the scheduler cancels the tasks
+ * it has not started yet, and running tasks stop at their next {@link #isCancelled()} check.
+ * <p>
+ * With a memory budget, tasks submitted with an estimated heap cost only start while the estimates of running
+ * tasks fit in the budget. Waiting tasks are admitted first fit, so small spreadsheets keep flowing while a large
+ * one waits for room; a task larger than the whole budget runs alone. The budget belongs to the pool and is
+ * shared by every scheduler using it.
+ *
+ * @author Saransh Kumar
+ */
+
+public class TaskScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskScheduler.class);
+    public static final String AUTO = "auto";
+    private static final long HEAP_PER_WORKER = 256L * 1024 * 1024;
+    private static final Map<String, Pool> POOLS = new HashMap<>();
+
+    private final String key;
+    private final Pool pool;
+    private final int maxErrors;
+    private final TaskProfiler profiler;
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final Set<Future<?>> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private boolean closed;
+
+    public TaskScheduler(int parallelism) {
+        this(parallelism, false, 0, 0);
+    }
+
+    /**
+     * @param maxErrors    number of reported errors after which outstanding tasks are cancelled, {@code 0} to
+     *                     always run every task
+     * @param memoryBudget bytes of estimated heap cost allowed in flight at the same time, {@code 0} for no limit
+     */
+    public TaskScheduler(int parallelism, boolean virtualThreads, int maxErrors, long memoryBudget) {
+        this(parallelism, virtualThreads, maxErrors, memoryBudget, TaskProfiler.disabled());
+    }
+
+    /**
+     * @param profiler records the queue wait and run time of every task, see {@link #getProfiler()}
+     */
+    public TaskScheduler(int parallelism, boolean virtualThreads, int maxErrors, long memoryBudget,
+                         TaskProfiler profiler) {
+        this.maxErrors = Math.max(0, maxErrors);
+        this.profiler = profiler;
+        int size = parallelism > 0 ? parallelism : 1;
+        profiler.useParallelism(size);
+        boolean virtual = virtualThreads && supportsVirtualThreads();
+        if (virtualThreads && !virtual) {
+            LOGGER.warn("Virtual threads require Java 21 or later, using platform threads");
+        }
+        long budget = Math.max(0, memoryBudget);
+        this.key = (virtual ? "virtual-" : "platform-") + size + "-" + budget;
+        synchronized (POOLS) {
+            this.pool = POOLS.computeIfAbsent(key, k -> new Pool(size, virtual, budget));
+            this.pool.references++;
+        }
+    }
+
+    /**
+     * Resolves the {@code poolSize} parameter, either a number of workers or {@code auto}. {@code auto} uses one
+     * worker per available core, limited to one worker per {@value #HEAP_PER_WORKER} bytes of maximum heap.
+     */
+    public static int resolvePoolSize(String poolSize) {
+        if (poolSize == null || !AUTO.equalsIgnoreCase(poolSize.trim())) {
+            try {
+                return poolSize == null ? 1 : Math.max(1, Integer.parseInt(poolSize.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("poolSize must be a number or '" + AUTO + "': " + poolSize);
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        int byHeap = maxHeap == Long.MAX_VALUE ? cores : (int) Math.max(1, maxHeap / HEAP_PER_WORKER);
+        int size = Math.max(1, Math.min(cores, byHeap));
+        LOGGER.info("Using pool size {} ({} cores, {} MB max heap)", size, cores, maxHeap / (1024 * 1024));
+        return size;
+    }
+
+    /**
+     * Returns {@code files} ordered largest first, the submission order that keeps one big spreadsheet from
+     * finishing alone after every other worker ran out of work.
+     */
+    public static List<File> largestFirst(Collection<File> files) {
+        List<File> ordered = new ArrayList<>(files);
+        ordered.sort(Comparator.comparingLong(File::length).reversed());
+        return ordered;
+    }
+
+    public int getParallelism() {
+        return pool.parallelism;
+    }
+
+    /**
+     * Returns the profiler tasks time their phases with, disabled unless one was given.
+     */
+    public TaskProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Submits {@code task}, which runs with the context classloader of the submitting thread. Once the scheduler
+     * is cancelled the returned future is cancelled and {@code task} does not run.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return submit(task, 0);
+    }
+
+    /**
+     * Submits {@code task} with the estimated heap it needs while running, see {@link #submit(Callable)}.
+     */
+    public <T> Future<T> submit(Callable<T> task, long cost) {
+        return submit(task, cost, Collections.emptyList());
+    }
+
+    /**
+     * Submits {@code task} for the spreadsheets of {@code batch}, which its queue wait is recorded for, see
+     * {@link #submit(Callable, long)}.
+     */
+    public <T> Future<T> submit(Callable<T> task, long cost, Collection<File> batch) {
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        long submitted = System.nanoTime();
+        FutureTask<T> future = new FutureTask<>(() -> {
+            if (cancelled) {
+                return null;
+            }
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            thread.setContextClassLoader(contextClassLoader);
+            if (pool.permits != null) {
+                pool.permits.acquire();
+            }
+            Object running = profiler.taskStarted(batch, submitted, cost);
+            try {
+                return task.call();
+            } finally {
+                profiler.taskFinished(running);
+                if (pool.permits != null) {
+                    pool.permits.release();
+                }
+                thread.setContextClassLoader(previous);
+            }
+        });
+        if (pool.budget != null && cost > 0) {
+            pool.budget.admit(future, cost);
+        } else {
+            pool.executor.execute(future);
+        }
+        pending.add(future);
+        if (cancelled) {
+            future.cancel(false);
+        }
+        return future;
+    }
+
+    /**
+     * Waits for {@code future}. Returns {@code null} for a task cancelled by this scheduler.
+     */
+    public <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } finally {
+            pending.remove(future);
+        }
+    }
+
+    /**
+     * Records one failing spreadsheet or check, cancelling outstanding tasks when {@code maxErrors} is reached.
+     */
+    public void reportError() {
+        int errors = errorCount.incrementAndGet();
+        if (maxErrors > 0 && errors >= maxErrors && !cancelled) {
+            LOGGER.error("Reached {} error(s), cancelling remaining spreadsheet tasks", errors);
+            cancel();
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Future<?> future : pending) {
+            future.cancel(false);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void close() {
+        if (pool.budget != null && !closed) {
+            LOGGER.info("Peak in-flight heap estimate {} MB of {} MB budget",
+                    String.format("%.1f", pool.budget.peak / (1024.0 * 1024)), pool.budget.limit / (1024 * 1024));
+        }
+        synchronized (POOLS) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (--pool.references > 0) {
+                return;
+            }
+            POOLS.remove(key);
+        }
+        pool.executor.shutdown();
+        try {
+            if (!pool.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                pool.executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean supportsVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static final class Pool {
+
+        private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+        private final int parallelism;
+        private final ExecutorService executor;
+        private final Semaphore permits;
+        private final MemoryBudget budget;
+        private int references;
+
+        private Pool(int parallelism, boolean virtual, long budget) {
+            this.parallelism = parallelism;
+            if (virtual) {
+                this.executor = newVirtualThreadExecutor();
+                this.permits = new Semaphore(parallelism, true);
+            } else {
+                int poolId = POOL_COUNTER.incrementAndGet();
+                AtomicInteger threadCounter = new AtomicInteger();
+                this.executor = new ForkJoinPool(parallelism, p -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    thread.setName("drools-spreadsheet-" + poolId + "-" + threadCounter.incrementAndGet());
+                    return thread;
+                }, null, true);
+                this.permits = null;
+            }
+            this.budget = budget > 0 ? new MemoryBudget(budget, executor) : null;
+        }
+
+        private static ExecutorService newVirtualThreadExecutor() {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual threads are not available", e);
+            }
+        }
+    }
+
+    private static final class MemoryBudget {
+
+        private final long limit;
+        private final Executor executor;
+        private final List<Admission> waiting = new LinkedList<>();
+        private long inFlight;
+        private volatile long peak;
+
+        private MemoryBudget(long limit, Executor executor) {
+            this.limit = limit;
+            this.executor = executor;
+        }
+
+        private synchronized void admit(Runnable task, long cost) {
+            Admission admission = new Admission(task, cost);
+            if (fits(cost)) {
+                start(admission);
+            } else {
+                waiting.add(admission);
+            }
+        }
+
+        private synchronized void release(long cost) {
+            inFlight -= cost;
+            Iterator<Admission> it = waiting.iterator();
+            while (it.hasNext()) {
+                Admission admission = it.next();
+                if (fits(admission.cost)) {
+                    it.remove();
+                    start(admission);
+                }
+            }
+        }
+
+        private boolean fits(long cost) {
+            return inFlight == 0 || inFlight + cost <= limit;
+        }
+
+        private void start(Admission admission) {
+            inFlight += admission.cost;
+            peak = Math.max(peak, inFlight);
+            executor.execute(() -> {
+                try {
+                    admission.task.run();
+                } finally {
+                    release(admission.cost);
+                }
+            });
+        }
+    }
+
+    private static final class Admission {
+
+        private final Runnable task;
+        private final long cost;
+
+        private Admission(Runnable task, long cost) {
+            this.task = task;
+            this.cost = cost;
+        }
+    }
+}
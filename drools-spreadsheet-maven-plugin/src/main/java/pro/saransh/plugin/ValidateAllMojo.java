@@ -1,18 +1,23 @@
 package pro.saransh.plugin;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.apache.maven.project.MavenProject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Saransh Kumar
@@ -20,20 +25,62 @@ import java.util.List;
 
 @Mojo(name = "validate-all", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true,
         requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
-public class ValidateAllMojo extends AbstractMojo {
+public class ValidateAllMojo extends AbstractSpreadsheetMojo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ValidateAllMojo.class);
 
-    @Parameter(property = "resourcesDir", defaultValue = "${project.basedir}/src/main/resources")
-    private File resourcesDir;
     @Parameter(property = "classesDir", defaultValue = "${project.build.outputDirectory}")
     private File classesDir;
     @Parameter(property = "validators", defaultValue = "table,kmodule")
     private List<String> validators;
-    @Parameter(property = "poolSize", defaultValue = "1")
-    private int poolSize;
-    @Parameter(defaultValue = "${project}", readonly = true, required = true)
-    private MavenProject project;
+    @Parameter(property = "batchSize", defaultValue = "1")
+    private int batchSize;
+    /**
+     * Converts each spreadsheet to DRL once, validates that DRL and writes it to {@code outputDir} the same way
+     * the {@code generate-drl} goal does. Only applies when the {@code table} validator is enabled.
+     */
+    @Parameter(property = "generateDrl", defaultValue = "false")
+    private boolean generateDrl;
+    @Parameter(defaultValue = "${project.build.directory}", property = "outputDir")
+    private File outputDir;
+    /**
+     * Git ref, e.g. {@code origin/main}, to only process spreadsheets added or modified since. Everything is
+     * processed when the project is not in a git work tree or the ref cannot be resolved.
+     */
+    @Parameter(property = "sinceRef")
+    private String sinceRef;
+    /**
+     * Index, from {@code 0}, of the part of the spreadsheets this build processes when they are split between
+     * {@code shardCount} builds.
+     */
+    @Parameter(property = "shardIndex", defaultValue = "0")
+    private int shardIndex;
+    /**
+     * Number of builds the spreadsheets are split between. Every build computes the same partitions, balanced by
+     * estimated parse cost, and {@code validate-all} writes its result to {@code shardDir} for {@code merge-shards}.
+     */
+    @Parameter(property = "shardCount", defaultValue = "1")
+    private int shardCount;
+    @Parameter(property = "shardDir", defaultValue = "${project.build.directory}/spreadsheet-shards")
+    private File shardDir;
+    /**
+     * Severity overrides of the {@code performance} validator, as {@code check=severity} with severity
+     * {@code info}, {@code warning}, {@code error} or {@code off}, e.g. {@code method-call=error,from=off}.
+     */
+    @Parameter(property = "lintPolicy")
+    private List<String> lintPolicy;
+    /**
+     * Lowest severity of a {@code performance} finding that fails the build: {@code info}, {@code warning},
+     * {@code error} or {@code none}.
+     */
+    @Parameter(property = "lintFailOn", defaultValue = "error")
+    private String lintFailOn;
+    /**
+     * Distinct values from which a condition column counts as high-cardinality for the {@code performance}
+     * validator.
+     */
+    @Parameter(property = "lintHighCardinality", defaultValue = "10")
+    private int lintHighCardinality;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -51,14 +98,91 @@ public class ValidateAllMojo extends AbstractMojo {
         } catch (Exception e) {
             throw new MojoFailureException(e);
         }
-        for (String validator : validators) {
-            if (validator.equalsIgnoreCase("ruleset")) {
-                new SpreadsheetRuleSetValidator(resourcesDir, files, poolSize).validate();
-            } else if (validator.equalsIgnoreCase("table")) {
-                new SpreadsheetDecisionTableValidator(project, classesDir, resourcesDir, files, poolSize).validate();
-            } else if (validator.equalsIgnoreCase("kmodule")) {
-                new KmoduleValidator(resourcesDir, files, poolSize).validate();
+        SpreadsheetModel model = getSpreadsheetModel();
+        boolean sharded = shardCount > 1;
+        List<File> candidates = filterChanged(files, sinceRef);
+        // Changed spreadsheets are taken from the partition of all spreadsheets, so a changed table and the package
+        // mates compiled with it come from the same assignment
+        List<File> owned = selectShard(files, model, shardIndex, shardCount);
+        Set<File> ownedSet = new HashSet<>(owned);
+        List<File> changed = new ArrayList<>();
+        for (File file : candidates) {
+            if (ownedSet.contains(file)) {
+                changed.add(file);
             }
         }
+        BuildState state = loadBuildState();
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler);
+             ResultCache cache = openResultCache()) {
+            if (state != null && validators.stream().anyMatch(validator ->
+                    validator.equalsIgnoreCase(SpreadsheetDecisionTableValidator.NAME)
+                            || validator.equalsIgnoreCase(KieBaseGraphValidator.NAME))) {
+                state.useClasspath(hashRuntimeClasspath());
+            }
+            // Unchanged spreadsheets are only read where another spreadsheet is checked against them: the rulesets
+            // of all spreadsheets for kmodule.xml and duplicates, and the package of a changed decision table, which
+            // is compiled with it without being validated again. Shards leave the checks over all rulesets to
+            // merge-shards, and only compile the unchanged tables they would own if every spreadsheet had changed.
+            List<File> ruleSetContext = sharded ? Collections.emptyList() : files;
+            Map<String, Validator> selected = new LinkedHashMap<>();
+            for (String validator : validators) {
+                if (validator.equalsIgnoreCase(SpreadsheetRuleSetValidator.NAME)) {
+                    selected.put(SpreadsheetRuleSetValidator.NAME,
+                            new SpreadsheetRuleSetValidator(resourcesDir, changed, ruleSetContext, scheduler, model,
+                                    state));
+                } else if (validator.equalsIgnoreCase(SpreadsheetDecisionTableValidator.NAME)) {
+                    selected.put(SpreadsheetDecisionTableValidator.NAME,
+                            new SpreadsheetDecisionTableValidator(project, classesDir, resourcesDir, changed, owned,
+                                    scheduler, batchSize, generateDrl ? outputDir : null, model, state,
+                                    splitWorksheets, cache));
+                } else if (validator.equalsIgnoreCase(RulePerformanceValidator.NAME)) {
+                    selected.put(RulePerformanceValidator.NAME,
+                            new RulePerformanceValidator(resourcesDir, changed, scheduler, model, state,
+                                    splitWorksheets, createLintPolicy(lintPolicy, lintFailOn, lintHighCardinality)));
+                } else if (validator.equalsIgnoreCase(KmoduleValidator.NAME) && sharded) {
+                    LOGGER.info("Leaving the kmodule.xml check of shard {} to merge-shards", shardIndex);
+                } else if (validator.equalsIgnoreCase(KieBaseGraphValidator.NAME) && sharded) {
+                    LOGGER.info("Skipping the kbase builds in shard {}, they need every spreadsheet", shardIndex);
+                } else if (validator.equalsIgnoreCase(KieBaseGraphValidator.NAME)) {
+                    selected.put(KieBaseGraphValidator.NAME,
+                            new KieBaseGraphValidator(project, resourcesDir, files, scheduler, model, state,
+                                    splitWorksheets));
+                } else if (validator.equalsIgnoreCase(KmoduleValidator.NAME)) {
+                    selected.put(KmoduleValidator.NAME,
+                            new KmoduleValidator(resourcesDir, files, scheduler, model, state));
+                }
+            }
+            List<String> failures = runValidators(selected);
+            if (sharded) {
+                writeShardResult(files, changed, failures, model, state);
+            }
+            if (!failures.isEmpty()) {
+                failures.forEach(failure -> LOGGER.error("Validation failed - {}", failure));
+                throw new MojoFailureException("Spreadsheet validation failed: " + String.join("; ", failures));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        } finally {
+            if (state != null) {
+                state.save();
+            }
+        }
+    }
+
+    private void writeShardResult(List<File> files, List<File> shard, List<String> failures, SpreadsheetModel model,
+                                  BuildState state) throws IOException {
+        Shards.Result result = new Shards.Result(shardIndex, shardCount,
+                Shards.inputDigest(resourcesDir, files, state));
+        for (File file : shard) {
+            String ruleSet = state != null ? state.getRuleSet(file, model) : model.getRuleSet(file);
+            if (ruleSet != null) {
+                result.getRuleSets().put(Shards.relativePath(resourcesDir, file), ruleSet);
+            }
+        }
+        result.getFailures().addAll(failures);
+        File resultFile = Shards.resultFile(shardDir, shardIndex);
+        result.write(resultFile);
+        LOGGER.info("Wrote shard result {}", resultFile);
     }
 }
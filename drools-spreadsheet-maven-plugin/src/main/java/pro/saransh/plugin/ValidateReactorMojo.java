@@ -0,0 +1,164 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the validators of {@code validate-all} once for the whole reactor. The spreadsheets of every module are
+ * scheduled on a single worker pool, so the pool, the KIE bootstrap and the classloaders of modules sharing a
+ * classpath are set up once instead of once per module. Each module keeps its own build state and gets its own
+ * result; the goal fails if any module fails.
+ * <p>
+ * Modules must be compiled first, e.g. {@code mvn process-classes drools-spreadsheet:validate-reactor}.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "validate-reactor", aggregator = true, threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class ValidateReactorMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValidateReactorMojo.class);
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+    /**
+     * Spreadsheet directory of each module, relative to the module base directory.
+     */
+    @Parameter(property = "moduleResourcesDir", defaultValue = "src/main/resources")
+    private String moduleResourcesDir;
+    @Parameter(property = "validators", defaultValue = "table,kmodule")
+    private List<String> validators;
+    @Parameter(property = "batchSize", defaultValue = "1")
+    private int batchSize;
+    /**
+     * Severity overrides of the {@code performance} validator, as {@code check=severity} with severity
+     * {@code info}, {@code warning}, {@code error} or {@code off}, e.g. {@code method-call=error,from=off}.
+     */
+    @Parameter(property = "lintPolicy")
+    private List<String> lintPolicy;
+    /**
+     * Lowest severity of a {@code performance} finding that fails the build: {@code info}, {@code warning},
+     * {@code error} or {@code none}.
+     */
+    @Parameter(property = "lintFailOn", defaultValue = "error")
+    private String lintFailOn;
+    /**
+     * Distinct values from which a condition column counts as high-cardinality for the {@code performance}
+     * validator.
+     */
+    @Parameter(property = "lintHighCardinality", defaultValue = "10")
+    private int lintHighCardinality;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        Map<MavenProject, BuildState> states = new LinkedHashMap<>();
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler);
+             ResultCache cache = openResultCache()) {
+            Map<String, Validator> selected = new LinkedHashMap<>();
+            Map<String, MavenProject> modules = new LinkedHashMap<>();
+            for (MavenProject module : reactorProjects) {
+                File moduleResources = new File(module.getBasedir(), moduleResourcesDir);
+                if (!moduleResources.isDirectory()) {
+                    continue;
+                }
+                List<File> files = FileUtils.listSpreadsheetFiles(moduleResources);
+                if (files.isEmpty()) {
+                    continue;
+                }
+                File classesDir = new File(module.getBuild().getOutputDirectory());
+                if (!classesDir.exists()) {
+                    throw new MojoExecutionException("Classes directory not found for " + module.getArtifactId()
+                            + ": " + classesDir.getAbsolutePath());
+                }
+                BuildState state = loadModuleState(module);
+                if (state != null) {
+                    states.put(module, state);
+                }
+                // Modules of different groups may share an artifactId
+                String moduleId = module.getGroupId() + ":" + module.getArtifactId();
+                modules.put(moduleId, module);
+                SpreadsheetModel model = SpreadsheetModel.forProject(module, spreadsheetCacheMb * 1024 * 1024);
+                for (String validator : validators) {
+                    String key = moduleId + "/" + validator.toLowerCase();
+                    if (validator.equalsIgnoreCase(SpreadsheetRuleSetValidator.NAME)) {
+                        selected.put(key, new SpreadsheetRuleSetValidator(moduleResources, files, scheduler, model,
+                                state));
+                    } else if (validator.equalsIgnoreCase(SpreadsheetDecisionTableValidator.NAME)) {
+                        selected.put(key, new SpreadsheetDecisionTableValidator(module, classesDir, moduleResources,
+                                files, scheduler, batchSize, null, model, state, splitWorksheets, cache));
+                    } else if (validator.equalsIgnoreCase(KmoduleValidator.NAME)) {
+                        selected.put(key, new KmoduleValidator(moduleResources, files, scheduler, model, state));
+                    } else if (validator.equalsIgnoreCase(RulePerformanceValidator.NAME)) {
+                        selected.put(key, new RulePerformanceValidator(moduleResources, files, scheduler, model,
+                                state, splitWorksheets, createLintPolicy(lintPolicy, lintFailOn, lintHighCardinality)));
+                    }
+                }
+            }
+            if (selected.isEmpty()) {
+                LOGGER.info("No spreadsheets found in {} reactor modules", reactorProjects.size());
+                return;
+            }
+            LOGGER.info("Validating {} modules with pool size {}", modules.size(), scheduler.getParallelism());
+            // Drivers mostly wait for the shared workers, enough of them keep the workers busy without a thread per
+            // module and validator
+            List<String> failures = runValidators(selected,
+                    Math.max(validators.size(), scheduler.getParallelism()));
+            report(modules.keySet(), failures);
+            if (!failures.isEmpty()) {
+                throw new MojoFailureException("Spreadsheet validation failed: " + String.join("; ", failures));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        } finally {
+            states.values().forEach(BuildState::save);
+        }
+    }
+
+    private BuildState loadModuleState(MavenProject module) throws MojoExecutionException {
+        if (!incremental) {
+            return null;
+        }
+        BuildState state = BuildState.load(new File(module.getBuild().getDirectory(), BuildState.STATE_FILE_NAME),
+                pluginVersion);
+        if (validators.stream().anyMatch(SpreadsheetDecisionTableValidator.NAME::equalsIgnoreCase)) {
+            try {
+                state.useClasspath(BuildState.hashClasspath(module.getRuntimeClasspathElements()));
+            } catch (IOException | DependencyResolutionRequiredException e) {
+                throw new MojoExecutionException(e.getMessage());
+            }
+        }
+        return state;
+    }
+
+    private static void report(Iterable<String> modules, List<String> failures) {
+        for (String module : modules) {
+            List<String> moduleFailures = new ArrayList<>();
+            for (String failure : failures) {
+                if (failure.startsWith(module + "/")) {
+                    moduleFailures.add(failure.substring(module.length() + 1));
+                }
+            }
+            if (moduleFailures.isEmpty()) {
+                LOGGER.info("{}: PASSED", module);
+            } else {
+                LOGGER.error("{}: FAILED - {}", module, String.join("; ", moduleFailures));
+            }
+        }
+    }
+}
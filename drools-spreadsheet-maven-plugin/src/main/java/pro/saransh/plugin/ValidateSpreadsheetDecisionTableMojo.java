@@ -1,17 +1,17 @@
 package pro.saransh.plugin;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
-import org.apache.maven.project.MavenProject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Saransh Kumar
@@ -19,18 +19,26 @@ import java.io.File;
 
 @Mojo(name = "validate-spreadsheet-decision-table", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true,
         requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
-public class ValidateSpreadsheetDecisionTableMojo extends AbstractMojo {
+public class ValidateSpreadsheetDecisionTableMojo extends AbstractSpreadsheetMojo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ValidateSpreadsheetDecisionTableMojo.class);
 
-    @Parameter(property = "resourcesDir", defaultValue = "${project.basedir}/src/main/resources")
-    private File resourcesDir;
     @Parameter(property = "classesDir", defaultValue = "${project.build.outputDirectory}")
     private File classesDir;
-    @Parameter(property = "poolSize", defaultValue = "1")
-    private int poolSize;
-    @Parameter(defaultValue = "${project}", readonly = true, required = true)
-    private MavenProject project;
+    @Parameter(property = "batchSize", defaultValue = "1")
+    private int batchSize;
+    /**
+     * Index, from {@code 0}, of the part of the spreadsheets this build processes when they are split between
+     * {@code shardCount} builds.
+     */
+    @Parameter(property = "shardIndex", defaultValue = "0")
+    private int shardIndex;
+    /**
+     * Number of builds the spreadsheets are split between. Every build computes the same partitions, balanced by
+     * estimated parse cost, and {@code validate-all} writes its result to {@code shardDir} for {@code merge-shards}.
+     */
+    @Parameter(property = "shardCount", defaultValue = "1")
+    private int shardCount;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -42,6 +50,27 @@ public class ValidateSpreadsheetDecisionTableMojo extends AbstractMojo {
             LOGGER.error("Classes directory not found: {}", classesDir.getAbsolutePath());
             throw new MojoExecutionException("Classes directory not found");
         }
-        new SpreadsheetDecisionTableValidator(project, classesDir, resourcesDir, null, poolSize).validate();
+        SpreadsheetModel model = getSpreadsheetModel();
+        List<File> files;
+        try {
+            files = selectShard(FileUtils.listSpreadsheetFiles(resourcesDir), model, shardIndex,
+                    shardCount);
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+        BuildState state = loadBuildState();
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler);
+             ResultCache cache = openResultCache()) {
+            if (state != null) {
+                state.useClasspath(hashRuntimeClasspath());
+            }
+            new SpreadsheetDecisionTableValidator(project, classesDir, resourcesDir, files, scheduler, batchSize, null,
+                    model, state, splitWorksheets, cache).validate();
+        } finally {
+            if (state != null) {
+                state.save();
+            }
+        }
     }
 }
@@ -1,36 +1,35 @@
 package pro.saransh.plugin;
 
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.plugins.annotations.Parameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-
 /**
  * @author Saransh Kumar
  */
 
 @Mojo(name = "validate-spreadsheet-ruleset", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
-public class ValidateSpreadsheetRuleSetMojo extends AbstractMojo {
+public class ValidateSpreadsheetRuleSetMojo extends AbstractSpreadsheetMojo {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ValidateSpreadsheetRuleSetMojo.class);
 
-    @Parameter(property = "resourcesDir", defaultValue = "${project.basedir}/src/main/resources")
-    private File resourcesDir;
-    @Parameter(property = "poolSize", defaultValue = "1")
-    private int poolSize;
-
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (!resourcesDir.exists()) {
             LOGGER.error("Resources directory not found: {}", resourcesDir.getAbsolutePath());
             throw new MojoExecutionException("Resources directory not found");
         }
-        new SpreadsheetRuleSetValidator(resourcesDir, null, poolSize).validate();
+        BuildState state = loadBuildState();
+        try (TaskProfiler profiler = openProfiler();
+             TaskScheduler scheduler = createScheduler(profiler)) {
+            new SpreadsheetRuleSetValidator(resourcesDir, null, scheduler, getSpreadsheetModel(), state).validate();
+        } finally {
+            if (state != null) {
+                state.save();
+            }
+        }
     }
 }
@@ -0,0 +1,288 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the plugin running and revalidates spreadsheets as they are saved. The resources directory, including
+ * {@code META-INF/kmodule.xml}, is watched for changes; bursts of saves are collected until the directory has been
+ * quiet for {@code debounceMs}. A changed spreadsheet is validated, and converted to DRL when {@code generateDrl}
+ * is set, on its own; the ruleset and kmodule.xml checks, which need every spreadsheet, rerun from the rulesets
+ * already read. The project classloader, KIE services and spreadsheet model stay warm between runs.
+ * <p>
+ * Stop with Ctrl+C.
+ *
+ * @author Saransh Kumar
+ */
+
+@Mojo(name = "watch", threadSafe = true, requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
+public class WatchMojo extends AbstractSpreadsheetMojo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchMojo.class);
+    private static final String KMODULE_FILE_NAME = "kmodule.xml";
+    /**
+     * Returned by {@link #awaitChanges} when events were lost, so every spreadsheet is revalidated.
+     */
+    private static final Path RESCAN = Paths.get("");
+
+    @Parameter(property = "classesDir", defaultValue = "${project.build.outputDirectory}")
+    private File classesDir;
+    @Parameter(property = "validators", defaultValue = "table,kmodule")
+    private List<String> validators;
+    @Parameter(property = "batchSize", defaultValue = "1")
+    private int batchSize;
+    @Parameter(property = "generateDrl", defaultValue = "true")
+    private boolean generateDrl;
+    @Parameter(defaultValue = "${project.build.directory}", property = "outputDir")
+    private File outputDir;
+    /**
+     * Milliseconds without further changes before a burst of saves is revalidated.
+     */
+    @Parameter(property = "debounceMs", defaultValue = "200")
+    private long debounceMs;
+    /**
+     * Severity overrides of the {@code performance} validator, as {@code check=severity} with severity
+     * {@code info}, {@code warning}, {@code error} or {@code off}, e.g. {@code method-call=error,from=off}.
+     */
+    @Parameter(property = "lintPolicy")
+    private List<String> lintPolicy;
+    /**
+     * Lowest severity of a {@code performance} finding that fails the build: {@code info}, {@code warning},
+     * {@code error} or {@code none}.
+     */
+    @Parameter(property = "lintFailOn", defaultValue = "error")
+    private String lintFailOn;
+    /**
+     * Distinct values from which a condition column counts as high-cardinality for the {@code performance}
+     * validator.
+     */
+    @Parameter(property = "lintHighCardinality", defaultValue = "10")
+    private int lintHighCardinality;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!resourcesDir.exists()) {
+            LOGGER.error("Resources directory not found: {}", resourcesDir.getAbsolutePath());
+            throw new MojoExecutionException("Resources directory not found");
+        }
+        if (!classesDir.exists()) {
+            LOGGER.error("Classes directory not found: {}", classesDir.getAbsolutePath());
+            throw new MojoExecutionException("Classes directory not found");
+        }
+        SpreadsheetModel model = getSpreadsheetModel();
+        BuildState state = loadBuildState();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            if (state != null) {
+                state.useClasspath(hashRuntimeClasspath());
+            }
+            warmUp();
+            Map<WatchKey, Path> directories = new LinkedHashMap<>();
+            register(watcher, resourcesDir.toPath(), directories);
+            run(FileUtils.listSpreadsheetFiles(resourcesDir), Collections.emptyList(), true, model, state);
+            LOGGER.info("Watching {} for changes", resourcesDir.getAbsolutePath());
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = awaitChanges(watcher, directories);
+                if (changed.contains(RESCAN)) {
+                    LOGGER.warn("Missed file system events, revalidating every spreadsheet");
+                    register(watcher, resourcesDir.toPath(), directories);
+                    run(FileUtils.listSpreadsheetFiles(resourcesDir), Collections.emptyList(), true, model, state);
+                    continue;
+                }
+                List<File> spreadsheets = new ArrayList<>();
+                List<File> deleted = new ArrayList<>();
+                boolean crossFile = false;
+                for (Path path : changed) {
+                    if (KMODULE_FILE_NAME.equals(path.getFileName().toString())) {
+                        crossFile = true;
+                    } else if (FileUtils.isSpreadsheetFile(path.getFileName().toString())) {
+                        if (!Files.isRegularFile(path)) {
+                            crossFile = true;
+                            deleted.add(path.toFile());
+                        } else if (path.toFile().length() > 0) {
+                            // Empty files are still being written, they are picked up by the next change
+                            crossFile = true;
+                            spreadsheets.add(path.toFile());
+                        }
+                    }
+                }
+                if (crossFile) {
+                    run(spreadsheets, deleted, false, model, state);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            LOGGER.info("Stopped watching {}", resourcesDir.getAbsolutePath());
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage());
+        }
+    }
+
+    /**
+     * Validates {@code changed}, and converts it to DRL, removes the DRL of {@code deleted} and reruns the checks over
+     * all spreadsheets. Failures are logged, not thrown, so that watching goes on.
+     */
+    private void run(List<File> changed, List<File> deleted, boolean initial, SpreadsheetModel model,
+                     BuildState state) {
+        long start = System.nanoTime();
+        List<String> failures = new ArrayList<>();
+        // A scheduler cancelled by failFast or maxErrors must not stop the next run
+        try (TaskScheduler scheduler = createScheduler();
+             ResultCache cache = openResultCache()) {
+            List<File> files = FileUtils.listSpreadsheetFiles(resourcesDir);
+            if (generateDrl) {
+                deleteDrl(deleted, files);
+            }
+            Map<String, Validator> selected = new LinkedHashMap<>();
+            for (String validator : validators) {
+                if (validator.equalsIgnoreCase(SpreadsheetRuleSetValidator.NAME)) {
+                    selected.put(SpreadsheetRuleSetValidator.NAME,
+                            new SpreadsheetRuleSetValidator(resourcesDir, initial ? files : changed, files, scheduler,
+                                    model, state));
+                } else if (validator.equalsIgnoreCase(SpreadsheetDecisionTableValidator.NAME) && !changed.isEmpty()) {
+                    selected.put(SpreadsheetDecisionTableValidator.NAME,
+                            new SpreadsheetDecisionTableValidator(project, classesDir, resourcesDir, changed, files,
+                                    scheduler, batchSize, generateDrl ? outputDir : null, model, state,
+                                    splitWorksheets, cache));
+                } else if (validator.equalsIgnoreCase(KmoduleValidator.NAME)) {
+                    selected.put(KmoduleValidator.NAME,
+                            new KmoduleValidator(resourcesDir, files, scheduler, model, state));
+                } else if (validator.equalsIgnoreCase(RulePerformanceValidator.NAME) && !changed.isEmpty()) {
+                    selected.put(RulePerformanceValidator.NAME,
+                            new RulePerformanceValidator(resourcesDir, changed, scheduler, model, state,
+                                    splitWorksheets, createLintPolicy(lintPolicy, lintFailOn, lintHighCardinality)));
+                }
+            }
+            boolean converted = selected.containsKey(SpreadsheetDecisionTableValidator.NAME);
+            if (generateDrl && !converted && !changed.isEmpty()) {
+                selected.put(GenerateDrl.NAME, () -> new GenerateDrl(resourcesDir, outputDir, changed, scheduler,
+                        model, state, splitWorksheets, cache).execute());
+            }
+            failures.addAll(runValidators(selected));
+        } catch (MojoExecutionException e) {
+            failures.add(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Validation run failed", e);
+            failures.add(e.toString());
+        } finally {
+            if (state != null) {
+                state.save();
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failures.isEmpty()) {
+            LOGGER.info("{} {} spreadsheets in {} ms: PASSED", initial ? "Validated" : "Revalidated",
+                    changed.size(), millis);
+        } else {
+            failures.forEach(failure -> LOGGER.error("Validation failed - {}", failure));
+            LOGGER.error("{} {} spreadsheets in {} ms: FAILED", initial ? "Validated" : "Revalidated",
+                    changed.size(), millis);
+        }
+    }
+
+    /**
+     * Deletes the DRL generated from the spreadsheets of {@code deleted}, unless one of {@code files} is converted to
+     * the same DRL file.
+     */
+    private void deleteDrl(List<File> deleted, List<File> files) throws IOException {
+        if (deleted.isEmpty()) {
+            return;
+        }
+        Path outputPath = GenerateDrl.createOutputPath(outputDir);
+        Set<Path> remaining = new HashSet<>();
+        files.forEach(file -> remaining.add(GenerateDrl.getDrlFile(outputPath, file)));
+        for (File file : deleted) {
+            Path drlFile = GenerateDrl.getDrlFile(outputPath, file);
+            if (!remaining.contains(drlFile) && Files.deleteIfExists(drlFile)) {
+                LOGGER.info("Deleted {} of removed spreadsheet {}", drlFile, file);
+            }
+        }
+    }
+
+    /**
+     * Compiles a trivial rule so that the first change does not pay for loading the DRL compiler.
+     */
+    private static void warmUp() {
+        KieServices kieServices = KieServices.Factory.get();
+        KieFileSystem kieFileSystem = kieServices.newKieFileSystem();
+        kieFileSystem.write("src/main/resources/warmup/warmup.drl", "package warmup;\n"
+                + "rule \"warmup\" when then end\n");
+        kieServices.newKieBuilder(kieFileSystem).buildAll();
+    }
+
+    /**
+     * Waits for a change, then collects further changes until none arrives for {@code debounceMs}. The changes
+     * include {@link #RESCAN} if the watch service dropped events.
+     */
+    private Set<Path> awaitChanges(WatchService watcher, Map<WatchKey, Path> directories)
+            throws InterruptedException, IOException {
+        Set<Path> changed = new LinkedHashSet<>();
+        WatchKey key = watcher.take();
+        while (key != null) {
+            Path directory = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    changed.add(RESCAN);
+                    continue;
+                }
+                if (directory == null) {
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    register(watcher, path, directories);
+                    try (Stream<Path> created = Files.walk(path)) {
+                        created.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } else {
+                    changed.add(path);
+                }
+            }
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+            key = watcher.poll(debounceMs, TimeUnit.MILLISECONDS);
+        }
+        return changed;
+    }
+
+    private static void register(WatchService watcher, Path root, Map<WatchKey, Path> directories)
+            throws IOException {
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) tree.filter(Files::isDirectory)::iterator) {
+                WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                directories.put(key, directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package pro.saransh.plugin;
+
+import org.drools.decisiontable.parser.DefaultRuleSheetListener;
+import org.drools.template.parser.DecisionTableParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts the worksheets of a group of spreadsheets as separate tasks. Every spreadsheet is read once by its own
+ * task, which feeds each worksheet to a listener of its own and then submits one task per worksheet to build its
+ * ruleset. The task finishing the last worksheet of the group runs the completion with the result of every
+ * spreadsheet. Nothing waits on a worker thread, so groups never hold workers idle while their worksheets are queued.
+ *
+ * @author Saransh Kumar
+ */
+
+final class WorksheetTasks {
+
+    /**
+     * Runs once every worksheet of the group has been converted or has failed.
+     */
+    interface Completion {
+
+        void complete(Map<File, Result> results) throws Exception;
+    }
+
+    private WorksheetTasks() {
+        // Utility class
+    }
+
+    /**
+     * Submits one task reading each spreadsheet of {@code files}. The returned futures complete when the worksheets
+     * of their spreadsheet are converted; the future of the last one also covers {@code completion}.
+     */
+    static List<Future<Void>> submit(TaskScheduler scheduler, SpreadsheetModel model, List<File> files,
+                                     Completion completion) throws IOException {
+        TaskProfiler profiler = scheduler.getProfiler();
+        Map<File, Result> results = new LinkedHashMap<>();
+        int total = 0;
+        for (File file : files) {
+            List<String> names;
+            try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.DISCOVERY)) {
+                names = SpreadsheetHeaderReader.readSheetNames(file);
+            }
+            results.put(file, new Result(names));
+            total += names.size();
+        }
+        List<Future<Void>> futures = new ArrayList<>();
+        if (total == 0) {
+            futures.add(scheduler.submit(() -> {
+                completion.complete(results);
+                return null;
+            }, 0, files));
+            return futures;
+        }
+        AtomicInteger remaining = new AtomicInteger(total);
+        for (Map.Entry<File, Result> entry : results.entrySet()) {
+            File file = entry.getKey();
+            Result result = entry.getValue();
+            if (result.names.isEmpty()) {
+                continue;
+            }
+            // The workbook is read once for all worksheets, which then hold their own share of it
+            long cost = model.estimateParseCost(file);
+            long sheetCost = cost / result.names.size();
+            List<Future<Void>> sheetFutures = Collections.synchronizedList(new ArrayList<>());
+            Future<Void> read = scheduler.submit(() -> {
+                List<DefaultRuleSheetListener> listeners;
+                try {
+                    listeners = DecisionTableConverter.readSheets(file, model, result.names, profiler);
+                } catch (Exception e) {
+                    // Reported once for the spreadsheet rather than for each of its worksheets
+                    result.errors[0] = e.getMessage() != null ? e.getMessage() : e.toString();
+                    if (remaining.addAndGet(-result.names.size()) == 0) {
+                        completion.complete(results);
+                    }
+                    return null;
+                }
+                for (int i = 0; i < result.names.size(); i++) {
+                    int index = i;
+                    sheetFutures.add(scheduler.submit(() -> {
+                        try (TaskProfiler.Span span = profiler.start(file, TaskProfiler.Phase.CONVERT)) {
+                            result.sheets[index] = DecisionTableConverter.toWorksheet(result.names.get(index),
+                                    listeners.get(index));
+                        } catch (Exception e) {
+                            result.errors[index] = "Worksheet '" + result.names.get(index) + "': " + e.getMessage();
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            completion.complete(results);
+                        }
+                        return null;
+                    }, sheetCost, Collections.singletonList(file)));
+                }
+                return null;
+            }, cost, Collections.singletonList(file));
+            futures.add(new FanOut(scheduler, read, sheetFutures));
+        }
+        return futures;
+    }
+
+    /**
+     * The future of reading one spreadsheet followed by the worksheet tasks the read submitted. Waiting on it waits
+     * on the caller's thread, through the scheduler, for all of them.
+     */
+    private static final class FanOut implements Future<Void> {
+
+        private final TaskScheduler scheduler;
+        private final Future<Void> read;
+        private final List<Future<Void>> sheets;
+
+        private FanOut(TaskScheduler scheduler, Future<Void> read, List<Future<Void>> sheets) {
+            this.scheduler = scheduler;
+            this.read = read;
+            this.sheets = sheets;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = read.cancel(mayInterruptIfRunning);
+            synchronized (sheets) {
+                for (Future<Void> sheet : sheets) {
+                    cancelled |= sheet.cancel(mayInterruptIfRunning);
+                }
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return read.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            if (!read.isDone()) {
+                return false;
+            }
+            synchronized (sheets) {
+                return sheets.stream().allMatch(Future::isDone);
+            }
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            scheduler.await(read);
+            // Only added to by the read task, which has finished
+            for (Future<Void> sheet : new ArrayList<>(sheets)) {
+                scheduler.await(sheet);
+            }
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            read.get(timeout, unit);
+            for (Future<Void> sheet : new ArrayList<>(sheets)) {
+                sheet.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The worksheets converted from one spreadsheet, in workbook order.
+     */
+    static final class Result {
+
+        private final List<String> names;
+        private final DecisionTableConverter.Worksheet[] sheets;
+        private final String[] errors;
+
+        private Result(List<String> names) {
+            this.names = names;
+            this.sheets = new DecisionTableConverter.Worksheet[names.size()];
+            this.errors = new String[names.size()];
+        }
+
+        /**
+         * Writes the merged DRL of the spreadsheet, failing like Drools does if no worksheet has a RuleTable.
+         *
+         * @return the worksheet of each DRL line range, keyed by the first line of the range
+         */
+        NavigableMap<Integer, String> render(Writer out) throws IOException {
+            List<String> failures = new ArrayList<>();
+            for (String error : errors) {
+                if (error != null) {
+                    failures.add(error);
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new DecisionTableParseException(String.join("; ", failures));
+            }
+            List<DecisionTableConverter.Worksheet> ruleSheets = new ArrayList<>();
+            for (DecisionTableConverter.Worksheet sheet : sheets) {
+                if (sheet != null) {
+                    ruleSheets.add(sheet);
+                }
+            }
+            if (ruleSheets.isEmpty()) {
+                throw new DecisionTableParseException("No RuleTable cells in spreadsheet.");
+            }
+            return DecisionTableConverter.render(ruleSheets, out);
+        }
+    }
+}
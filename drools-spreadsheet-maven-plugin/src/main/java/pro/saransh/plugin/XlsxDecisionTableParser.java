@@ -0,0 +1,343 @@
+package pro.saransh.plugin;
+
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.ExcelNumberFormat;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.drools.core.util.DateUtils;
+import org.drools.decisiontable.parser.DecisionTableParser;
+import org.drools.decisiontable.parser.DefaultRuleSheetListener;
+import org.drools.template.parser.DataListener;
+import org.drools.template.parser.DecisionTableParseException;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decision table parser for XLSX files that streams one worksheet, the first unless a name is given, with SAX
+ * instead of loading the workbook into POI's object model. Rows are passed to the listeners as they are read, so
+ * memory does not grow with the number of rows of the sheet. Cell values are rendered the way Drools'
+ * {@code ExcelParser} renders them, except that formulas use the result cached in the file instead of being
+ * evaluated again.
+ * <p>
+ * Merged regions are listed after the cell data in the sheet XML, so the sheet is read twice: once for the merged
+ * regions and once for the cells. Several worksheets can be parsed from one opening of the workbook, sharing its
+ * strings and styles, like {@code ExcelParser} does with a map of worksheet listeners.
+ *
+ * @author Saransh Kumar
+ */
+
+public class XlsxDecisionTableParser implements DecisionTableParser {
+
+    private final Map<String, List<DataListener>> sheetListeners;
+
+    public XlsxDecisionTableParser(DataListener listener) {
+        this(listener, null);
+    }
+
+    public XlsxDecisionTableParser(DataListener listener, String sheetName) {
+        this(Collections.singletonMap(sheetName, Collections.singletonList(listener)));
+    }
+
+    /**
+     * @param sheetListeners the listeners of each worksheet to parse, in the order to parse them; the {@code null}
+     *                       key stands for the first worksheet
+     */
+    public XlsxDecisionTableParser(Map<String, List<DataListener>> sheetListeners) {
+        this.sheetListeners = sheetListeners;
+    }
+
+    @Override
+    public void parseFile(InputStream in) {
+        try (OPCPackage pkg = OPCPackage.open(in)) {
+            parse(pkg);
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new DecisionTableParseException("Failed to open Excel stream, please check that the content is "
+                    + "xlsx", e);
+        }
+    }
+
+    @Override
+    public void parseFile(File file) {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            parse(pkg);
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new DecisionTableParseException("Failed to open Excel file " + file.getName(), e);
+        }
+    }
+
+    private void parse(OPCPackage pkg) throws IOException, OpenXML4JException, SAXException,
+            ParserConfigurationException {
+        XSSFReader reader = new XSSFReader(pkg);
+        Date1904Handler date1904 = new Date1904Handler();
+        try (InputStream workbook = reader.getWorkbookData()) {
+            parse(workbook, date1904);
+        }
+        ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+        StylesTable styles = reader.getStylesTable();
+        for (Map.Entry<String, List<DataListener>> entry : sheetListeners.entrySet()) {
+            MergedRegionHandler mergedRegions = new MergedRegionHandler();
+            try (InputStream sheet = openSheet(reader, entry.getKey())) {
+                parse(sheet, mergedRegions);
+            }
+            CellHandler cells = new CellHandler(entry.getValue(), sharedStrings, styles, date1904.value,
+                    mergedRegions.regions);
+            try (InputStream sheet = openSheet(reader, entry.getKey())) {
+                parse(sheet, cells);
+            }
+            for (DataListener listener : entry.getValue()) {
+                listener.finishSheet();
+            }
+        }
+    }
+
+    private static InputStream openSheet(XSSFReader reader, String sheetName) throws IOException, OpenXML4JException {
+        XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+        while (sheets.hasNext()) {
+            InputStream sheet = sheets.next();
+            if (sheetName == null || sheetName.equals(sheets.getSheetName())) {
+                return sheet;
+            }
+            sheet.close();
+        }
+        throw new DecisionTableParseException(sheetName == null ? "Workbook has no worksheet"
+                : "Could not find the sheetName (" + sheetName + ") in the workbook sheetNames.");
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler)
+            throws IOException, SAXException, ParserConfigurationException {
+        XMLReader xmlReader = SAXHelper.newXMLReader();
+        xmlReader.setContentHandler(handler);
+        xmlReader.parse(new InputSource(in));
+    }
+
+    private static boolean isNumericDisabled(List<DataListener> listeners) {
+        return listeners.stream().anyMatch(l -> l instanceof DefaultRuleSheetListener
+                && ((DefaultRuleSheetListener) l).isNumericDisabled());
+    }
+
+    private static boolean doesIgnoreNumericFormat(List<DataListener> listeners) {
+        return listeners.stream().anyMatch(l -> l instanceof DefaultRuleSheetListener
+                && ((DefaultRuleSheetListener) l).doesIgnoreNumericFormat());
+    }
+
+    /**
+     * Collects the merged regions of a sheet, skipping its cell data.
+     */
+    private static final class MergedRegionHandler extends DefaultHandler {
+
+        private final List<CellRangeAddress> regions = new ArrayList<>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("mergeCell".equals(localName) && attributes.getValue("ref") != null) {
+                regions.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+            }
+        }
+    }
+
+    private static final class Date1904Handler extends DefaultHandler {
+
+        private boolean value;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("workbookPr".equals(localName)) {
+                String date1904 = attributes.getValue("date1904");
+                value = "1".equals(date1904) || "true".equalsIgnoreCase(date1904);
+            }
+        }
+    }
+
+    /**
+     * Buffers the cells of one row, then passes the row and its cells to the listeners.
+     */
+    private static final class CellHandler extends DefaultHandler {
+
+        private final List<DataListener> listeners;
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final StylesTable styles;
+        private final boolean date1904;
+        private final Map<Integer, List<CellRangeAddress>> mergedRegions = new HashMap<>();
+        private final Map<CellRangeAddress, String> mergedValues = new HashMap<>();
+        private final DataFormatter formatter = new DataFormatter(Locale.ENGLISH);
+        private final boolean numericDisabled;
+        private final boolean ignoreNumericFormat;
+        private final List<String> rowValues = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private int nextRow;
+        private int row = -1;
+        private int column;
+        private String type;
+        private String style;
+        private boolean formula;
+        private boolean collecting;
+        private boolean inlineString;
+
+        private CellHandler(List<DataListener> listeners, ReadOnlySharedStringsTable sharedStrings,
+                            StylesTable styles, boolean date1904, List<CellRangeAddress> mergedRegions) {
+            this.listeners = listeners;
+            this.numericDisabled = isNumericDisabled(listeners);
+            this.ignoreNumericFormat = doesIgnoreNumericFormat(listeners);
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.date1904 = date1904;
+            for (CellRangeAddress region : mergedRegions) {
+                for (int r = region.getFirstRow(); r <= region.getLastRow(); r++) {
+                    this.mergedRegions.computeIfAbsent(r, k -> new ArrayList<>()).add(region);
+                }
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("row".equals(localName)) {
+                String r = attributes.getValue("r");
+                row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                column = 0;
+                rowValues.clear();
+            } else if ("c".equals(localName)) {
+                String r = attributes.getValue("r");
+                column = r != null ? new CellReference(r).getCol() : rowValues.size();
+                type = attributes.getValue("t");
+                style = attributes.getValue("s");
+                formula = false;
+                inlineString = false;
+                text.setLength(0);
+            } else if ("f".equals(localName)) {
+                formula = true;
+            } else if ("is".equals(localName)) {
+                inlineString = true;
+            } else if ("v".equals(localName) || "t".equals(localName) && inlineString) {
+                collecting = true;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if ("v".equals(localName) || "t".equals(localName)) {
+                collecting = false;
+            } else if ("c".equals(localName)) {
+                while (rowValues.size() < column) {
+                    rowValues.add(null);
+                }
+                rowValues.add(value(text.toString()));
+            } else if ("row".equals(localName)) {
+                emitRow();
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void emitRow() {
+            // ExcelParser reports every row up to the last one, including rows missing from the file
+            for (; nextRow < row; nextRow++) {
+                for (DataListener listener : listeners) {
+                    listener.newRow(nextRow, 0);
+                }
+            }
+            for (DataListener listener : listeners) {
+                listener.newRow(row, rowValues.size());
+            }
+            for (int col = 0; col < rowValues.size(); col++) {
+                String value = rowValues.get(col);
+                if (value == null) {
+                    continue;
+                }
+                int mergedColStart = DataListener.NON_MERGED;
+                CellRangeAddress region = findMergedRegion(row, col);
+                if (region != null) {
+                    if (region.getFirstRow() == row && region.getFirstColumn() == col) {
+                        mergedValues.put(region, value);
+                    } else {
+                        value = mergedValues.get(region);
+                        if (value == null) {
+                            continue;
+                        }
+                    }
+                    mergedColStart = region.getFirstColumn();
+                }
+                for (DataListener listener : listeners) {
+                    listener.newCell(row, col, value, mergedColStart);
+                }
+            }
+            nextRow = row + 1;
+            rowValues.clear();
+        }
+
+        private CellRangeAddress findMergedRegion(int row, int col) {
+            for (CellRangeAddress region : mergedRegions.getOrDefault(row, Collections.emptyList())) {
+                if (region.isInRange(row, col)) {
+                    return region;
+                }
+            }
+            return null;
+        }
+
+        private String value(String raw) {
+            if (inlineString || "inlineStr".equals(type) || "str".equals(type)) {
+                return raw;
+            }
+            if ("s".equals(type)) {
+                return raw.isEmpty() ? "" : sharedStrings.getItemAt(Integer.parseInt(raw.trim())).getString();
+            }
+            if ("b".equals(type)) {
+                return "1".equals(raw) || "true".equalsIgnoreCase(raw) ? "true" : "false";
+            }
+            if ("e".equals(type) || raw.isEmpty()) {
+                return raw;
+            }
+            double number = Double.parseDouble(raw);
+            ExcelNumberFormat format = numberFormat();
+            boolean general = format.getFormat().equalsIgnoreCase("General");
+            if (formula) {
+                return ignoreNumericFormat && !general ? String.valueOf(number)
+                        : formatter.formatRawCellContents(number, format.getIdx(), format.getFormat());
+            }
+            if (!numericDisabled) {
+                if (DateUtil.isValidExcelDate(number) && DateUtil.isADateFormat(format)) {
+                    return "\"" + DateUtils.format(DateUtil.getJavaDate(number, date1904)) + "\"";
+                }
+                if (ignoreNumericFormat && !general || number - Math.round(number) != 0) {
+                    return String.valueOf(number);
+                }
+            }
+            return formatter.formatRawCellContents(number, format.getIdx(), format.getFormat());
+        }
+
+        private ExcelNumberFormat numberFormat() {
+            if (styles == null) {
+                return new ExcelNumberFormat(0, "General");
+            }
+            XSSFCellStyle cellStyle = styles.getStyleAt(style != null ? Integer.parseInt(style) : 0);
+            return cellStyle != null ? ExcelNumberFormat.from(cellStyle) : new ExcelNumberFormat(0, "General");
+        }
+    }
+}
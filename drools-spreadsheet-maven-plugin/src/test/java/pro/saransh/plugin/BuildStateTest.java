@@ -0,0 +1,84 @@
+package pro.saransh.plugin;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Saransh Kumar
+ */
+
+public class BuildStateTest {
+
+    private static final String VERSION = "1.0.0";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void goalsSavingOneStateKeepEachOtherOutcomes() throws IOException {
+        File stateFile = new File(folder.getRoot(), BuildState.STATE_FILE_NAME);
+        File table = spreadsheet("rules.xlsx", "v1");
+        BuildState validate = BuildState.load(stateFile, VERSION);
+        BuildState generate = BuildState.load(stateFile, VERSION);
+
+        validate.setOutcome(table, "table", BuildState.PASSED);
+        validate.save();
+        generate.setOutcome(table, "drl", BuildState.PASSED);
+        generate.save();
+
+        BuildState saved = BuildState.load(stateFile, VERSION);
+        assertEquals(BuildState.PASSED, saved.getOutcome(table, "table"));
+        assertEquals(BuildState.PASSED, saved.getOutcome(table, "drl"));
+    }
+
+    @Test
+    public void outcomesLoadedBeforeAnotherSaveDoNotOverwriteIt() throws IOException {
+        File stateFile = new File(folder.getRoot(), BuildState.STATE_FILE_NAME);
+        File table = spreadsheet("rules.xlsx", "v1");
+        BuildState first = BuildState.load(stateFile, VERSION);
+        first.setOutcome(table, "table", BuildState.PASSED);
+        first.save();
+
+        BuildState stale = BuildState.load(stateFile, VERSION);
+        BuildState latest = BuildState.load(stateFile, VERSION);
+        latest.setOutcome(table, "table", BuildState.FAILED);
+        latest.save();
+        stale.setOutcome(table, "drl", BuildState.PASSED);
+        stale.save();
+
+        assertEquals(BuildState.FAILED, BuildState.load(stateFile, VERSION).getOutcome(table, "table"));
+    }
+
+    @Test
+    public void changedContentReplacesSavedOutcomes() throws IOException {
+        File stateFile = new File(folder.getRoot(), BuildState.STATE_FILE_NAME);
+        File table = spreadsheet("rules.xlsx", "v1");
+        BuildState before = BuildState.load(stateFile, VERSION);
+        before.setOutcome(table, "table", BuildState.PASSED);
+        before.save();
+
+        spreadsheet("rules.xlsx", "v2, longer");
+        BuildState after = BuildState.load(stateFile, VERSION);
+        after.setOutcome(table, "drl", BuildState.FAILED);
+        after.save();
+
+        BuildState saved = BuildState.load(stateFile, VERSION);
+        assertNull(saved.getOutcome(table, "table"));
+        assertEquals(BuildState.FAILED, saved.getOutcome(table, "drl"));
+    }
+
+    private File spreadsheet(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,178 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Saransh Kumar
+ */
+
+public class FactFixturesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void csvCellsMayQuoteCommasAndQuotes() {
+        List<Map<String, String>> records = FactFixtures.parseCsv("name, note\r\n"
+                + "Alice,plain\r\n"
+                + "\"Smith, J\",\"says \"\"hi\"\"\"\r\n");
+
+        assertEquals(2, records.size());
+        assertEquals("plain", records.get(0).get("note"));
+        assertEquals("Smith, J", records.get(1).get("name"));
+        assertEquals("says \"hi\"", records.get(1).get("note"));
+    }
+
+    @Test
+    public void emptyCsvCellsAndBlankLinesAreSkipped() {
+        List<Map<String, String>> records = FactFixtures.parseCsv("name,note\n\nBob,\n,late\n");
+
+        assertEquals(2, records.size());
+        assertEquals("Bob", records.get(0).get("name"));
+        assertFalse(records.get(0).containsKey("note"));
+        assertFalse(records.get(1).containsKey("name"));
+    }
+
+    @Test
+    public void malformedCsvIsRejected() {
+        assertInvalidCsv("name\nAlice,10\n", "more cells than the header");
+        assertInvalidCsv("name\n\"Alice\n", "unterminated quote on line 2");
+    }
+
+    @Test
+    public void jsonValuesKeepTheirTextAndUnescape() {
+        List<Map<String, String>> records = FactFixtures.parseJson("[\n"
+                + "  {\"name\": \"A\\\"b\\n\\u00e9\", \"amount\": 10.5, \"vip\": true, \"note\": null},\n"
+                + "  {}\n"
+                + "]");
+
+        assertEquals(2, records.size());
+        assertEquals("A\"b\n\u00e9", records.get(0).get("name"));
+        assertEquals("10.5", records.get(0).get("amount"));
+        assertEquals("true", records.get(0).get("vip"));
+        assertTrue(records.get(0).containsKey("note"));
+        assertNull(records.get(0).get("note"));
+        assertTrue(records.get(1).isEmpty());
+        assertTrue(FactFixtures.parseJson(" [ ] ").isEmpty());
+    }
+
+    @Test
+    public void malformedJsonIsRejected() {
+        assertInvalidJson("[{\"a\": 1}", "unexpected end");
+        assertInvalidJson("[{\"a\": {}}]", "nested objects");
+        assertInvalidJson("[{\"a\": 1} {\"a\": 2}]", "expected ',' or ']'");
+        assertInvalidJson("[{\"a\": }]", "expected a value");
+        assertInvalidJson("[] []", "unexpected content after the array");
+        assertInvalidJson("[{\"a\": \"\\u00", "truncated escape");
+    }
+
+    @Test
+    public void valuesAreConvertedToThePropertyType() {
+        assertEquals(42, FactFixtures.convert(" 42 ", int.class));
+        assertEquals(42L, FactFixtures.convert("42", Long.class));
+        assertEquals(Boolean.TRUE, FactFixtures.convert("true", boolean.class));
+        assertEquals('x', FactFixtures.convert("x", char.class));
+        assertEquals(new BigDecimal("1.50"), FactFixtures.convert("1.50", BigDecimal.class));
+        assertEquals(LocalDate.of(2024, 1, 31), FactFixtures.convert("2024-01-31", LocalDate.class));
+        assertEquals(TimeUnit.SECONDS, FactFixtures.convert("SECONDS", TimeUnit.class));
+        assertEquals(" padded ", FactFixtures.convert(" padded ", String.class));
+    }
+
+    @Test
+    public void unconvertibleValuesAreRejected() {
+        assertInvalidValue("ten", Integer.class);
+        assertInvalidValue("ab", char.class);
+        assertInvalidValue("HOURLY", TimeUnit.class);
+        assertInvalidValue("now", Thread.class);
+    }
+
+    @Test
+    public void factsAreCreatedThroughSettersAndFields() throws Exception {
+        fixture(Order.class.getName() + ".csv", "id,customer\n7,Alice\n");
+
+        FactFixtures fixtures = FactFixtures.load(folder.getRoot(), null, getClass().getClassLoader());
+        List<Object> facts = fixtures.newFacts();
+
+        assertEquals(1, facts.size());
+        Order order = (Order) facts.get(0);
+        assertEquals(7, order.id);
+        assertEquals("Alice", order.customer);
+        assertTrue(order.customerSet);
+    }
+
+    @Test
+    public void valueOfUnnamedColumnIsRejected() throws IOException {
+        File file = fixture(Order.class.getName() + ".csv", "id,customer,\n7,Alice,stray\n");
+
+        try {
+            FactFixtures.load(folder.getRoot(), null, getClass().getClassLoader());
+            fail("Expected the unnamed column to be rejected");
+        } catch (MojoExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(file.getPath()));
+        }
+    }
+
+    private File fixture(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertInvalidCsv(String csv, String message) {
+        try {
+            FactFixtures.parseCsv(csv);
+            fail("Expected invalid CSV: " + csv);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static void assertInvalidJson(String json, String message) {
+        try {
+            FactFixtures.parseJson(json);
+            fail("Expected invalid JSON: " + json);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static void assertInvalidValue(String text, Class<?> type) {
+        try {
+            FactFixtures.convert(text, type);
+            fail("Expected '" + text + "' not to convert to " + type.getName());
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public static class Order {
+
+        private int id;
+        private String customer;
+        private boolean customerSet;
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+            this.customerSet = true;
+        }
+    }
+}
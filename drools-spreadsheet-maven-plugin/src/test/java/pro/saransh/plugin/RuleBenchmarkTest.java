@@ -0,0 +1,73 @@
+package pro.saransh.plugin;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saransh Kumar
+ */
+
+public class RuleBenchmarkTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void percentilesUseTheNearestRank() {
+        long[] sorted = millis(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+        assertEquals(5, RuleBenchmark.Result.percentile(sorted, 50), DELTA);
+        assertEquals(9, RuleBenchmark.Result.percentile(sorted, 90), DELTA);
+        assertEquals(10, RuleBenchmark.Result.percentile(sorted, 99), DELTA);
+        assertEquals(3, RuleBenchmark.Result.percentile(millis(3), 50), DELTA);
+    }
+
+    @Test
+    public void resultSortsLatenciesAndComputesThroughput() {
+        RuleBenchmark.Result result = new RuleBenchmark.Result(100, 25, millis(4, 1, 3, 2));
+
+        assertEquals(4, result.getSessions());
+        assertEquals(2, result.getP50(), DELTA);
+        assertEquals(4, result.getMax(), DELTA);
+        // 4 sessions of 100 facts in 10 ms
+        assertEquals(40_000, result.getThroughput(), 1e-6);
+    }
+
+    @Test
+    public void slowerRunRegressesThroughputAndP90() {
+        RuleBenchmark.Result baseline = new RuleBenchmark.Result(100, 0, millis(10, 10, 10, 10));
+        RuleBenchmark.Result slower = new RuleBenchmark.Result(100, 0, millis(15, 15, 15, 15));
+
+        List<String> regressions = slower.regressionsFrom(baseline, 10);
+
+        assertEquals(regressions.toString(), 2, regressions.size());
+        assertTrue(regressions.get(0), regressions.get(0).startsWith("throughput dropped 33.3%"));
+        assertTrue(regressions.get(1), regressions.get(1).startsWith("p90 latency rose 50.0%"));
+    }
+
+    @Test
+    public void changesWithinTheToleranceDoNotRegress() {
+        RuleBenchmark.Result baseline = new RuleBenchmark.Result(100, 0, millis(10, 10, 10, 10));
+        RuleBenchmark.Result slower = new RuleBenchmark.Result(100, 0, millis(10, 10, 10, 11));
+        RuleBenchmark.Result faster = new RuleBenchmark.Result(100, 0, millis(5, 5, 5, 5));
+
+        assertTrue(slower.regressionsFrom(baseline, 15).isEmpty());
+        assertTrue(faster.regressionsFrom(baseline, 0).isEmpty());
+    }
+
+    @Test
+    public void emptyBaselineNeverRegresses() {
+        RuleBenchmark.Result baseline = new RuleBenchmark.Result(0, 0, millis(0));
+        RuleBenchmark.Result result = new RuleBenchmark.Result(100, 0, millis(10));
+
+        assertTrue(result.regressionsFrom(baseline, 0).isEmpty());
+    }
+
+    private static long[] millis(long... values) {
+        return Arrays.stream(values).map(value -> value * 1_000_000).toArray();
+    }
+}
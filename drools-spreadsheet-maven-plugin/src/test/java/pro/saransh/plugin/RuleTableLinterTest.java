@@ -0,0 +1,70 @@
+package pro.saransh.plugin;
+
+import org.drools.template.parser.DataListener;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saransh Kumar
+ */
+
+public class RuleTableLinterTest {
+
+    private static final RuleTableLinter.Policy POLICY = new RuleTableLinter.Policy(Collections.emptyList(),
+            "warning", 20);
+
+    @Test
+    public void dataOfTemplateWithParamIsNotLinted() {
+        List<RuleTableLinter.Finding> findings = lint("tier == \"$param\"", "Gold (VIP)");
+
+        assertTrue(findings.toString(), findings.isEmpty());
+    }
+
+    @Test
+    public void dataOfBareParamTemplateIsLinted() {
+        List<RuleTableLinter.Finding> findings = lint("$param", "tierName() == \"Gold\"");
+
+        assertEquals(findings.toString(), 1, findings.size());
+        assertEquals(RuleTableLinter.METHOD_CALL, findings.get(0).getCheck());
+        assertEquals("Rules!B7", findings.get(0).getCell());
+    }
+
+    @Test
+    public void dataOfBareNumberedParamTemplateIsLinted() {
+        List<RuleTableLinter.Finding> findings = lint("$1", "eval(tier == \"Gold\")");
+
+        assertEquals(findings.toString(), 1, findings.size());
+        assertEquals(RuleTableLinter.EVAL, findings.get(0).getCheck());
+    }
+
+    /**
+     * Lints a RuleTable with one condition column of {@code template} and one rule whose cell is {@code value}.
+     */
+    private static List<RuleTableLinter.Finding> lint(String template, String value) {
+        RuleTableLinter linter = new RuleTableLinter(new File("rules.xlsx"), "Rules", POLICY);
+        String[][] rows = {
+                {"RuleTable Tiers", null},
+                {"CONDITION", "ACTION"},
+                {"c: Customer", null},
+                {template, "c.setDiscount($param);"},
+                {"Tier", "Discount"},
+                {value, "10"},
+        };
+        for (int row = 0; row < rows.length; row++) {
+            linter.newRow(row + 1, 3);
+            for (int column = 0; column < rows[row].length; column++) {
+                if (rows[row][column] != null) {
+                    linter.newCell(row + 1, column + 1, rows[row][column], DataListener.NON_MERGED);
+                }
+            }
+        }
+        linter.finishSheet();
+        return linter.getFindings();
+    }
+}
@@ -0,0 +1,165 @@
+package pro.saransh.plugin;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Saransh Kumar
+ */
+
+public class SpreadsheetDecisionTableValidatorTest {
+
+    private static final String PACKAGE = "com.acme.pricing";
+    private static final String FUNCTION = "function int discount(int min) { return min / 10; }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void changedTableIsCompiledWithUnchangedTablesOfItsPackage() throws Exception {
+        File resources = folder.newFolder("rules");
+        File functions = spreadsheet(resources, "functions.xlsx", FUNCTION, "Limits", "o.add($param);");
+        File discounts = spreadsheet(resources, "discounts.xlsx", null, "Discounts", "o.add(discount($param));");
+        BuildState state = BuildState.load(new File(folder.getRoot(), BuildState.STATE_FILE_NAME), "1.0.0");
+        state.setOutcome(functions, SpreadsheetDecisionTableValidator.step(false), BuildState.PASSED);
+
+        // discounts.xlsx only compiles with the function of the unchanged functions.xlsx
+        validate(resources, state, discounts, functions);
+
+        assertEquals(BuildState.PASSED, state.getOutcome(discounts, SpreadsheetDecisionTableValidator.step(false)));
+        assertEquals(BuildState.PASSED, state.getOutcome(functions, SpreadsheetDecisionTableValidator.step(false)));
+    }
+
+    @Test
+    public void failingChangedTableLeavesOutcomeOfUnchangedOnes() throws Exception {
+        File resources = folder.newFolder("rules");
+        File limits = spreadsheet(resources, "limits.xlsx", null, "Limits", "o.add($param);");
+        File discounts = spreadsheet(resources, "discounts.xlsx", null, "Discounts", "o.add(discount($param));");
+        BuildState state = BuildState.load(new File(folder.getRoot(), BuildState.STATE_FILE_NAME), "1.0.0");
+        state.setOutcome(limits, SpreadsheetDecisionTableValidator.step(false), BuildState.PASSED);
+
+        try {
+            validate(resources, state, discounts, limits);
+        } catch (MojoFailureException expected) {
+            assertEquals(BuildState.FAILED, state.getOutcome(discounts, SpreadsheetDecisionTableValidator.step(false)));
+            assertEquals(BuildState.PASSED, state.getOutcome(limits, SpreadsheetDecisionTableValidator.step(false)));
+            return;
+        }
+        throw new AssertionError("discount() is not defined in " + PACKAGE);
+    }
+
+    @Test
+    public void unchangedTablesGetNoDrl() throws Exception {
+        File resources = folder.newFolder("rules");
+        File functions = spreadsheet(resources, "functions.xlsx", FUNCTION, "Limits", "o.add($param);");
+        File discounts = spreadsheet(resources, "discounts.xlsx", null, "Discounts", "o.add(discount($param));");
+        File outputDir = folder.newFolder("target");
+        BuildState state = BuildState.load(new File(folder.getRoot(), BuildState.STATE_FILE_NAME), "1.0.0");
+        state.setOutcome(functions, SpreadsheetDecisionTableValidator.step(false), BuildState.PASSED);
+
+        try (TaskScheduler scheduler = new TaskScheduler(2)) {
+            new SpreadsheetDecisionTableValidator(project(), classesDir(), resources,
+                    Collections.singletonList(discounts), Arrays.asList(functions, discounts), scheduler, 2,
+                    outputDir, new SpreadsheetModel(), state, false, null).validate();
+        }
+
+        Path drlDir = GenerateDrl.createOutputPath(outputDir);
+        assertTrue(Files.exists(GenerateDrl.getDrlFile(drlDir, discounts)));
+        assertFalse(Files.exists(GenerateDrl.getDrlFile(drlDir, functions)));
+        assertNull(state.getOutcome(functions, GenerateDrl.step(false)));
+    }
+
+    private void validate(File resources, BuildState state, File changed, File... context)
+            throws IOException, MojoExecutionException, MojoFailureException {
+        try (TaskScheduler scheduler = new TaskScheduler(2)) {
+            new SpreadsheetDecisionTableValidator(project(), classesDir(), resources,
+                    Collections.singletonList(changed), Arrays.asList(context), scheduler, 2, null,
+                    new SpreadsheetModel(), state, false, null).validate();
+        }
+    }
+
+    private MavenProject project() {
+        MavenProject project = new MavenProject();
+        Build build = new Build();
+        build.setOutputDirectory(classesDir().getAbsolutePath());
+        project.setBuild(build);
+        return project;
+    }
+
+    private File classesDir() {
+        File classes = new File(folder.getRoot(), "classes");
+        classes.mkdirs();
+        return classes;
+    }
+
+    /**
+     * Writes a decision table of {@link #PACKAGE} matching lists by size, optionally defining a function.
+     */
+    private static File spreadsheet(File dir, String name, String function, String table, String action)
+            throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet("Rules");
+        set(sheet, 0, 0, "RuleSet");
+        set(sheet, 0, 1, PACKAGE);
+        set(sheet, 1, 0, "Import");
+        set(sheet, 1, 1, "java.util.ArrayList");
+        if (function != null) {
+            set(sheet, 2, 0, "Functions");
+            set(sheet, 2, 1, function);
+        }
+        int row = 5;
+        set(sheet, row, 1, "RuleTable " + table);
+        set(sheet, row + 1, 1, "CONDITION");
+        set(sheet, row + 1, 2, "ACTION");
+        set(sheet, row + 2, 1, "o: ArrayList");
+        set(sheet, row + 3, 1, "size > $param");
+        set(sheet, row + 3, 2, action);
+        set(sheet, row + 4, 1, "Min");
+        set(sheet, row + 4, 2, "Add");
+        for (int i = 0; i < 3; i++) {
+            set(sheet, row + 5 + i, 1, 100 * (i + 1));
+            set(sheet, row + 5 + i, 2, 10 * (i + 1));
+        }
+        File file = new File(dir, name);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            workbook.write(out);
+        }
+        workbook.close();
+        return file;
+    }
+
+    private static void set(Sheet sheet, int row, int column, String value) {
+        cellRow(sheet, row).createCell(column).setCellValue(value);
+    }
+
+    private static void set(Sheet sheet, int row, int column, double value) {
+        cellRow(sheet, row).createCell(column).setCellValue(value);
+    }
+
+    private static Row cellRow(Sheet sheet, int row) {
+        Row cells = sheet.getRow(row);
+        return cells != null ? cells : sheet.createRow(row);
+    }
+}
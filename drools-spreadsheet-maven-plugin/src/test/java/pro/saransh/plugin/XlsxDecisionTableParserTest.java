@@ -0,0 +1,175 @@
+package pro.saransh.plugin;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.drools.decisiontable.InputType;
+import org.drools.decisiontable.SpreadsheetCompiler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link XlsxDecisionTableParser} renders the same DRL as Drools' own {@link SpreadsheetCompiler}.
+ *
+ * @author Saransh Kumar
+ */
+
+public class XlsxDecisionTableParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void plainTable() throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = header(workbook.createSheet("Rules"));
+        table(sheet, 5, "Discounts");
+        assertSameDrl(workbook);
+    }
+
+    @Test
+    public void mergedCells() throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = header(workbook.createSheet("Rules"));
+        int row = 5;
+        set(sheet, row, 1, "RuleTable Merged");
+        sheet.addMergedRegion(new CellRangeAddress(row, row, 1, 3));
+        set(sheet, row + 1, 1, "CONDITION");
+        set(sheet, row + 1, 2, "CONDITION");
+        set(sheet, row + 1, 3, "ACTION");
+        // One pattern shared by both conditions
+        set(sheet, row + 2, 1, "o: Order");
+        sheet.addMergedRegion(new CellRangeAddress(row + 2, row + 2, 1, 2));
+        set(sheet, row + 3, 1, "amount > $param");
+        set(sheet, row + 3, 2, "tier == \"$param\"");
+        set(sheet, row + 3, 3, "o.setDiscount($param);");
+        set(sheet, row + 4, 1, "Min");
+        set(sheet, row + 4, 2, "Tier");
+        set(sheet, row + 4, 3, "Discount");
+        for (int i = 0; i < 4; i++) {
+            set(sheet, row + 5 + i, 1, 100 * (i + 1));
+            set(sheet, row + 5 + i, 3, 5 * (i + 1));
+        }
+        // A tier spanning two rules
+        set(sheet, row + 5, 2, "Gold");
+        sheet.addMergedRegion(new CellRangeAddress(row + 5, row + 6, 2, 2));
+        set(sheet, row + 7, 2, "Silver");
+        set(sheet, row + 8, 2, "Bronze");
+        assertSameDrl(workbook);
+    }
+
+    @Test
+    public void formulas() throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = header(workbook.createSheet("Rules"));
+        table(sheet, 5, "Formulas");
+        sheet.getRow(10).getCell(1).setCellFormula("50*3");
+        sheet.getRow(11).getCell(1).setCellFormula("B11+0.5");
+        sheet.getRow(12).getCell(2).setCellFormula("CONCATENATE(\"Go\",\"ld\")");
+        workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+        assertSameDrl(workbook);
+    }
+
+    @Test
+    public void datesAndNumbers() throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = header(workbook.createSheet("Rules"));
+        table(sheet, 5, "Dates");
+        set(sheet, 8, 1, "placed > $param");
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("dd-mmm-yyyy"));
+        for (int i = 0; i < 3; i++) {
+            sheet.getRow(10 + i).getCell(1).setCellValue(new GregorianCalendar(2024, Calendar.MARCH, 1 + i).getTime());
+            sheet.getRow(10 + i).getCell(1).setCellStyle(dateStyle);
+        }
+        CellStyle percent = workbook.createCellStyle();
+        percent.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("0.00%"));
+        sheet.getRow(10).getCell(2).setCellValue(0.125);
+        sheet.getRow(11).getCell(2).setCellValue(2.5);
+        sheet.getRow(12).getCell(2).setCellValue(0.3);
+        sheet.getRow(12).getCell(2).setCellStyle(percent);
+        assertSameDrl(workbook);
+    }
+
+    @Test
+    public void emptyRowsAndSeveralTables() throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = header(workbook.createSheet("Rules"));
+        // Rows 3 and 4 are missing from the file, row 14 exists without cells
+        table(sheet, 5, "First");
+        sheet.createRow(14);
+        table(sheet, 17, "Second");
+        assertSameDrl(workbook);
+    }
+
+    private void assertSameDrl(Workbook workbook) throws IOException {
+        File file = folder.newFile("table.xlsx");
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            workbook.write(out);
+        }
+        workbook.close();
+        String expected;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            expected = new SpreadsheetCompiler().compile(in, InputType.XLS);
+        }
+        assertEquals(expected, DecisionTableConverter.convert(file, new SpreadsheetModel()));
+    }
+
+    private static Sheet header(Sheet sheet) {
+        set(sheet, 0, 0, "RuleSet");
+        set(sheet, 0, 1, "com.acme.pricing");
+        set(sheet, 1, 0, "Import");
+        set(sheet, 1, 1, "com.acme.Order");
+        return sheet;
+    }
+
+    /**
+     * Writes a RuleTable at {@code row} with a numeric and a string condition and three rules.
+     */
+    private static void table(Sheet sheet, int row, String name) {
+        set(sheet, row, 1, "RuleTable " + name);
+        set(sheet, row + 1, 1, "CONDITION");
+        set(sheet, row + 1, 2, "CONDITION");
+        set(sheet, row + 1, 3, "ACTION");
+        set(sheet, row + 2, 1, "o: Order");
+        set(sheet, row + 3, 1, "amount > $param");
+        set(sheet, row + 3, 2, "tier == \"$param\"");
+        set(sheet, row + 3, 3, "o.setDiscount($param);");
+        set(sheet, row + 4, 1, "Min");
+        set(sheet, row + 4, 2, "Tier");
+        set(sheet, row + 4, 3, "Discount");
+        String[] tiers = {"Gold", "Silver", "Bronze"};
+        for (int i = 0; i < tiers.length; i++) {
+            set(sheet, row + 5 + i, 1, 100 * (i + 1));
+            set(sheet, row + 5 + i, 2, tiers[i]);
+            set(sheet, row + 5 + i, 3, 10 - i);
+        }
+    }
+
+    private static void set(Sheet sheet, int row, int column, String value) {
+        cellRow(sheet, row).createCell(column).setCellValue(value);
+    }
+
+    private static void set(Sheet sheet, int row, int column, double value) {
+        cellRow(sheet, row).createCell(column).setCellValue(value);
+    }
+
+    private static Row cellRow(Sheet sheet, int row) {
+        Row cells = sheet.getRow(row);
+        return cells != null ? cells : sheet.createRow(row);
+    }
+}